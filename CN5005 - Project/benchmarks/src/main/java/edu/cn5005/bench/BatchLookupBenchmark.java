@@ -0,0 +1,73 @@
+package edu.cn5005.bench;
+
+import edu.cn5005.bst.AVL;
+import edu.cn5005.bst.FrozenIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ FrozenIndex lookups one by one (count in a loop) against the batch countAll, per key, on
+ RANDOM keys. The fork runs with the Vector API module, so countAll takes the SIMD path; to
+ measure the scalar interleaved fallback instead, replace the fork arguments:
+   java -jar target/benchmarks.jar BatchLookup -jvmArgs "-Xms4g -Xmx4g"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+public class BatchLookupBenchmark {
+
+    private static final int PROBES = 1 << 16;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    private FrozenIndex index;
+    private int[] probes;
+    private int[] out;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int[] keys = KeyDistribution.RANDOM.keys(size, 42);
+        index = AVL.fromKeys(keys).freeze();
+        SplittableRandom random = new SplittableRandom(7);
+        probes = new int[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            probes[i] = keys[random.nextInt(size)];
+        }
+        out = new int[PROBES];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROBES)
+    public long loop() {
+        long sum = 0;
+        for (int key : probes) {
+            sum += index.count(key);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROBES)
+    public int[] batch() {
+        index.countAll(probes, out);
+        return out;
+    }
+}
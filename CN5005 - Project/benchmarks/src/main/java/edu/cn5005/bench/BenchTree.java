@@ -0,0 +1,113 @@
+package edu.cn5005.bench;
+
+import edu.cn5005.bst.AVL;
+import edu.cn5005.bst.BST;
+import edu.cn5005.bst.OrderedMultiset;
+import edu.cn5005.bst.RedBlackTree;
+import edu.cn5005.bst.Treap;
+import edu.cn5005.bst.WAVLTree;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ The operations the benchmarks measure, over the OrderedMultiset implementations and TreeMap.
+ TreeMap<Integer, Integer> (key -> count) is the JDK baseline with the same duplicate policy
+ as BST/AVL. Each JMH fork only ever sees one implementation, so the interface call is
+ monomorphic and inlined.
+ */
+interface BenchTree {
+
+    void insert(int key);
+
+    void delete(int key);
+
+    boolean changeKey(int oldKey, int newKey);
+
+    boolean contains(int key);
+
+    // Inorder traversal, summing the counts (so the walk cannot be optimised away)
+    long sumCounts();
+
+    static BenchTree create(String implementation) {
+        switch (implementation) {
+            case "BST":
+                return new OfMultiset(new BST());
+            case "AVL":
+                return new OfMultiset(new AVL());
+            case "RedBlack":
+                return new OfMultiset(new RedBlackTree());
+            case "WAVL":
+                return new OfMultiset(new WAVLTree());
+            case "Treap":
+                return new OfMultiset(new Treap(42));
+            case "TreeMap":
+                return new OfTreeMap();
+            default:
+                throw new IllegalArgumentException("unknown implementation: " + implementation);
+        }
+    }
+
+    final class OfMultiset implements BenchTree {
+        private final OrderedMultiset tree;
+
+        OfMultiset(OrderedMultiset tree) {
+            this.tree = tree;
+        }
+
+        public void insert(int key) {
+            tree.insert(key);
+        }
+
+        public void delete(int key) {
+            tree.delete(key);
+        }
+
+        public boolean changeKey(int oldKey, int newKey) {
+            return tree.changeKey(oldKey, newKey);
+        }
+
+        public boolean contains(int key) {
+            return tree.contains(key);
+        }
+
+        public long sumCounts() {
+            long[] sum = new long[1];
+            tree.forEachInorder((key, count) -> sum[0] += count);
+            return sum[0];
+        }
+    }
+
+    final class OfTreeMap implements BenchTree {
+        private final TreeMap<Integer, Integer> map = new TreeMap<>();
+
+        public void insert(int key) {
+            map.merge(key, 1, Integer::sum);
+        }
+
+        public void delete(int key) {
+            map.computeIfPresent(key, (k, count) -> (count == 1) ? null : count - 1);
+        }
+
+        public boolean changeKey(int oldKey, int newKey) {
+            Integer count = map.remove(oldKey);
+            if (count == null) {
+                return false;
+            }
+            map.merge(newKey, count, Integer::sum);
+            return true;
+        }
+
+        public boolean contains(int key) {
+            return map.containsKey(key);
+        }
+
+        public long sumCounts() {
+            long sum = 0;
+            for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
+                sum += entry.getValue();
+            }
+            return sum;
+        }
+    }
+}
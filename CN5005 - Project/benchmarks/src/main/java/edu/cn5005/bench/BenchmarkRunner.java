@@ -0,0 +1,32 @@
+package edu.cn5005.bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+ Entry point of benchmarks.jar: the normal JMH command line, except that results are
+ written as JSON (jmh-result.json unless -rff says otherwise) so runs can be compared over
+ time. With no benchmark pattern, everything in TreeBenchmark runs.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd);
+        if (!cmd.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!cmd.getResult().hasValue()) {
+            options.result("jmh-result.json");
+        }
+        if (cmd.getIncludes().isEmpty()) {
+            options.include(TreeBenchmark.class.getSimpleName());
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,70 @@
+package edu.cn5005.bench;
+
+import edu.cn5005.bst.AVL;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ Steady-state insert/delete churn on an AVL tree of constant size, with and without a node
+ pool (BST.enableNodePool). Every call deletes the oldest key of a sliding window and
+ inserts a new random one, so each call frees one node and needs one.
+
+ SampleTime reports the latency distribution (p0.99, p0.999, ...); add -prof gc for the
+ allocation rate (gc.alloc.rate.norm is bytes per call):
+   java -jar target/benchmarks.jar Churn -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ChurnBenchmark {
+
+    @Param({"false", "true"})
+    public boolean pooled;
+
+    @Param({"100000", "1000000"})
+    public int size;
+
+    private AVL tree;
+    private KeyDistribution.KeyStream stream;
+    private int[] window;
+    private int oldest;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        tree = new AVL();
+        if (pooled) {
+            tree.enableNodePool();
+        }
+        stream = KeyDistribution.RANDOM.stream(size, 42);
+        window = new int[size];
+        for (int i = 0; i < size; i++) {
+            window[i] = stream.next();
+            tree.insert(window[i]);
+        }
+        oldest = 0;
+    }
+
+    @Benchmark
+    public void deleteInsert() {
+        int key = stream.next();
+        tree.delete(window[oldest]);
+        tree.insert(key);
+        window[oldest] = key;
+        oldest = (oldest + 1 == size) ? 0 : oldest + 1;
+    }
+}
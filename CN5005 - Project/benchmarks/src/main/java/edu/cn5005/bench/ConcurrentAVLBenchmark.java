@@ -0,0 +1,172 @@
+package edu.cn5005.bench;
+
+import edu.cn5005.bst.ConcurrentAVL;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+ Throughput of ConcurrentAVL against ConcurrentSkipListMap<Integer, Integer> (key -> count,
+ the same multiset semantics) as the number of threads grows from 1 to 32. Each threadsNN
+ method runs the same operation mix with NN threads. Workloads, over keys drawn uniformly
+ from [0, 2 * size) on a structure holding size of them:
+ - read: contains only
+ - mixed: 90% contains, 5% insert, 5% delete
+ - write: 50% insert, 50% delete
+   java -jar target/benchmarks.jar ConcurrentAVL -wi 2 -w 1 -i 2 -r 2
+
+ Results, ops/us (total over all threads), size 100000, one fork, 2 x 1 s warmup and
+ 2 x 2 s measurement, on a sandbox with a single vCPU: the threads take turns on one core,
+ so these numbers show the cost of each design under time-slicing, not multi-core scaling
+ (rerun on a many-core machine for that):
+
+   threads                 1      2      4      8     16     32
+   read    ConcurrentAVL  2.75   2.30   2.58   2.45   2.71   2.68
+           SkipListMap    1.54   1.35   1.29   1.34   1.36   1.09
+   mixed   ConcurrentAVL  1.55   1.66   1.82   1.28   1.40   1.02
+           SkipListMap    0.79   0.88   0.83   0.82   0.67   0.72
+   write   ConcurrentAVL  0.77   0.82   0.79   0.73   0.83   0.70
+           SkipListMap    0.54   0.58   0.51   0.47   0.49   0.49
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrentAVLBenchmark {
+
+    @Param({"ConcurrentAVL", "ConcurrentSkipListMap"})
+    public String implementation;
+
+    @Param({"read", "mixed", "write"})
+    public String workload;
+
+    @Param({"100000"})
+    public int size;
+
+    private ConcurrentAVL tree;
+    private ConcurrentSkipListMap<Integer, Integer> map;
+    private int writePercent;
+
+    // Each thread draws its own keys and operations
+    @State(Scope.Thread)
+    public static class Dice {
+        private SplittableRandom random;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            random = new SplittableRandom(System.nanoTime());
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        switch (workload) {
+            case "read":
+                writePercent = 0;
+                break;
+            case "mixed":
+                writePercent = 10;
+                break;
+            case "write":
+                writePercent = 100;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown workload: " + workload);
+        }
+        if (implementation.equals("ConcurrentAVL")) {
+            tree = new ConcurrentAVL();
+        } else {
+            map = new ConcurrentSkipListMap<>();
+        }
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < size; i++) {
+            insert(random.nextInt(2 * size));
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean threads01(Dice dice) {
+        return operation(dice.random);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public boolean threads02(Dice dice) {
+        return operation(dice.random);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean threads04(Dice dice) {
+        return operation(dice.random);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean threads08(Dice dice) {
+        return operation(dice.random);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public boolean threads16(Dice dice) {
+        return operation(dice.random);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public boolean threads32(Dice dice) {
+        return operation(dice.random);
+    }
+
+    private boolean operation(SplittableRandom random) {
+        int key = random.nextInt(2 * size);
+        int roll = random.nextInt(200);
+        if (roll >= 2 * writePercent) {
+            return contains(key);
+        }
+        if ((roll & 1) == 0) {
+            insert(key);
+        } else {
+            delete(key);
+        }
+        return true;
+    }
+
+    private boolean contains(int key) {
+        return (tree != null) ? tree.contains(key) : map.containsKey(key);
+    }
+
+    private void insert(int key) {
+        if (tree != null) {
+            tree.insert(key);
+        } else {
+            map.merge(key, 1, Integer::sum);
+        }
+    }
+
+    private void delete(int key) {
+        if (tree != null) {
+            tree.delete(key);
+        } else {
+            map.computeIfPresent(key, (k, count) -> (count == 1) ? null : count - 1);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package edu.cn5005.bench;
+
+import edu.cn5005.persons.PersonCsvLoader;
+import edu.cn5005.persons.PersonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ Loading a generated persons CSV (about 50 bytes per row, Greek names, so UTF-8 matters):
+ - legacy: PersonParser.loadCsv (its per-row printing goes to a null stream)
+ - sequential / parallel: PersonCsvLoader.load into columns
+ The file size is printed in the setup; throughput is file size / time per load.
+   java -jar target/benchmarks.jar CsvLoad -p rows=10000000
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class CsvLoadBenchmark {
+
+    @Param({"legacy", "sequential", "parallel"})
+    public String loader;
+
+    @Param({"1000000"})
+    public int rows;
+
+    private Path file;
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = Files.createTempFile("persons-bench", ".csv");
+        SplittableRandom random = new SplittableRandom(42);
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("id,name,gender,father_id,mother_id,spouse_id\n");
+            for (int id = 1; id <= rows; id++) {
+                String father = (id > 2) ? String.valueOf(1 + random.nextInt(id - 1)) : "";
+                String mother = (id > 2) ? String.valueOf(1 + random.nextInt(id - 1)) : "";
+                String spouse = random.nextBoolean() ? String.valueOf(1 + random.nextInt(rows)) : "";
+                out.write(id + ",Πρόσωπο Καποδίστριας " + id + "," + (id % 2 == 0 ? "Female" : "Male")
+                        + "," + father + "," + mother + "," + spouse + "\n");
+            }
+        }
+        System.out.printf("%n%d rows, %.1f MB%n", rows, Files.size(file) / 1e6);
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(stdout);
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public int load() throws IOException {
+        switch (loader) {
+            case "legacy":
+                PersonParser parser = new PersonParser();
+                parser.loadCsv(file.toString());
+                return parser.getPersonsToId().size();
+            case "sequential":
+                return PersonCsvLoader.load(file, false).size();
+            default:
+                return PersonCsvLoader.load(file, true).size();
+        }
+    }
+}
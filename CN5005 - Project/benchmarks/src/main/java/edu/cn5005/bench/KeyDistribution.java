@@ -0,0 +1,81 @@
+package edu.cn5005.bench;
+
+import java.util.SplittableRandom;
+
+/*
+ Key distributions used by the benchmarks. Each one is an endless, seeded stream of keys,
+ so every run (and every tree implementation) sees exactly the same sequence.
+
+ - SORTED: 0, 1, 2, ... (the worst case for an unbalanced BST)
+ - RANDOM: uniform over all ints (almost no duplicates)
+ - ZIPF: a few keys are very hot; rank r is drawn with probability ~ 1/r^1.1 and the ranks
+   are scattered over the int range by a hash, so hot keys are not neighbours
+ - DUPLICATES: uniform over size/16 distinct keys, so every key repeats about 16 times
+ */
+public enum KeyDistribution {
+    SORTED,
+    RANDOM,
+    ZIPF,
+    DUPLICATES;
+
+    private static final double ZIPF_EXPONENT = 1.1;
+
+    // Stream of keys for a tree of about size keys
+    public KeyStream stream(int size, long seed) {
+        return new KeyStream(this, size, seed);
+    }
+
+    // The first size keys of the stream
+    public int[] keys(int size, long seed) {
+        KeyStream stream = stream(size, seed);
+        int[] keys = new int[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = stream.next();
+        }
+        return keys;
+    }
+
+    public static final class KeyStream {
+        private final KeyDistribution distribution;
+        private final int size;
+        private final SplittableRandom random;
+        private int next; // SORTED only
+
+        private KeyStream(KeyDistribution distribution, int size, long seed) {
+            this.distribution = distribution;
+            this.size = Math.max(1, size);
+            this.random = new SplittableRandom(seed);
+        }
+
+        public int next() {
+            switch (distribution) {
+                case SORTED:
+                    return next++;
+                case RANDOM:
+                    return random.nextInt();
+                case ZIPF:
+                    return scatter(zipfRank());
+                default:
+                    return random.nextInt(Math.max(1, size / 16));
+            }
+        }
+
+        // Inverse transform of the continuous power law on [1, size + 1): close to Zipf, O(1) per key
+        private int zipfRank() {
+            double oneMinusS = 1.0 - ZIPF_EXPONENT;
+            double max = Math.pow(size + 1.0, oneMinusS);
+            double u = random.nextDouble();
+            double x = Math.pow(1.0 + u * (max - 1.0), 1.0 / oneMinusS);
+            return (int) Math.min(size, Math.max(1, (long) x));
+        }
+
+        // Bijective integer mix (so different ranks never collide)
+        private static int scatter(int rank) {
+            int h = rank * 0x9E3779B9;
+            h ^= h >>> 16;
+            h *= 0x85EBCA6B;
+            h ^= h >>> 13;
+            return h;
+        }
+    }
+}
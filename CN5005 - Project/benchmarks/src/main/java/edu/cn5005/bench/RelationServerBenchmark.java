@@ -0,0 +1,80 @@
+package edu.cn5005.bench;
+
+import edu.cn5005.persons.GenealogySnapshot;
+import edu.cn5005.relations.RelationEngine;
+import edu.cn5005.server.RelationClient;
+import edu.cn5005.server.RelationServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ Query latency against a RelationServer on the loopback interface:
+ - roundTrip: one query, waiting for its answer before the next
+ - pipelined: BATCH queries sent together (time per query)
+ The server loads csv (by default the sample persons.csv next to this module).
+   java -jar target/benchmarks.jar RelationServer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RelationServerBenchmark {
+
+    private static final int BATCH = 1000;
+
+    @Param({"../persons.csv"})
+    public String csv;
+
+    private RelationServer server;
+    private RelationClient client;
+    private List<String[]> batch;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        server = new RelationServer(new RelationEngine(GenealogySnapshot.openOrBuild(Path.of(csv))));
+        client = new RelationClient(server.start(0));
+        batch = new ArrayList<>();
+        for (int i = 0; i < BATCH; i++) {
+            batch.add(new String[]{"isFirstCousin", Integer.toString(1 + i % 25), Integer.toString(1 + i / 25 % 25)});
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    public String roundTrip() throws IOException {
+        next = (next == 24) ? 0 : next + 1;
+        return client.query("isFirstCousin", "6", Integer.toString(1 + next));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<String> pipelined() throws IOException {
+        return client.pipeline(batch);
+    }
+}
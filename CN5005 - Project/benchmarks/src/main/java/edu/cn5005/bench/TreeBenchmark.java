@@ -0,0 +1,125 @@
+package edu.cn5005.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ Operation costs of BST, AVL, RedBlack, WAVL, Treap and TreeMap on a tree that already holds size keys drawn from
+ the chosen distribution (inserted one by one, in stream order, so BST gets the shape its
+ insertion order gives it).
+
+ - insertDelete: the tree is a sliding window; every call inserts the next key of the stream
+   and deletes the oldest one, so the size stays constant (insert + delete cost per call)
+ - changeKey: moves the oldest key of the window to the next key of the stream
+ - search: contains() on keys from the same distribution (mostly hits)
+ - inorder: one full traversal, reported per tree (not per key)
+
+ A plain BST fed SORTED keys degenerates into a list (quadratic to build), so that
+ combination is refused above BST_SORTED_LIMIT keys and shows up as a failed benchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class TreeBenchmark {
+
+    private static final int BST_SORTED_LIMIT = 100_000;
+    private static final int PROBES = 1 << 20; // power of two, indexed with a mask
+
+    @Param({"BST", "AVL", "RedBlack", "WAVL", "Treap", "TreeMap"})
+    public String implementation;
+
+    @Param({"SORTED", "RANDOM", "ZIPF", "DUPLICATES"})
+    public KeyDistribution distribution;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    private BenchTree tree;
+    private KeyDistribution.KeyStream stream;
+    private int[] window;  // keys currently in the tree, in insertion order (a ring)
+    private int oldest;    // index of the oldest key in window
+    private int[] probes;
+    private int probe;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if (implementation.equals("BST") && distribution == KeyDistribution.SORTED && size > BST_SORTED_LIMIT) {
+            throw new IllegalStateException("BST with SORTED keys degenerates into a list; skipped above "
+                    + BST_SORTED_LIMIT + " keys");
+        }
+        tree = BenchTree.create(implementation);
+        stream = distribution.stream(size, 42);
+        window = new int[size];
+        for (int i = 0; i < size; i++) {
+            window[i] = stream.next();
+            tree.insert(window[i]);
+        }
+        oldest = 0;
+
+        probes = distribution.keys(Math.min(size, PROBES), 42); // same seed: keys that are in the tree
+        if (probes.length < PROBES) {
+            int[] repeated = new int[PROBES];
+            for (int i = 0; i < PROBES; i++) {
+                repeated[i] = probes[i % probes.length];
+            }
+            probes = repeated;
+        }
+        shuffle(probes);
+        probe = 0;
+    }
+
+    @Benchmark
+    public void insertDelete() {
+        int key = stream.next();
+        tree.insert(key);
+        tree.delete(window[oldest]);
+        window[oldest] = key;
+        oldest = (oldest + 1 == size) ? 0 : oldest + 1;
+    }
+
+    @Benchmark
+    public boolean changeKey() {
+        int key = stream.next();
+        boolean changed = tree.changeKey(window[oldest], key);
+        window[oldest] = key;
+        oldest = (oldest + 1 == size) ? 0 : oldest + 1;
+        return changed;
+    }
+
+    @Benchmark
+    public boolean search() {
+        return tree.contains(probes[probe++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long inorder() {
+        return tree.sumCounts();
+    }
+
+    // Fisher-Yates with a fixed seed, so lookups do not follow insertion order
+    private static void shuffle(int[] keys) {
+        java.util.SplittableRandom random = new java.util.SplittableRandom(7);
+        for (int i = keys.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = keys[i];
+            keys[i] = keys[j];
+            keys[j] = tmp;
+        }
+    }
+}
@@ -1,212 +1,536 @@
-package edu.cn5005.bst;
-
-/*
- AVL Tree extension of BST.
-
- changeKey: change all occurrences of oldKey into newKey, thus, preserving the original count.
- We find node with oldKey (get its count), then delete oldKey completely, then insert newKey count times.
- Then return true if the change was successful (oldKey existed), false otherwise.
-
- Rotation cases:
- - LL: insertion/deletion in left subtree of left child → single right rotation
- - RR: insertion/deletion in right subtree of right child → single left rotation
- - LR: insertion/deletion in right subtree of left child → left rotation, then right
- - RL: insertion/deletion in left subtree of right child → right rotation, then left
-
- Example:
- Insert 9220, 9196, 6789 -> balance = +2 at 9220 -> LL case → rotateRight(9220) with root 9196 and children as 6789 and 9220
- */
-public class AVL extends BST {
-
-    // Returning height of a node (0 for null)
-    private int height(Node node) {
-        return (node == null) ? 0 : node.getHeight();
-    }
-
-    // Balance factor = height(left) - height(right)
-    private int getBalance(Node node) {
-        return (node == null) ? 0 : height(node.getLeft()) - height(node.getRight());
-    }
-
-    // Updating node height based on children
-    private void updateHeight(Node node) {
-        node.setHeight(Math.max(height(node.getLeft()), height(node.getRight())) + 1);
-    }
-
-    // Right rotation (LL case)
-    private Node rotateRight(Node y) {
-        Node x = y.getLeft();
-        Node temp = x.getRight();
-
-        x.setRight(y);
-        y.setLeft(temp);
-
-        updateHeight(y);
-        updateHeight(x);
-
-        return x;
-    }
-
-    // Left rotation (RR case)
-    private Node rotateLeft(Node x) {
-        Node y = x.getRight();
-        Node temp = y.getLeft();
-
-        y.setLeft(x);
-        x.setRight(temp);
-
-        updateHeight(x);
-        updateHeight(y);
-
-        return y;
-    }
-
-    // Overrides BST insert/delete to maintain AVL balance
-    @Override
-    public void insert(int key) {
-        root = insertAVL(root, key);
-    }
-
-    @Override
-    public void delete(int key) {
-        root = deleteAVL(root, key);
-    }
-
-    // Recursive AVL insertion
-    private Node insertAVL(Node node, int key) {
-        if (node == null) {
-            return new Node(key);
-        }
-
-        if (key < node.getKey()) {
-            node.setLeft(insertAVL(node.getLeft(), key));
-        } else if (key > node.getKey()) {
-            node.setRight(insertAVL(node.getRight(), key));
-        } else {
-            node.setCount(node.getCount() + 1); // Duplicate key
-            return node;
-        }
-
-        // Updating height and rebalancing
-        updateHeight(node);
-        int balance = getBalance(node);
-
-        // LL case
-        if (balance > 1 && key < node.getLeft().getKey()) {
-            return rotateRight(node);
-        }
-
-        // RR case
-        if (balance < -1 && key > node.getRight().getKey()) {
-            return rotateLeft(node);
-        }
-
-        // LR case
-        if (balance > 1 && key > node.getLeft().getKey()) {
-            node.setLeft(rotateLeft(node.getLeft()));
-            return rotateRight(node);
-        }
-
-        // RL case
-        if (balance < -1 && key < node.getRight().getKey()) {
-            node.setRight(rotateRight(node.getRight()));
-            return rotateLeft(node);
-        }
-        return node;
-    }
-
-    // Recursive AVL deletion
-    private Node deleteAVL(Node node, int key) {
-        if (node == null) {
-            return null;
-        }
-
-        if (key < node.getKey()) {
-            node.setLeft(deleteAVL(node.getLeft(), key));
-        } else if (key > node.getKey()) {
-            node.setRight(deleteAVL(node.getRight(), key));
-        } else {
-            // Key found
-            if (node.getCount() > 1) {
-                node.setCount(node.getCount() - 1);
-                updateHeight(node); // is needed before returning
-                return node;
-            }
-
-            // Node with one or no children
-            if (node.getLeft() == null) return node.getRight();
-
-            if (node.getRight() == null) return node.getLeft();
-
-            // Node with two children: replacing with inorder successor
-            Node successor = findMin(node.getRight());
-            node.setKey(successor.getKey());
-            node.setCount(successor.getCount());
-            successor.setCount(1);
-            node.setRight(deleteAVL(node.getRight(), successor.getKey()));
-        }
-
-        // Updating height and rebalancing after deletion
-        updateHeight(node);
-        int balance = getBalance(node);
-
-        // LL case
-        if (balance > 1 && getBalance(node.getLeft()) >= 0) {
-            return rotateRight(node);
-        }
-
-        // LR case
-        if (balance > 1 && getBalance(node.getLeft()) < 0) {
-            node.setLeft(rotateLeft(node.getLeft()));
-            return rotateRight(node);
-        }
-
-        // RR case
-        if (balance < -1 && getBalance(node.getRight()) <= 0) {
-            return rotateLeft(node);
-        }
-
-        // RL case
-        if (balance < -1 && getBalance(node.getRight()) > 0) {
-            node.setRight(rotateRight(node.getRight()));
-            return rotateLeft(node);
-        }
-
-        return node;
-    }
-
-    // Finding the minimum key in the subtree
-    private Node findMin(Node node) {
-        while (node.getLeft() != null) {
-            node = node.getLeft();
-        }
-        return node;
-    }
-
-    // Changing all occurrences of oldKey to newKey
-    public boolean changeKey(int oldKey, int newKey) {
-        Node found = search(root, oldKey);
-        if (found == null) {
-            return false;
-        }
-
-        int c = found.getCount();
-        for (int i = 0; i < c; i++) {
-            delete(oldKey);
-        }
-
-        for (int i = 0; i < c; i++) {
-            insert(newKey);
-        }
-
-        return true;
-    }
-
-    // Standard BST search
-    private Node search(Node node, int key) {
-        if (node == null) return null;
-        if (key == node.getKey()) return node;
-        if (key < node.getKey()) return search(node.getLeft(), key);
-        return search(node.getRight(), key);
-    }
-}
\ No newline at end of file
+package edu.cn5005.bst;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.stream.IntStream;
+
+/*
+ AVL Tree extension of BST.
+
+ changeKey: change all occurrences of oldKey into newKey, thus, preserving the original count.
+ We find node with oldKey (get its count), then remove(oldKey, count) unlinks the node in one
+ deletion and add(newKey, count) inserts the whole count in one insertion, so the cost is
+ O(log n) no matter how many duplicates the key has.
+ Then return true if the change was successful (oldKey existed), false otherwise.
+
+ Rotation cases:
+ - LL: insertion/deletion in left subtree of left child → single right rotation
+ - RR: insertion/deletion in right subtree of right child → single left rotation
+ - LR: insertion/deletion in right subtree of left child → left rotation, then right
+ - RL: insertion/deletion in left subtree of right child → right rotation, then left
+
+ Example:
+ Insert 9220, 9196, 6789 -> balance = +2 at 9220 -> LL case → rotateRight(9220) with root 9196 and children as 6789 and 9220
+
+ Order statistics: every node also stores its subtree weight (sum of counts, see Node), which
+ rotations and the insert/delete paths recompute bottom-up. rank, select, countRange and
+ percentile then descend a single root-to-leaf path instead of walking the whole inorder list.
+
+ Finger search (enableFingerSearch): the path of the last insert/delete/search is kept, with
+ the key interval (lower, upper) that each node on it covers. The next operation finds the
+ deepest node on that path whose interval contains the new key (a binary search, as the
+ intervals are nested) and descends from there, so for a key at distance d from the previous
+ one the search costs O(log d) instead of O(log n). Sorted batches and keys that keep coming
+ back to the same neighbourhood profit; random keys start at the root after a few checks. The walk back up still
+ visits every ancestor (heights and weights must be updated), but those nodes are in the
+ path array and in cache already. A rotation changes the tree below the node it happens at,
+ so only the part of the path above it is kept.
+ */
+public class AVL extends BST {
+
+    // Bulk construction (see BST.fromKeys): the perfectly balanced tree is already a valid AVL tree
+    public static AVL fromKeys(int[] keys) {
+        return fromKeys(keys, false);
+    }
+
+    public static AVL fromKeys(int[] keys, boolean parallelSort) {
+        AVL tree = new AVL();
+        tree.root = buildBalanced(sortedCopy(keys, parallelSort));
+        tree.size = keys.length;
+        return tree;
+    }
+
+    public static AVL fromKeys(IntStream keys) {
+        BST built = BST.fromKeys(keys);
+        AVL tree = new AVL();
+        tree.root = built.root;
+        tree.size = built.size;
+        return tree;
+    }
+
+    public static AVL fromSortedKeys(int[] sortedKeys) {
+        AVL tree = new AVL();
+        tree.root = buildBalanced(sortedKeys);
+        tree.size = sortedKeys.length;
+        return tree;
+    }
+
+    // Loading a snapshot saved from an AVL tree (see BST.save); the saved heights are kept as they are
+    public static AVL load(Path file) throws IOException {
+        AVL tree = new AVL();
+        TreeSnapshot.load(tree, file);
+        return tree;
+    }
+
+    // Wrapping an already balanced subtree with correct heights and weights (used by AVLSetOps)
+    static AVL ofRoot(Node root) {
+        AVL tree = new AVL();
+        tree.root = root;
+        tree.size = weight(root);
+        return tree;
+    }
+
+    // Handing the nodes over to another structure, leaving this tree empty
+    Node detachRoot() {
+        Node detached = root;
+        root = null;
+        size = 0;
+        fingerDepth = 0;
+        if (filter != null) {
+            filter.clear();
+        }
+        return detached;
+    }
+
+    // Node helpers (static, they only touch the nodes they are given)
+
+    // Returning height of a node (0 for null)
+    static int height(Node node) {
+        return (node == null) ? 0 : node.getHeight();
+    }
+
+    // Balance factor = height(left) - height(right)
+    static int getBalance(Node node) {
+        return (node == null) ? 0 : height(node.getLeft()) - height(node.getRight());
+    }
+
+    // Returning subtree weight of a node (0 for null)
+    static long weight(Node node) {
+        return (node == null) ? 0 : node.getWeight();
+    }
+
+    // Updating node height and subtree weight based on children
+    static void updateNode(Node node) {
+        node.setHeight(Math.max(height(node.getLeft()), height(node.getRight())) + 1);
+        node.setWeight(node.getCount() + weight(node.getLeft()) + weight(node.getRight()));
+    }
+
+    // Right rotation (LL case)
+    static Node rotateRight(Node y) {
+        Node x = y.getLeft();
+        Node temp = x.getRight();
+
+        x.setRight(y);
+        y.setLeft(temp);
+
+        updateNode(y);
+        updateNode(x);
+
+        return x;
+    }
+
+    // Left rotation (RR case)
+    static Node rotateLeft(Node x) {
+        Node y = x.getRight();
+        Node temp = y.getLeft();
+
+        y.setLeft(x);
+        x.setRight(temp);
+
+        updateNode(x);
+        updateNode(y);
+
+        return y;
+    }
+
+    // Overrides BST add/remove (and with them insert/delete) to maintain AVL balance
+    @Override
+    public void add(int key, int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("n must not be negative: " + n);
+        }
+        if (n == 0) {
+            return;
+        }
+        insertAVL(key, n);
+        size += n;
+    }
+
+    @Override
+    public int remove(int key, int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("n must not be negative: " + n);
+        }
+        if (n == 0 || filteredOut(key)) {
+            return 0;
+        }
+        int removed = deleteAVL(key, n);
+        if (removed == 0) {
+            filterMissed();
+        }
+        size -= removed;
+        return removed;
+    }
+
+    // Nodes visited on the way down, reused by every insert/delete so the
+    // rebalancing pass can walk back up without recursion
+    private Node[] path = new Node[64];
+    private int depth;
+
+    // Finger search: every key in the subtree of path[i] is in (lower[i], upper[i]),
+    // and path[0 .. fingerDepth) is still a root-to-node path of the current tree
+    private boolean finger;
+    private long[] lower = new long[64];
+    private long[] upper = new long[64];
+    private int fingerDepth;
+    private int climbed; // intervals of the old path checked, for recordPath
+
+    public void enableFingerSearch() {
+        finger = true;
+        fingerDepth = 0;
+    }
+
+    public void disableFingerSearch() {
+        finger = false;
+    }
+
+    private void push(Node node) {
+        if (depth == path.length) {
+            path = Arrays.copyOf(path, depth * 2);
+            lower = Arrays.copyOf(lower, depth * 2);
+            upper = Arrays.copyOf(upper, depth * 2);
+        }
+        if (finger) {
+            if (depth == 0) {
+                lower[0] = Long.MIN_VALUE;
+                upper[0] = Long.MAX_VALUE;
+            } else if (node.getKey() < path[depth - 1].getKey()) {
+                lower[depth] = lower[depth - 1];
+                upper[depth] = path[depth - 1].getKey();
+            } else {
+                lower[depth] = path[depth - 1].getKey();
+                upper[depth] = upper[depth - 1];
+            }
+        }
+        path[depth++] = node;
+    }
+
+    // Where a descent for key starts: the root, or with finger search the deepest node of the
+    // last path whose subtree covers key (path[0 .. depth) is then kept as its ancestors)
+    private Node startDescent(int key) {
+        climbed = 0;
+        if (!finger || fingerDepth == 0) {
+            depth = 0;
+            return root;
+        }
+        // The intervals are nested, so the deepest one that covers key is found by binary search
+        int covered = 0;
+        int notCovered = fingerDepth;
+        while (notCovered - covered > 1) {
+            int mid = (covered + notCovered) >>> 1;
+            climbed++;
+            if (lower[mid] < key && key < upper[mid]) {
+                covered = mid;
+            } else {
+                notCovered = mid;
+            }
+        }
+        depth = covered;
+        return path[covered];
+    }
+
+    // Keeping path[0 .. valid) for the next finger search, followed by last when it is given
+    private void keepFinger(int valid, Node last) {
+        if (finger) {
+            depth = valid;
+            if (last != null) {
+                push(last);
+            }
+            fingerDepth = depth;
+        }
+    }
+
+    @Override
+    protected Node search(int key) {
+        if (!finger) {
+            return super.search(key);
+        }
+        Node node = startDescent(key);
+        int start = depth;
+        while (node != null && key != node.getKey()) {
+            push(node);
+            node = (key < node.getKey()) ? node.getLeft() : node.getRight();
+        }
+        recordPath(depth - start + climbed + ((node == null) ? 0 : 1));
+        keepFinger(depth, node);
+        return node;
+    }
+
+    // Adjusting the weight of node and of its ancestors on the path after a count-only change
+    private void addWeightOnPath(Node node, long delta) {
+        node.setWeight(node.getWeight() + delta);
+        for (int i = 0; i < depth; i++) {
+            path[i].setWeight(path[i].getWeight() + delta);
+        }
+    }
+
+    // Replacing oldChild with newChild under parent (or at the root when parent is null)
+    private void relink(Node parent, Node oldChild, Node newChild) {
+        if (parent == null) {
+            root = newChild;
+        } else if (parent.getLeft() == oldChild) {
+            parent.setLeft(newChild);
+        } else {
+            parent.setRight(newChild);
+        }
+    }
+
+    // Iterative AVL insertion of n occurrences
+    private void insertAVL(int key, int n) {
+        Node node = startDescent(key);
+        int start = depth;
+        while (node != null) {
+            if (key == node.getKey()) {
+                recordPath(depth - start + climbed + 1);
+                node.setCount(Math.addExact(node.getCount(), n)); // Duplicate key: no structural change
+                addWeightOnPath(node, n);
+                keepFinger(depth, node);
+                return;
+            }
+            push(node);
+            node = (key < node.getKey()) ? node.getLeft() : node.getRight();
+        }
+        recordPath(depth - start + climbed);
+
+        Node leaf = newNode(key, n);
+        Node child = leaf;
+        int length = depth;
+        int valid = length; // path[0 .. valid) is untouched by rotations
+
+        // Walking back up: attaching the (possibly rotated) subtree to its parent and rebalancing
+        while (depth > 0) {
+            Node parent = path[--depth];
+            if (key < parent.getKey()) {
+                parent.setLeft(child);
+            } else {
+                parent.setRight(child);
+            }
+            child = rebalanceInsert(parent, key);
+            if (child != parent) {
+                valid = depth;
+            }
+        }
+        root = child;
+        keepFinger(valid, (valid == length) ? leaf : null);
+    }
+
+    // Updating height and rebalancing a node on the insertion path
+    private Node rebalanceInsert(Node node, int key) {
+        updateNode(node);
+        int balance = getBalance(node);
+
+        // LL case
+        if (balance > 1 && key < node.getLeft().getKey()) {
+            recordRotation(TreeMetrics.Rotation.LL);
+            return rotateRight(node);
+        }
+
+        // RR case
+        if (balance < -1 && key > node.getRight().getKey()) {
+            recordRotation(TreeMetrics.Rotation.RR);
+            return rotateLeft(node);
+        }
+
+        // LR case
+        if (balance > 1 && key > node.getLeft().getKey()) {
+            recordRotation(TreeMetrics.Rotation.LR);
+            node.setLeft(rotateLeft(node.getLeft()));
+            return rotateRight(node);
+        }
+
+        // RL case
+        if (balance < -1 && key < node.getRight().getKey()) {
+            recordRotation(TreeMetrics.Rotation.RL);
+            node.setRight(rotateRight(node.getRight()));
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    // Iterative AVL deletion of up to n occurrences
+    private int deleteAVL(int key, int n) {
+        Node node = startDescent(key);
+        int start = depth;
+        while (node != null && key != node.getKey()) {
+            push(node);
+            node = (key < node.getKey()) ? node.getLeft() : node.getRight();
+        }
+        recordPath(depth - start + climbed + ((node == null) ? 0 : 1));
+
+        if (node == null) {
+            keepFinger(depth, null);
+            return 0; // Key not found
+        }
+
+        // Key found
+        int count = node.getCount();
+        if (count > n) {
+            node.setCount(count - n); // No structural change
+            addWeightOnPath(node, -n);
+            keepFinger(depth, node);
+            return n;
+        }
+        int valid = depth; // path[0 .. valid) will still be a path of the tree
+
+        Node removed = node;
+        Node child;
+        if (node.getLeft() == null) {
+            child = node.getRight(); // Node with one or no children
+        } else if (node.getRight() == null) {
+            child = node.getLeft();
+        } else {
+            // Node with two children: replacing with inorder successor, then unlinking the
+            // successor (which has no left child) from the right subtree. The intervals
+            // below node were computed from its old key, so the finger stops at node
+            valid = depth + 1;
+            push(node);
+            Node successor = node.getRight();
+            while (successor.getLeft() != null) {
+                push(successor);
+                successor = successor.getLeft();
+            }
+            node.setKey(successor.getKey());
+            node.setCount(successor.getCount());
+            removed = successor;
+            child = successor.getRight();
+        }
+
+        // Walking back up: relinking each rebalanced subtree under its parent
+        Node oldChild = removed;
+        while (depth > 0) {
+            Node parent = path[--depth];
+            relink(parent, oldChild, child);
+            oldChild = parent;
+            child = rebalanceDelete(parent);
+            if (child != parent) {
+                valid = Math.min(valid, depth);
+            }
+        }
+        root = child;
+        release(removed);
+        keyRemoved(key);
+        keepFinger(valid, null);
+        return count;
+    }
+
+    // Updating height and rebalancing a node on the deletion path
+    private Node rebalanceDelete(Node node) {
+        updateNode(node);
+        int balance = getBalance(node);
+
+        // LL case
+        if (balance > 1 && getBalance(node.getLeft()) >= 0) {
+            recordRotation(TreeMetrics.Rotation.LL);
+            return rotateRight(node);
+        }
+
+        // LR case
+        if (balance > 1 && getBalance(node.getLeft()) < 0) {
+            recordRotation(TreeMetrics.Rotation.LR);
+            node.setLeft(rotateLeft(node.getLeft()));
+            return rotateRight(node);
+        }
+
+        // RR case
+        if (balance < -1 && getBalance(node.getRight()) <= 0) {
+            recordRotation(TreeMetrics.Rotation.RR);
+            return rotateLeft(node);
+        }
+
+        // RL case
+        if (balance < -1 && getBalance(node.getRight()) > 0) {
+            recordRotation(TreeMetrics.Rotation.RL);
+            node.setRight(rotateRight(node.getRight()));
+            return rotateLeft(node);
+        }
+
+        return node;
+    }
+
+    // Order statistics (all O(log n), counting duplicates)
+
+    // Number of occurrences with a key smaller than key
+    public long rank(int key) {
+        long rank = 0;
+        Node node = root;
+        while (node != null) {
+            if (key <= node.getKey()) {
+                node = node.getLeft();
+            } else {
+                rank += weight(node.getLeft()) + node.getCount();
+                node = node.getRight();
+            }
+        }
+        return rank;
+    }
+
+    // Number of occurrences with a key smaller than or equal to key
+    public long rankInclusive(int key) {
+        long rank = 0;
+        Node node = root;
+        while (node != null) {
+            if (key < node.getKey()) {
+                node = node.getLeft();
+            } else {
+                rank += weight(node.getLeft()) + node.getCount();
+                node = node.getRight();
+            }
+        }
+        return rank;
+    }
+
+    // The k-th smallest key (k starts at 0), each key repeated count times
+    public int select(long k) {
+        if (k < 0 || k >= size) {
+            throw new IndexOutOfBoundsException("k = " + k + ", size = " + size);
+        }
+        Node node = root;
+        while (true) {
+            long leftWeight = weight(node.getLeft());
+            if (k < leftWeight) {
+                node = node.getLeft();
+            } else if (k < leftWeight + node.getCount()) {
+                return node.getKey();
+            } else {
+                k -= leftWeight + node.getCount();
+                node = node.getRight();
+            }
+        }
+    }
+
+    // Number of occurrences with from <= key <= to
+    public long countRange(int from, int to) {
+        if (from > to) {
+            return 0;
+        }
+        return rankInclusive(to) - rank(from);
+    }
+
+    // Nearest-rank percentile: the smallest key with at least p% of all occurrences at or below it
+    public int percentile(double p) {
+        if (p < 0 || p > 100 || Double.isNaN(p)) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + p);
+        }
+        if (size == 0) {
+            throw new NoSuchElementException("Tree is empty");
+        }
+        long k = (long) Math.ceil(p / 100.0 * size) - 1;
+        return select(Math.max(0, k));
+    }
+
+    public int median() {
+        return percentile(50);
+    }
+}
@@ -0,0 +1,288 @@
+package edu.cn5005.bst;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+ Join-based set operations on AVL trees (Blelloch, Ferizovic and Sun, "Just Join for
+ Parallel Ordered Sets").
+
+ Everything is built on join(L, k, R), which links two AVL trees whose keys are all smaller /
+ all larger than k: it walks down the spine of the taller tree until the heights are within
+ one, links there and rebalances on the way back up, in O(|h(L) - h(R)|).
+ split(T, k) cuts T into the keys < k, the node holding k (if any) and the keys > k with
+ O(log n) joins.
+
+ union / intersection / difference split one tree by the root of the other and recurse on the
+ two halves independently; the halves share no nodes, so they run as fork/join tasks. For two
+ trees of sizes m <= n the work is O(m log(n/m + 1)).
+
+ Duplicate counts combine as multisets:
+ - union: counts are added
+ - intersection: the smaller count is kept
+ - difference (a minus b): b's count is subtracted from a's, keys that drop to 0 disappear
+
+ The operations reuse the nodes of their arguments instead of copying them, so the argument
+ trees are consumed: they are left empty and the result owns the nodes.
+ */
+public final class AVLSetOps {
+
+    // Below this many occurrences a subproblem runs sequentially in the current task
+    private static final long PARALLEL_THRESHOLD = 1 << 13;
+
+    private AVLSetOps() {
+    }
+
+    // Result of split: the keys < key, the count of key itself (0 if absent) and the keys > key
+    public static final class Split {
+        public final AVL less;
+        public final int count;
+        public final AVL greater;
+
+        Split(AVL less, int count, AVL greater) {
+            this.less = less;
+            this.count = count;
+            this.greater = greater;
+        }
+    }
+
+    // Splitting tree around key (the tree is consumed)
+    public static Split split(AVL tree, int key) {
+        NodeSplit s = split(tree.detachRoot(), key);
+        int count = (s.middle == null) ? 0 : s.middle.getCount();
+        return new Split(AVL.ofRoot(s.less), count, AVL.ofRoot(s.greater));
+    }
+
+    // Joining left, one key and right, where every key of left < key < every key of right
+    public static AVL join(AVL left, int key, AVL right) {
+        return join(left, key, 1, right);
+    }
+
+    public static AVL join(AVL left, int key, int count, AVL right) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("count must be positive: " + count);
+        }
+        if ((!left.isEmpty() && left.last() >= key) || (!right.isEmpty() && right.first() <= key)) {
+            throw new IllegalArgumentException("join needs all keys of left < " + key + " < all keys of right");
+        }
+        Node middle = new Node(key);
+        middle.setCount(count);
+        return AVL.ofRoot(join(left.detachRoot(), middle, right.detachRoot()));
+    }
+
+    public static AVL union(AVL a, AVL b) {
+        return AVL.ofRoot(ForkJoinPool.commonPool().invoke(
+                new SetTask(Op.UNION, a.detachRoot(), b.detachRoot())));
+    }
+
+    public static AVL intersection(AVL a, AVL b) {
+        return AVL.ofRoot(ForkJoinPool.commonPool().invoke(
+                new SetTask(Op.INTERSECTION, a.detachRoot(), b.detachRoot())));
+    }
+
+    // a minus b
+    public static AVL difference(AVL a, AVL b) {
+        return AVL.ofRoot(ForkJoinPool.commonPool().invoke(
+                new SetTask(Op.DIFFERENCE, a.detachRoot(), b.detachRoot())));
+    }
+
+    // Node-level algorithms
+
+    private static final class NodeSplit {
+        final Node less;
+        final Node middle;
+        final Node greater;
+
+        NodeSplit(Node less, Node middle, Node greater) {
+            this.less = less;
+            this.middle = middle;
+            this.greater = greater;
+        }
+    }
+
+    private static NodeSplit split(Node t, int key) {
+        if (t == null) {
+            return new NodeSplit(null, null, null);
+        }
+        Node left = t.getLeft();
+        Node right = t.getRight();
+        if (key == t.getKey()) {
+            return new NodeSplit(left, detach(t), right);
+        }
+        if (key < t.getKey()) {
+            NodeSplit s = split(left, key);
+            return new NodeSplit(s.less, s.middle, join(s.greater, detach(t), right));
+        }
+        NodeSplit s = split(right, key);
+        return new NodeSplit(join(left, detach(t), s.less), s.middle, s.greater);
+    }
+
+    // Clearing the children of a node that is about to be relinked by join
+    private static Node detach(Node node) {
+        node.setLeft(null);
+        node.setRight(null);
+        return node;
+    }
+
+    // Linking left, middle and right (all keys of left < middle < all keys of right)
+    static Node join(Node left, Node middle, Node right) {
+        int hl = AVL.height(left);
+        int hr = AVL.height(right);
+        if (hl > hr + 1) {
+            return joinRight(left, middle, right);
+        }
+        if (hr > hl + 1) {
+            return joinLeft(left, middle, right);
+        }
+        return link(left, middle, right);
+    }
+
+    // left is taller: descending its right spine until the heights match
+    private static Node joinRight(Node left, Node middle, Node right) {
+        Node c = left.getRight();
+        if (AVL.height(c) <= AVL.height(right) + 1) {
+            Node t = link(c, middle, right);
+            if (AVL.height(t) <= AVL.height(left.getLeft()) + 1) {
+                return link(left.getLeft(), left, t);
+            }
+            left.setRight(AVL.rotateRight(t));
+            AVL.updateNode(left);
+            return AVL.rotateLeft(left);
+        }
+
+        Node t = joinRight(c, middle, right);
+        left.setRight(t);
+        AVL.updateNode(left);
+        if (AVL.height(t) <= AVL.height(left.getLeft()) + 1) {
+            return left;
+        }
+        return AVL.rotateLeft(left);
+    }
+
+    // right is taller: descending its left spine until the heights match
+    private static Node joinLeft(Node left, Node middle, Node right) {
+        Node c = right.getLeft();
+        if (AVL.height(c) <= AVL.height(left) + 1) {
+            Node t = link(left, middle, c);
+            if (AVL.height(t) <= AVL.height(right.getRight()) + 1) {
+                return link(t, right, right.getRight());
+            }
+            right.setLeft(AVL.rotateLeft(t));
+            AVL.updateNode(right);
+            return AVL.rotateRight(right);
+        }
+
+        Node t = joinLeft(left, middle, c);
+        right.setLeft(t);
+        AVL.updateNode(right);
+        if (AVL.height(t) <= AVL.height(right.getRight()) + 1) {
+            return right;
+        }
+        return AVL.rotateRight(right);
+    }
+
+    private static Node link(Node left, Node middle, Node right) {
+        middle.setLeft(left);
+        middle.setRight(right);
+        AVL.updateNode(middle);
+        return middle;
+    }
+
+    // Joining two trees without a middle key, using the last node of left as the middle
+    private static Node join2(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        Node[] last = new Node[1];
+        Node rest = splitLast(left, last);
+        return join(rest, last[0], right);
+    }
+
+    // Removing the node with the greatest key from t; it is returned through last[0]
+    private static Node splitLast(Node t, Node[] last) {
+        Node right = t.getRight();
+        if (right == null) {
+            last[0] = t;
+            Node rest = t.getLeft();
+            detach(t);
+            return rest;
+        }
+        Node rest = splitLast(right, last);
+        Node left = t.getLeft();
+        return join(left, detach(t), rest);
+    }
+
+    private enum Op { UNION, INTERSECTION, DIFFERENCE }
+
+    // One recursive step of union/intersection/difference, forking the left half when it is large
+    // (ForkJoinTask is Serializable, but these tasks are never serialized)
+    @SuppressWarnings("serial")
+    private static final class SetTask extends RecursiveTask<Node> {
+        private final Op op;
+        private final Node a;
+        private final Node b;
+
+        SetTask(Op op, Node a, Node b) {
+            this.op = op;
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        protected Node compute() {
+            return run(op, a, b);
+        }
+
+        private static Node run(Op op, Node a, Node b) {
+            if (a == null) {
+                return (op == Op.UNION) ? b : null;
+            }
+            if (b == null) {
+                return (op == Op.INTERSECTION) ? null : a;
+            }
+
+            // Splitting b by the root of a; a's root node is reused as the middle of the join
+            Node root = a;
+            Node aLeft = root.getLeft();
+            Node aRight = root.getRight();
+            detach(root);
+            NodeSplit s = split(b, root.getKey());
+
+            Node left;
+            Node right;
+            if (AVL.weight(aLeft) + AVL.weight(s.less) > PARALLEL_THRESHOLD
+                    && AVL.weight(aRight) + AVL.weight(s.greater) > PARALLEL_THRESHOLD) {
+                SetTask leftTask = new SetTask(op, aLeft, s.less);
+                leftTask.fork();
+                right = run(op, aRight, s.greater);
+                left = leftTask.join();
+            } else {
+                left = run(op, aLeft, s.less);
+                right = run(op, aRight, s.greater);
+            }
+
+            int bCount = (s.middle == null) ? 0 : s.middle.getCount();
+            int count;
+            switch (op) {
+                case UNION:
+                    count = Math.addExact(root.getCount(), bCount);
+                    break;
+                case INTERSECTION:
+                    count = Math.min(root.getCount(), bCount);
+                    break;
+                default:
+                    count = root.getCount() - bCount;
+                    break;
+            }
+
+            if (count <= 0) {
+                return join2(left, right);
+            }
+            root.setCount(count);
+            return AVLSetOps.join(left, root, right);
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package edu.cn5005.bst;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ AVL Tree stored in parallel primitive arrays instead of Node objects (struct-of-arrays).
+
+ Every node is an index into the arrays:
+ - key[i], count[i]: the key and its number of duplicates (same policy as BST/AVL)
+ - height[i]: AVL height of the subtree (a byte is enough, AVL height stays below 64)
+ - left[i], right[i]: indexes of the children, NIL (0) when there is no child
+
+ Index 0 is a sentinel with height 0, so "height of a missing child" needs no null check.
+ Deleted slots are chained into a free-list through left[] and reused by later inserts,
+ so the arrays only grow when every slot is in use.
+
+ A Node object costs about 40 bytes (12 byte header, three ints, two compressed references
+ and the long weight used for rank/select) plus the pointer chasing between objects; here a
+ node costs 17 bytes in five arrays (see memoryPerKey()), a bit over half the memory.
+ */
+public class ArrayAVL {
+
+    private static final int NIL = 0;
+    private static final int BYTES_PER_SLOT = 4 + 4 + 1 + 4 + 4; // key, count, height, left, right
+
+    private int[] key;
+    private int[] count;
+    private byte[] height;
+    private int[] left;
+    private int[] right;
+
+    private int root = NIL;
+    private int nextSlot = 1; // first never-used slot (0 is the sentinel)
+    private int freeHead = NIL; // head of the free-list of deleted slots
+    private int nodes; // number of distinct keys
+
+    // Indexes visited on the way down, used to rebalance on the way back up
+    private int[] path = new int[64];
+    private int depth;
+
+    public ArrayAVL() {
+        this(16);
+    }
+
+    // Pre-sizing the arrays avoids repeated growth when the number of keys is known
+    public ArrayAVL(int initialCapacity) {
+        int capacity = Math.max(2, initialCapacity + 1);
+        key = new int[capacity];
+        count = new int[capacity];
+        height = new byte[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+    }
+
+    // Inserting a key (duplicates increase count)
+    public void insert(int k) {
+        add(k, 1);
+    }
+
+    // Deleting one occurrence of a key (the slot is freed when count reaches 0)
+    public void delete(int k) {
+        depth = 0;
+        int node = root;
+        while (node != NIL && k != key[node]) {
+            push(node);
+            node = (k < key[node]) ? left[node] : right[node];
+        }
+
+        if (node == NIL) {
+            return; // Key not found
+        }
+
+        if (count[node] > 1) {
+            count[node]--;
+            return;
+        }
+        unlink(node);
+    }
+
+    // Changing all occurrences of oldKey to newKey, moving the whole count at once
+    public boolean changeKey(int oldKey, int newKey) {
+        int node = find(oldKey);
+        if (node == NIL) {
+            return false;
+        }
+        if (oldKey == newKey) {
+            return true;
+        }
+
+        int c = count[node];
+        depth = 0;
+        int current = root;
+        while (current != node) {
+            push(current);
+            current = (oldKey < key[current]) ? left[current] : right[current];
+        }
+        unlink(node);
+        add(newKey, c);
+        return true;
+    }
+
+    // Returning the number of occurrences of a key (0 if absent)
+    public int count(int k) {
+        int node = find(k);
+        return (node == NIL) ? 0 : count[node];
+    }
+
+    public boolean contains(int k) {
+        return find(k) != NIL;
+    }
+
+    // Number of distinct keys (nodes) in the tree
+    public int nodeCount() {
+        return nodes;
+    }
+
+    // Bytes held by the five arrays (including unused capacity and free slots)
+    public long memoryBytes() {
+        return (long) key.length * BYTES_PER_SLOT;
+    }
+
+    // Average bytes per stored key, counting the spare capacity of the arrays
+    public double memoryPerKey() {
+        return (nodes == 0) ? 0.0 : (double) memoryBytes() / nodes;
+    }
+
+    // Human readable memory report
+    public String memoryReport() {
+        return String.format("ArrayAVL: %d keys, %d slots, %d bytes (%.1f bytes/key, %d bytes/slot)",
+                nodes, key.length - 1, memoryBytes(), memoryPerKey(), BYTES_PER_SLOT);
+    }
+
+    // Returning preorder traversal (root, left, right)
+    public List<String> preorder() {
+        List<String> preorder_list = new ArrayList<>();
+        if (root == NIL) {
+            return preorder_list;
+        }
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            preorder_list.add(key[node] + ":" + count[node]);
+            if (top + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            if (right[node] != NIL) stack[top++] = right[node];
+            if (left[node] != NIL) stack[top++] = left[node];
+        }
+        return preorder_list;
+    }
+
+    // Returning inorder traversal (sorted order)
+    public List<String> inorder() {
+        List<String> inorder_list = new ArrayList<>();
+        int[] stack = new int[64];
+        int top = 0;
+        int node = root;
+        while (node != NIL || top > 0) {
+            while (node != NIL) {
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = node;
+                node = left[node];
+            }
+            node = stack[--top];
+            inorder_list.add(key[node] + ":" + count[node]);
+            node = right[node];
+        }
+        return inorder_list;
+    }
+
+    // Returning postorder traversal (left, right, root)
+    public List<String> postorder() {
+        List<String> postorder_list = new ArrayList<>();
+        int[] stack = new int[64];
+        int top = 0;
+        int node = root;
+        int lastVisited = NIL;
+        while (node != NIL || top > 0) {
+            while (node != NIL) {
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = node;
+                node = left[node];
+            }
+            int peek = stack[top - 1];
+            if (right[peek] != NIL && right[peek] != lastVisited) {
+                node = right[peek];
+            } else {
+                postorder_list.add(key[peek] + ":" + count[peek]);
+                lastVisited = stack[--top];
+            }
+        }
+        return postorder_list;
+    }
+
+    // Inserting n occurrences of a key with a single descent
+    private void add(int k, int n) {
+        depth = 0;
+        int node = root;
+        while (node != NIL) {
+            if (k == key[node]) {
+                count[node] = Math.addExact(count[node], n); // Duplicate key: no structural change
+                return;
+            }
+            push(node);
+            node = (k < key[node]) ? left[node] : right[node];
+        }
+
+        int child = allocate(k, n);
+
+        // Walking back up: attaching the (possibly rotated) subtree and rebalancing,
+        // stopping as soon as a subtree keeps both its root and its height
+        while (depth > 0) {
+            int parent = path[--depth];
+            int oldHeight = height[parent];
+            if (k < key[parent]) {
+                left[parent] = child;
+            } else {
+                right[parent] = child;
+            }
+            child = rebalance(parent);
+            if (child == parent && height[parent] == oldHeight) {
+                return;
+            }
+        }
+        root = child;
+    }
+
+    // Removing a node whose ancestors are already on the path stack
+    private void unlink(int node) {
+        int removed = node;
+        int child;
+        if (left[node] == NIL) {
+            child = right[node];
+        } else if (right[node] == NIL) {
+            child = left[node];
+        } else {
+            // Two children: moving the inorder successor into this slot, then unlinking the successor
+            push(node);
+            int successor = right[node];
+            while (left[successor] != NIL) {
+                push(successor);
+                successor = left[successor];
+            }
+            key[node] = key[successor];
+            count[node] = count[successor];
+            removed = successor;
+            child = right[successor];
+        }
+        release(removed);
+
+        // Walking back up: relinking and rebalancing each subtree on the path
+        int oldChild = removed;
+        while (depth > 0) {
+            int parent = path[--depth];
+            int oldHeight = height[parent];
+            if (left[parent] == oldChild) {
+                left[parent] = child;
+            } else {
+                right[parent] = child;
+            }
+            oldChild = parent;
+            child = rebalance(parent);
+            if (child == parent && height[parent] == oldHeight) {
+                return;
+            }
+        }
+        root = child;
+    }
+
+    // Iterative search, returning the slot holding k or NIL
+    private int find(int k) {
+        int node = root;
+        while (node != NIL && k != key[node]) {
+            node = (k < key[node]) ? left[node] : right[node];
+        }
+        return node;
+    }
+
+    private void push(int node) {
+        if (depth == path.length) {
+            path = Arrays.copyOf(path, depth * 2);
+        }
+        path[depth++] = node;
+    }
+
+    // Taking a slot from the free-list, or the next unused slot (growing the arrays if needed)
+    private int allocate(int k, int n) {
+        int slot;
+        if (freeHead != NIL) {
+            slot = freeHead;
+            freeHead = left[slot];
+        } else {
+            if (nextSlot == key.length) {
+                grow();
+            }
+            slot = nextSlot++;
+        }
+        key[slot] = k;
+        count[slot] = n;
+        height[slot] = 1;
+        left[slot] = NIL;
+        right[slot] = NIL;
+        nodes++;
+        return slot;
+    }
+
+    // Returning a slot to the free-list
+    private void release(int slot) {
+        count[slot] = 0;
+        height[slot] = 0;
+        right[slot] = NIL;
+        left[slot] = freeHead;
+        freeHead = slot;
+        nodes--;
+    }
+
+    private void grow() {
+        int capacity = key.length + (key.length >> 1) + 1;
+        key = Arrays.copyOf(key, capacity);
+        count = Arrays.copyOf(count, capacity);
+        height = Arrays.copyOf(height, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+    }
+
+    private void updateHeight(int node) {
+        height[node] = (byte) (Math.max(height[left[node]], height[right[node]]) + 1);
+    }
+
+    private int getBalance(int node) {
+        return height[left[node]] - height[right[node]];
+    }
+
+    // Right rotation (LL case)
+    private int rotateRight(int y) {
+        int x = left[y];
+        left[y] = right[x];
+        right[x] = y;
+        updateHeight(y);
+        updateHeight(x);
+        return x;
+    }
+
+    // Left rotation (RR case)
+    private int rotateLeft(int x) {
+        int y = right[x];
+        right[x] = left[y];
+        left[y] = x;
+        updateHeight(x);
+        updateHeight(y);
+        return y;
+    }
+
+    // Updating height and restoring the AVL property at one node (LL, LR, RR, RL cases)
+    private int rebalance(int node) {
+        updateHeight(node);
+        int balance = getBalance(node);
+
+        if (balance > 1) {
+            if (getBalance(left[node]) < 0) {
+                left[node] = rotateLeft(left[node]); // LR case
+            }
+            return rotateRight(node); // LL case
+        }
+
+        if (balance < -1) {
+            if (getBalance(right[node]) > 0) {
+                right[node] = rotateRight(right[node]); // RL case
+            }
+            return rotateLeft(node); // RR case
+        }
+        return node;
+    }
+}
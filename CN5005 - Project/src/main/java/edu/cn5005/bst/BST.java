@@ -1,145 +1,704 @@
-package edu.cn5005.bst;
-
-/*
-Inserting null or non-integers:
-In Java, int can't be null, so if we insert a null value, it will give an error, as
-int is a primitive type and they can't be null
-If we input non-integers e.g String or double number it will throw compile-time error
-as we have defined "key" as int.
-
-We chose the policy: when duplicate count > 1, "delete" decreases count by 1.
-Only when count reaches 0 (handled by replacing/removing node) the node is removed.
- */
-
-import java.util.ArrayList;
-import java.util.List;
-
-public class BST {
-    protected Node root;
-
-    public BST() {
-        root = null;
-    }
-
-    // Inserting a key into the BST
-    public void insert(int key) {
-        root = insertRec(root, key);
-    }
-
-    // Deleting a key from the BST
-    public void delete(int key) {
-        root = deleteRec(root, key);
-    }
-
-    // Returning preorder traversal (root, left, right)
-    public List<String> preorder() {
-        List<String> preorder_list = new ArrayList<>();
-        preorderRec(root, preorder_list);
-        return preorder_list;
-    }
-
-    // Returning inorder traversal (sorted order)
-    public List<String> inorder() {
-        List<String> inorder_list = new ArrayList<>();
-        inorderRec(root, inorder_list);
-        return inorder_list;
-    }
-
-    // Returning postorder traversal (left, right, root)
-    public List<String> postorder() {
-        List<String> postorder_list = new ArrayList<>();
-        postOrderRec(root, postorder_list);
-        return postorder_list;
-    }
-
-    // Recursive BST insertion
-    private Node insertRec(Node node, int key) {
-        if (node == null) {
-            return new Node(key);
-        }
-
-        if (key < node.getKey()) {
-            node.setLeft(insertRec(node.getLeft(), key));
-        } else if (key > node.getKey()) {
-            node.setRight(insertRec(node.getRight(), key));
-        } else {
-            node.setCount(node.getCount() + 1); // Duplicate key
-        }
-        return node;
-    }
-
-    // Recursive BST deletion
-    private Node deleteRec(Node node, int key) {
-        if (node == null) {
-            return null;
-        }
-
-        if (key < node.getKey()) {
-            node.setLeft(deleteRec(node.getLeft(), key));
-            return node;
-        } else if (key > node.getKey()) {
-            node.setRight(deleteRec(node.getRight(), key));
-            return node;
-        } else {
-            // Key found
-            if (node.getCount() > 1) {
-                node.setCount(node.getCount() - 1);
-                return node;
-            }
-
-            // Node with one or no children
-            if (node.getLeft() == null)
-                return node.getRight();
-
-            if (node.getRight() == null)
-                return node.getLeft();
-
-            // Node with two children: replacing with inorder successor
-            Node successor = findMin(node.getRight());
-            node.setKey(successor.getKey());
-            node.setCount(1);
-            node.setRight(deleteRec(node.getRight(), successor.getKey()));
-
-            return node;
-        }
-    }
-
-    // Finding the minimum key in the subtree
-    private Node findMin(Node node) {
-        while (node.getLeft() != null) {
-            node = node.getLeft();
-        }
-        return node;
-    }
-
-    // Preorder traversal helper method
-    private void preorderRec(Node node, List<String> preorder_list) {
-        if (node == null) {
-            return;
-        }
-        preorder_list.add(node.getKey() + ":" + node.getCount());
-        preorderRec(node.getLeft(), preorder_list);
-        preorderRec(node.getRight(), preorder_list);
-    }
-
-    // Inorder traversal helper method
-    private void inorderRec(Node node, List<String> inorder_list) {
-        if (node == null) {
-            return;
-        }
-        inorderRec(node.getLeft(), inorder_list);
-        inorder_list.add(node.getKey() + ":" + node.getCount());
-        inorderRec(node.getRight(), inorder_list);
-    }
-
-    // Postorder traversal helper method
-    private void postOrderRec(Node node, List<String> postorder_list) {
-        if (node == null) {
-            return;
-        }
-        postOrderRec(node.getLeft(), postorder_list);
-        postOrderRec(node.getRight(), postorder_list);
-        postorder_list.add(node.getKey() + ":" + node.getCount());
-    }
-}
-
+package edu.cn5005.bst;
+
+/*
+Inserting null or non-integers:
+In Java, int can't be null, so if we insert a null value, it will give an error, as
+int is a primitive type and they can't be null
+If we input non-integers e.g String or double number it will throw compile-time error
+as we have defined "key" as int.
+
+We chose the policy: when duplicate count > 1, "delete" decreases count by 1.
+Only when count reaches 0 (handled by replacing/removing node) the node is removed.
+
+Multiset view: add(key, n) and remove(key, n) change the count of a key by n in a single
+descent, so insert/delete are just add(key, 1)/remove(key, 1). size() is the total number of
+occurrences (the sum of all counts) and is kept up to date, so it costs O(1).
+
+BST is the unbalanced implementation of OrderedMultiset; AVL, RedBlackTree, WAVLTree and
+Treap extend it and only replace add/remove with their own balancing.
+ */
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+public class BST implements OrderedMultiset {
+    protected Node root;
+    protected long size; // sum of all counts
+    protected TreeMetrics metrics; // null unless enableMetrics() was called
+    protected NodePool pool; // null unless enableNodePool() was called
+    protected KeyFilter filter; // null unless enableKeyFilter() was called
+
+    public BST() {
+        root = null;
+    }
+
+    // Bulk construction: sorting a copy of the keys, collapsing duplicates into count
+    // and building a perfectly balanced tree in one linear pass over the sorted keys
+    public static BST fromKeys(int[] keys) {
+        return fromKeys(keys, false);
+    }
+
+    // parallelSort = true sorts large inputs with Arrays.parallelSort on the common fork/join pool
+    public static BST fromKeys(int[] keys, boolean parallelSort) {
+        BST tree = new BST();
+        tree.root = buildBalanced(sortedCopy(keys, parallelSort));
+        tree.size = keys.length;
+        return tree;
+    }
+
+    // A parallel stream is sorted in parallel
+    public static BST fromKeys(IntStream keys) {
+        boolean parallel = keys.isParallel();
+        int[] sorted = keys.toArray();
+        sort(sorted, parallel);
+        BST tree = new BST();
+        tree.root = buildBalanced(sorted);
+        tree.size = sorted.length;
+        return tree;
+    }
+
+    // Building from keys that are already in non-decreasing order (no copy, no sort)
+    public static BST fromSortedKeys(int[] sortedKeys) {
+        BST tree = new BST();
+        tree.root = buildBalanced(sortedKeys);
+        tree.size = sortedKeys.length;
+        return tree;
+    }
+
+    /*
+     Binary snapshots (see TreeSnapshot): save writes the nodes in postorder and load links
+     them back into exactly the same shape, without comparing or rebalancing anything.
+     compact = true writes delta + varint encoded records (smaller, but not mappable);
+     the default fixed-width records can also be queried in place with MappedTreeView.
+     */
+    public void save(Path file) throws IOException {
+        save(file, false);
+    }
+
+    public void save(Path file, boolean compact) throws IOException {
+        TreeSnapshot.save(this, file, compact);
+    }
+
+    public static BST load(Path file) throws IOException {
+        BST tree = new BST();
+        TreeSnapshot.load(tree, file);
+        return tree;
+    }
+
+    // Immutable, cache-friendly copy for read-mostly use (see FrozenIndex); later changes to the tree are not reflected
+    public FrozenIndex freeze() {
+        return FrozenIndex.of(this);
+    }
+
+    /*
+     Instrumentation (see TreeMetrics): off by default, so a tree without metrics only pays
+     a null check per operation.
+     */
+    public TreeMetrics enableMetrics() {
+        if (metrics == null) {
+            metrics = new TreeMetrics();
+        }
+        return metrics;
+    }
+
+    public void disableMetrics() {
+        metrics = null;
+    }
+
+    // The metrics of this tree, or null when they are disabled
+    public TreeMetrics metrics() {
+        return metrics;
+    }
+
+    /*
+     Node recycling (see NodePool): off by default. With a pool, nodes unlinked by delete are
+     kept and handed out again by the next inserts instead of being garbage collected.
+     */
+    public NodePool enableNodePool() {
+        return enableNodePool(NodePool.DEFAULT_MAX_RETAINED);
+    }
+
+    public NodePool enableNodePool(int maxRetained) {
+        if (pool == null) {
+            pool = new NodePool(maxRetained);
+        }
+        return pool;
+    }
+
+    public void disableNodePool() {
+        pool = null;
+    }
+
+    // The node pool of this tree, or null when there is none
+    public NodePool nodePool() {
+        return pool;
+    }
+
+    /*
+     Negative-lookup filter (see KeyFilter): off by default. With a filter, count, contains
+     and remove/delete of a key that is not in the tree usually return without a search.
+     */
+    public KeyFilter enableKeyFilter() {
+        if (filter == null) {
+            filter = new KeyFilter(0);
+            filter.rebuild(this);
+        }
+        return filter;
+    }
+
+    public void disableKeyFilter() {
+        filter = null;
+    }
+
+    // The key filter of this tree, or null when there is none
+    public KeyFilter keyFilter() {
+        return filter;
+    }
+
+    // Refilling the filter from the keys (clears counters stuck at their maximum)
+    public void rebuildKeyFilter() {
+        if (filter != null) {
+            filter.rebuild(this);
+        }
+    }
+
+    // Height, average depth and gap to the optimal height (a full traversal, O(n))
+    public TreeMetrics.Shape shape() {
+        TreeMetrics.Shape shape = TreeMetrics.Shape.of(root);
+        if (metrics != null) {
+            metrics.recordShape(shape);
+        }
+        return shape;
+    }
+
+    // Inserting a key into the BST
+    public void insert(int key) {
+        add(key, 1);
+    }
+
+    // Deleting a key from the BST
+    public void delete(int key) {
+        remove(key, 1);
+    }
+
+    // Inserting n occurrences of a key
+    public void add(int key, int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("n must not be negative: " + n);
+        }
+        if (n == 0) {
+            return;
+        }
+        insertIter(key, n);
+        size += n;
+    }
+
+    // Deleting up to n occurrences of a key, returning how many were actually removed
+    public int remove(int key, int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("n must not be negative: " + n);
+        }
+        if (n == 0 || filteredOut(key)) {
+            return 0;
+        }
+        int removed = deleteIter(key, n);
+        if (removed == 0) {
+            filterMissed();
+        }
+        size -= removed;
+        return removed;
+    }
+
+    // Changing all occurrences of oldKey to newKey: one remove of the whole count, then one add,
+    // so the cost does not depend on how many duplicates the key has
+    public boolean changeKey(int oldKey, int newKey) {
+        int c = count(oldKey);
+        if (c == 0) {
+            return false;
+        }
+        if (oldKey == newKey) {
+            return true;
+        }
+
+        remove(oldKey, c);
+        add(newKey, c);
+        return true;
+    }
+
+    // Returning the number of occurrences of a key (0 if absent)
+    public int count(int key) {
+        Node node = lookup(key);
+        return (node == null) ? 0 : node.getCount();
+    }
+
+    // Returning the total number of occurrences (sum of all counts)
+    public long size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    /*
+     Navigation (same meaning as java.util.TreeSet, over the distinct keys):
+     floor/ceiling/higher/lower return null when there is no such key,
+     first/last throw NoSuchElementException on an empty tree,
+     pollFirst removes one occurrence of the smallest key (null on an empty tree).
+     */
+
+    public boolean contains(int key) {
+        return lookup(key) != null;
+    }
+
+    // Greatest key <= key
+    public Integer floor(int key) {
+        Node node = root;
+        Node best = null;
+        while (node != null) {
+            if (key == node.getKey()) return key;
+            if (key < node.getKey()) {
+                node = node.getLeft();
+            } else {
+                best = node;
+                node = node.getRight();
+            }
+        }
+        return (best == null) ? null : best.getKey();
+    }
+
+    // Smallest key >= key
+    public Integer ceiling(int key) {
+        Node node = root;
+        Node best = null;
+        while (node != null) {
+            if (key == node.getKey()) return key;
+            if (key > node.getKey()) {
+                node = node.getRight();
+            } else {
+                best = node;
+                node = node.getLeft();
+            }
+        }
+        return (best == null) ? null : best.getKey();
+    }
+
+    // Smallest key > key
+    public Integer higher(int key) {
+        Node node = root;
+        Node best = null;
+        while (node != null) {
+            if (key >= node.getKey()) {
+                node = node.getRight();
+            } else {
+                best = node;
+                node = node.getLeft();
+            }
+        }
+        return (best == null) ? null : best.getKey();
+    }
+
+    // Greatest key < key
+    public Integer lower(int key) {
+        Node node = root;
+        Node best = null;
+        while (node != null) {
+            if (key <= node.getKey()) {
+                node = node.getLeft();
+            } else {
+                best = node;
+                node = node.getRight();
+            }
+        }
+        return (best == null) ? null : best.getKey();
+    }
+
+    public int first() {
+        if (root == null) {
+            throw new NoSuchElementException("Tree is empty");
+        }
+        Node node = root;
+        while (node.getLeft() != null) {
+            node = node.getLeft();
+        }
+        return node.getKey();
+    }
+
+    public int last() {
+        if (root == null) {
+            throw new NoSuchElementException("Tree is empty");
+        }
+        Node node = root;
+        while (node.getRight() != null) {
+            node = node.getRight();
+        }
+        return node.getKey();
+    }
+
+    public Integer pollFirst() {
+        if (root == null) {
+            return null;
+        }
+        int key = first();
+        remove(key, 1);
+        return key;
+    }
+
+    // Lazy cursor over the keys from <= key <= to in ascending order; positioning costs O(log n)
+    public KeyCursor range(int from, int to) {
+        KeyCursor cursor = new KeyCursor(root, to);
+        cursor.seek(from);
+        return cursor;
+    }
+
+    // Returning preorder traversal (root, left, right)
+    public List<String> preorder() {
+        List<String> preorder_list = new ArrayList<>();
+        forEachPreorder((key, count) -> preorder_list.add(key + ":" + count));
+        return preorder_list;
+    }
+
+    // Returning inorder traversal (sorted order)
+    public List<String> inorder() {
+        List<String> inorder_list = new ArrayList<>();
+        forEachInorder((key, count) -> inorder_list.add(key + ":" + count));
+        return inorder_list;
+    }
+
+    // Returning postorder traversal (left, right, root)
+    public List<String> postorder() {
+        List<String> postorder_list = new ArrayList<>();
+        forEachPostorder((key, count) -> postorder_list.add(key + ":" + count));
+        return postorder_list;
+    }
+
+    /*
+     Streaming traversals: each node is handed to the visitor as (key, count).
+     They use an explicit stack instead of recursion (a degenerate BST can be as deep as
+     it has keys) and allocate only that stack, never anything per node.
+     */
+
+    // Preorder (root, left, right)
+    public void forEachPreorder(KeyCountVisitor visitor) {
+        if (root == null) {
+            return;
+        }
+        Node[] stack = new Node[64];
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            Node node = stack[--top];
+            visitor.visit(node.getKey(), node.getCount());
+            if (top + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            if (node.getRight() != null) stack[top++] = node.getRight();
+            if (node.getLeft() != null) stack[top++] = node.getLeft();
+        }
+    }
+
+    // Inorder (ascending keys)
+    public void forEachInorder(KeyCountVisitor visitor) {
+        Node[] stack = new Node[64];
+        int top = 0;
+        Node node = root;
+        while (node != null || top > 0) {
+            while (node != null) {
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, top * 2);
+                }
+                stack[top++] = node;
+                node = node.getLeft();
+            }
+            node = stack[--top];
+            visitor.visit(node.getKey(), node.getCount());
+            node = node.getRight();
+        }
+    }
+
+    // Postorder (left, right, root): a node is visited once its right subtree is done
+    public void forEachPostorder(KeyCountVisitor visitor) {
+        Node[] stack = new Node[64];
+        int top = 0;
+        Node node = root;
+        Node lastVisited = null;
+        while (node != null || top > 0) {
+            while (node != null) {
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, top * 2);
+                }
+                stack[top++] = node;
+                node = node.getLeft();
+            }
+            Node peek = stack[top - 1];
+            if (peek.getRight() != null && peek.getRight() != lastVisited) {
+                node = peek.getRight();
+            } else {
+                visitor.visit(peek.getKey(), peek.getCount());
+                lastVisited = stack[--top];
+            }
+        }
+    }
+
+    // Primitive inorder cursor: while (c.next()) { c.key(); c.count(); }
+    public KeyCursor cursor() {
+        return new KeyCursor(root);
+    }
+
+    // Distinct keys in ascending order as a (splittable) Spliterator.OfInt
+    public Spliterator.OfInt keySpliterator() {
+        return new KeySpliterator(root, size);
+    }
+
+    // Distinct keys in ascending order as an IntStream (parallel when requested)
+    public IntStream keys(boolean parallel) {
+        return StreamSupport.intStream(keySpliterator(), parallel);
+    }
+
+    public IntStream keys() {
+        return keys(false);
+    }
+
+    // Iterative BST insertion: walks down from the root keeping the parent,
+    // so sorted input (a degenerate, list-shaped tree) cannot overflow the stack
+    private void insertIter(int key, int n) {
+        if (root == null) {
+            root = newNode(key, n);
+            recordPath(0);
+            return;
+        }
+
+        Node node = root;
+        int visited = 0;
+        while (true) {
+            visited++;
+            if (key < node.getKey()) {
+                if (node.getLeft() == null) {
+                    node.setLeft(newNode(key, n));
+                    break;
+                }
+                node = node.getLeft();
+            } else if (key > node.getKey()) {
+                if (node.getRight() == null) {
+                    node.setRight(newNode(key, n));
+                    break;
+                }
+                node = node.getRight();
+            } else {
+                node.setCount(Math.addExact(node.getCount(), n)); // Duplicate key
+                break;
+            }
+        }
+        recordPath(visited);
+    }
+
+    // Iterative BST deletion of up to n occurrences
+    private int deleteIter(int key, int n) {
+        Node parent = null;
+        Node node = root;
+        int visited = 0;
+        while (node != null && key != node.getKey()) {
+            visited++;
+            parent = node;
+            node = (key < node.getKey()) ? node.getLeft() : node.getRight();
+        }
+        recordPath((node == null) ? visited : visited + 1);
+
+        if (node == null) {
+            return 0; // Key not found
+        }
+
+        // Key found
+        int removed = node.getCount();
+        if (removed > n) {
+            node.setCount(removed - n);
+            return n;
+        }
+
+        // Node with two children: moving the inorder successor (key and count) into this node,
+        // then unlinking the successor, which has no left child
+        if (node.getLeft() != null && node.getRight() != null) {
+            Node successorParent = node;
+            Node successor = node.getRight();
+            while (successor.getLeft() != null) {
+                successorParent = successor;
+                successor = successor.getLeft();
+            }
+            node.setKey(successor.getKey());
+            node.setCount(successor.getCount());
+
+            if (successorParent == node) {
+                successorParent.setRight(successor.getRight());
+            } else {
+                successorParent.setLeft(successor.getRight());
+            }
+            release(successor);
+            keyRemoved(key);
+            return removed;
+        }
+
+        // Node with one or no children
+        Node child = (node.getLeft() != null) ? node.getLeft() : node.getRight();
+        if (parent == null) {
+            root = child;
+        } else if (parent.getLeft() == node) {
+            parent.setLeft(child);
+        } else {
+            parent.setRight(child);
+        }
+        release(node);
+        keyRemoved(key);
+        return removed;
+    }
+
+    // Creating a node holding n occurrences of key
+    protected Node newNode(int key, int n) {
+        Node node = (pool == null) ? new Node(key) : pool.take(key);
+        node.setCount(n);
+        node.setWeight(n);
+        if (metrics != null) {
+            metrics.recordAllocation();
+        }
+        if (filter != null) {
+            filter.add(key);
+        }
+        return node;
+    }
+
+    // Called for every node unlinked from the tree, once nothing reads it any more
+    protected void release(Node node) {
+        if (metrics != null) {
+            metrics.recordFree();
+        }
+        if (pool != null) {
+            pool.release(node);
+        }
+    }
+
+    // Called when the last occurrence of key has been removed
+    protected void keyRemoved(int key) {
+        if (filter != null) {
+            filter.remove(key);
+        }
+    }
+
+    // Before a lookup or delete: true when the filter says key is certainly not in the tree
+    protected boolean filteredOut(int key) {
+        if (filter == null) {
+            return false;
+        }
+        if (filter.overloaded()) {
+            filter.rebuild(this);
+        }
+        return !filter.mightContain(key);
+    }
+
+    // A key the filter let through turned out not to be in the tree
+    protected void filterMissed() {
+        if (filter != null) {
+            filter.recordFalsePositive();
+        }
+    }
+
+    // search() behind the key filter
+    private Node lookup(int key) {
+        if (filteredOut(key)) {
+            return null;
+        }
+        Node node = search(key);
+        if (node == null) {
+            filterMissed();
+        }
+        return node;
+    }
+
+    // Counting the comparisons (nodes visited) of one operation when metrics are enabled
+    protected void recordPath(int visited) {
+        if (metrics != null) {
+            metrics.recordPath(visited);
+        }
+    }
+
+    protected void recordRotation(TreeMetrics.Rotation rotation) {
+        if (metrics != null) {
+            metrics.recordRotation(rotation);
+        }
+    }
+
+    // Iterative BST search, returns the node holding key or null
+    protected Node search(int key) {
+        Node node = root;
+        int visited = 0;
+        while (node != null) {
+            visited++;
+            if (key == node.getKey()) break;
+            node = (key < node.getKey()) ? node.getLeft() : node.getRight();
+        }
+        recordPath(visited);
+        return node;
+    }
+
+    protected static int[] sortedCopy(int[] keys, boolean parallelSort) {
+        int[] sorted = Arrays.copyOf(keys, keys.length);
+        sort(sorted, parallelSort);
+        return sorted;
+    }
+
+    private static void sort(int[] keys, boolean parallelSort) {
+        if (parallelSort) {
+            Arrays.parallelSort(keys);
+        } else {
+            Arrays.sort(keys);
+        }
+    }
+
+    // Collapsing runs of equal keys (runStart[i] is where the i-th distinct key starts,
+    // so its count is runStart[i + 1] - runStart[i]) and building the balanced tree
+    protected static Node buildBalanced(int[] sorted) {
+        if (sorted.length == 0) {
+            return null;
+        }
+
+        int[] runStart = new int[sorted.length + 1];
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                if (i > 0 && sorted[i] < sorted[i - 1]) {
+                    throw new IllegalArgumentException("Keys are not sorted at index " + i);
+                }
+                runStart[distinct++] = i;
+            }
+        }
+        runStart[distinct] = sorted.length;
+
+        return buildRange(sorted, runStart, 0, distinct - 1);
+    }
+
+    // The middle distinct key becomes the root of each range, so sibling subtrees differ
+    // in size by at most one and the recursion is only log2(n) deep
+    private static Node buildRange(int[] sorted, int[] runStart, int lo, int hi) {
+        if (lo > hi) {
+            return null;
+        }
+        int mid = (lo + hi) >>> 1;
+        Node node = new Node(sorted[runStart[mid]]);
+        node.setCount(runStart[mid + 1] - runStart[mid]);
+        node.setLeft(buildRange(sorted, runStart, lo, mid - 1));
+        node.setRight(buildRange(sorted, runStart, mid + 1, hi));
+
+        int leftHeight = (node.getLeft() == null) ? 0 : node.getLeft().getHeight();
+        int rightHeight = (node.getRight() == null) ? 0 : node.getRight().getHeight();
+        node.setHeight(Math.max(leftHeight, rightHeight) + 1);
+        long leftWeight = (node.getLeft() == null) ? 0 : node.getLeft().getWeight();
+        long rightWeight = (node.getRight() == null) ? 0 : node.getRight().getWeight();
+        node.setWeight(node.getCount() + leftWeight + rightWeight);
+        return node;
+    }
+}
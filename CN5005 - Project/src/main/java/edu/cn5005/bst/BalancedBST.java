@@ -0,0 +1,77 @@
+package edu.cn5005.bst;
+
+import java.util.Arrays;
+
+/*
+ Plumbing shared by the bottom-up balanced trees (RedBlackTree, WAVLTree, Treap).
+
+ Like AVL they do not keep parent pointers: the nodes visited on the way down are pushed on
+ a path array, which the rebalancing pass then walks back up. The rotations here only
+ relink nodes; each tree updates its own balance information (color, rank) itself. Subtree
+ weights are not maintained, the same as in BST.
+ */
+abstract class BalancedBST extends BST {
+
+    // Nodes visited on the way down (path[depth - 1] is the parent of the current node)
+    protected Node[] path = new Node[64];
+    protected int depth;
+
+    protected void push(Node node) {
+        if (depth == path.length) {
+            path = Arrays.copyOf(path, depth * 2);
+        }
+        path[depth++] = node;
+    }
+
+    // Making room for path[index] (rotations can make the path one node longer)
+    protected void ensurePath(int index) {
+        if (index >= path.length) {
+            path = Arrays.copyOf(path, Math.max(index + 1, path.length * 2));
+        }
+    }
+
+    // Walking down to key, pushing every node above it; returns the node holding key or null
+    protected Node descend(int key) {
+        depth = 0;
+        Node node = root;
+        while (node != null && key != node.getKey()) {
+            push(node);
+            node = (key < node.getKey()) ? node.getLeft() : node.getRight();
+        }
+        recordPath((node == null) ? depth : depth + 1);
+        return node;
+    }
+
+    // Replacing oldChild with newChild under parent (or at the root when parent is null)
+    protected void relink(Node parent, Node oldChild, Node newChild) {
+        if (parent == null) {
+            root = newChild;
+        } else if (parent.getLeft() == oldChild) {
+            parent.setLeft(newChild);
+        } else {
+            parent.setRight(newChild);
+        }
+    }
+
+    // Right rotation: the left child of y takes its place (the caller relinks the result)
+    protected static Node rotateRight(Node y) {
+        Node x = y.getLeft();
+        y.setLeft(x.getRight());
+        x.setRight(y);
+        return x;
+    }
+
+    // Left rotation: the right child of x takes its place
+    protected static Node rotateLeft(Node x) {
+        Node y = x.getRight();
+        x.setRight(y.getLeft());
+        y.setLeft(x);
+        return y;
+    }
+
+    protected static void checkCount(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("n must not be negative: " + n);
+        }
+    }
+}
@@ -0,0 +1,660 @@
+package edu.cn5005.bst;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/*
+ Thread-safe AVL tree with per-node locks for writers and lock-free readers, after Bronson,
+ Casper, Chafi and Olukotun, "A Practical Concurrent Binary Search Tree" (PPoPP 2010).
+
+ Every node (CNode) is its own lock and carries a version number:
+ - a writer locks only the nodes it changes: the node whose count changes, the parent a new
+   leaf is hung under, or for a rotation the parent, the node and the child (and grandchild)
+   that move; several locks are always taken top-down, so writers cannot deadlock
+ - a node that moves down in a rotation (its subtree now covers fewer keys) is marked
+   SHRINKING while the links change and gets a new version afterwards; a node spliced out of
+   the tree gets the version UNLINKED
+ - readers lock nothing: after reading a child pointer they check that the parent still has
+   the version it had when they arrived, and retry the step from the grandparent if it
+   shrank in between (hand-over-hand validation, with versions instead of locks)
+
+ Deleting the last occurrence of a key whose node has two children leaves a routing node
+ (count 0) that keeps guiding searches; it is spliced out as soon as it has at most one
+ child, so a delete never moves a key from one node to another. Heights and subtree weights
+ are repaired bottom-up by the writer that changed them, one node lock at a time; a node
+ found out of balance is rotated under the locks of its parent and itself.
+
+ One StampedLock over the whole tree remains for what needs every node at once:
+ - writers hold it in shared (read) mode, so any number of them run together
+ - rank, size and the traversals hold it exclusively: the subtree weights are only exact
+   when no writer is halfway up its repair
+ - changeKey holds it exclusively, and the point readers validate an optimistic stamp of it,
+   so no reader sees a count half moved between the two keys
+ */
+public class ConcurrentAVL {
+
+    private static final long UNLINKED = 1;
+    private static final long SHRINKING = 2;
+    private static final long SHRINK_STEP = 4;
+    private static final int SPINS = 100;
+
+    // Outcome of fix()
+    private static final int UNCHANGED = 0;
+    private static final int CHANGED = 1;
+    private static final int RESTRUCTURE = 2;
+
+    // Kinds of search for find()
+    private static final int EXACT = 0;
+    private static final int FLOOR = 1;
+    private static final int CEILING = 2;
+
+    private static final long RETRY = Long.MIN_VALUE;              // a validation failed
+    private static final CNode RETRY_NODE = new CNode(0, 0, null);  // same, for find()
+
+    private static final class CNode {
+        final int key;
+        volatile int count; // 0 for a routing node
+        volatile int height = 1;
+        volatile long weight;
+        volatile long version;
+        volatile CNode parent;
+        volatile CNode left;
+        volatile CNode right;
+
+        CNode(int key, int count, CNode parent) {
+            this.key = key;
+            this.count = count;
+            this.weight = count;
+            this.parent = parent;
+        }
+    }
+
+    // Sentinel above the root (holder.right), so that every real node has a parent to lock
+    private final CNode holder = new CNode(Integer.MIN_VALUE, 0, null);
+    private final StampedLock lock = new StampedLock();
+
+    // Writers (shared mode of the tree lock, node locks inside)
+
+    public void insert(int key) {
+        add(key, 1);
+    }
+
+    public void delete(int key) {
+        remove(key, 1);
+    }
+
+    public void add(int key, int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("n must not be negative: " + n);
+        }
+        if (n == 0) {
+            return;
+        }
+        long stamp = lock.readLock();
+        try {
+            update(key, n);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public int remove(int key, int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("n must not be negative: " + n);
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long stamp = lock.readLock();
+        try {
+            return (int) update(key, -n);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public boolean changeKey(int oldKey, int newKey) {
+        long stamp = lock.writeLock();
+        try {
+            CNode node = find(oldKey, EXACT);
+            int c = (node == null) ? 0 : node.count;
+            if (c == 0) {
+                return false;
+            }
+            if (oldKey != newKey) {
+                update(oldKey, -c);
+                update(newKey, c);
+            }
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Lock-free readers
+
+    public boolean contains(int key) {
+        return count(key) > 0;
+    }
+
+    public int count(int key) {
+        while (true) {
+            long stamp = awaitStamp();
+            CNode node = find(key, EXACT);
+            int count = (node == null) ? 0 : node.count;
+            if (lock.validate(stamp)) {
+                return count;
+            }
+        }
+    }
+
+    // Greatest key <= key, or null
+    public Integer floor(int key) {
+        while (true) {
+            long stamp = awaitStamp();
+            Integer floor = floorOf(key);
+            if (lock.validate(stamp)) {
+                return floor;
+            }
+        }
+    }
+
+    // Smallest key >= key, or null
+    public Integer ceiling(int key) {
+        while (true) {
+            long stamp = awaitStamp();
+            Integer ceiling = ceilingOf(key);
+            if (lock.validate(stamp)) {
+                return ceiling;
+            }
+        }
+    }
+
+    // Readers of the subtree weights (exclusive mode of the tree lock)
+
+    // Number of occurrences with a key smaller than key
+    public long rank(int key) {
+        long stamp = lock.writeLock();
+        try {
+            long rank = 0;
+            CNode node = holder.right;
+            while (node != null) {
+                if (key <= node.key) {
+                    node = node.left;
+                } else {
+                    rank += weight(node.left) + node.count;
+                    node = node.right;
+                }
+            }
+            return rank;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Total number of occurrences
+    public long size() {
+        long stamp = lock.writeLock();
+        try {
+            return weight(holder.right);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Height of the tree, routing nodes included
+    int height() {
+        long stamp = lock.writeLock();
+        try {
+            return height(holder.right);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void forEachInorder(KeyCountVisitor visitor) {
+        long stamp = lock.writeLock();
+        try {
+            CNode[] stack = new CNode[64];
+            int top = 0;
+            CNode node = holder.right;
+            while (node != null || top > 0) {
+                while (node != null) {
+                    if (top == stack.length) {
+                        stack = Arrays.copyOf(stack, top * 2);
+                    }
+                    stack[top++] = node;
+                    node = node.left;
+                }
+                node = stack[--top];
+                if (node.count > 0) {
+                    visitor.visit(node.key, node.count);
+                }
+                node = node.right;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public List<String> inorder() {
+        List<String> inorder_list = new ArrayList<>();
+        forEachInorder((key, count) -> inorder_list.add(key + ":" + count));
+        return inorder_list;
+    }
+
+    // An optimistic stamp of the tree lock, first waiting out a changeKey that holds it
+    private long awaitStamp() {
+        long stamp;
+        while ((stamp = lock.tryOptimisticRead()) == 0L) {
+            lock.unlockRead(lock.readLock());
+        }
+        return stamp;
+    }
+
+    private Integer floorOf(int key) {
+        while (true) {
+            CNode node = find(key, FLOOR);
+            if (node == null) {
+                return null;
+            }
+            if (node.count > 0) {
+                return node.key;
+            }
+            if (node.key == Integer.MIN_VALUE) {
+                return null;
+            }
+            key = node.key - 1; // a routing node: the floor lies below it
+        }
+    }
+
+    private Integer ceilingOf(int key) {
+        while (true) {
+            CNode node = find(key, CEILING);
+            if (node == null) {
+                return null;
+            }
+            if (node.count > 0) {
+                return node.key;
+            }
+            if (node.key == Integer.MAX_VALUE) {
+                return null;
+            }
+            key = node.key + 1; // a routing node: the ceiling lies above it
+        }
+    }
+
+    /*
+     Search without locks. Returns the node holding key, or if there is none: null for EXACT,
+     the node with the greatest smaller key for FLOOR, the smallest greater key for CEILING
+     (routing nodes included, the callers skip them).
+     */
+    private CNode find(int key, int kind) {
+        while (true) {
+            CNode found = attemptFind(key, kind, holder, true, holder.version, null);
+            if (found != RETRY_NODE) {
+                return found;
+            }
+        }
+    }
+
+    // One step down from node (reached with version nodeVersion) towards key; best is the FLOOR/CEILING candidate so far
+    private CNode attemptFind(int key, int kind, CNode node, boolean right, long nodeVersion, CNode best) {
+        while (true) {
+            CNode child = right ? node.right : node.left;
+            if (node.version != nodeVersion) {
+                return RETRY_NODE; // node shrank or was unlinked: the caller re-reads its link to it
+            }
+            if (child == null) {
+                return best;
+            }
+            int childKey = child.key;
+            if (key == childKey) {
+                return child;
+            }
+            long childVersion = child.version;
+            if ((childVersion & SHRINKING) != 0) {
+                waitWhileShrinking(child);
+                continue;
+            }
+            if (childVersion == UNLINKED || child != (right ? node.right : node.left)) {
+                continue;
+            }
+            if (node.version != nodeVersion) {
+                return RETRY_NODE;
+            }
+            CNode nextBest = best;
+            if ((kind == FLOOR && childKey < key) || (kind == CEILING && childKey > key)) {
+                nextBest = child;
+            }
+            CNode found = attemptFind(key, kind, child, key > childKey, childVersion, nextBest);
+            if (found != RETRY_NODE) {
+                return found;
+            }
+        }
+    }
+
+    // Readers meeting a rotation in progress spin briefly, then wait for the rotating writer's lock
+    private static void waitWhileShrinking(CNode node) {
+        for (int spins = 0; (node.version & SHRINKING) != 0; spins++) {
+            if (spins < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                synchronized (node) {
+                    // the rotation holds this lock until the node has its new version
+                }
+            }
+        }
+    }
+
+    // Adding delta occurrences (delta > 0) or removing up to -delta; returns how many changed
+    private long update(int key, int delta) {
+        while (true) {
+            long changed = attemptUpdate(key, delta, holder, true, holder.version);
+            if (changed != RETRY) {
+                return changed;
+            }
+        }
+    }
+
+    // The same validated descent as attemptFind, ending in a locked update of one node
+    private long attemptUpdate(int key, int delta, CNode node, boolean right, long nodeVersion) {
+        while (true) {
+            CNode child = right ? node.right : node.left;
+            if (node.version != nodeVersion) {
+                return RETRY;
+            }
+            if (child == null) {
+                if (delta < 0) {
+                    return 0;
+                }
+                boolean attached = false;
+                synchronized (node) {
+                    if (node.version != nodeVersion) {
+                        return RETRY;
+                    }
+                    if ((right ? node.right : node.left) == null) {
+                        CNode leaf = new CNode(key, delta, node);
+                        if (right) {
+                            node.right = leaf;
+                        } else {
+                            node.left = leaf;
+                        }
+                        attached = true;
+                    }
+                }
+                if (attached) {
+                    repair(node);
+                    return delta;
+                }
+                continue; // another writer hung a node here first
+            }
+            if (key == child.key) {
+                long changed = updateCount(child, delta);
+                if (changed != RETRY) {
+                    return changed;
+                }
+                continue; // child was unlinked: read the link again
+            }
+            long childVersion = child.version;
+            if ((childVersion & SHRINKING) != 0) {
+                waitWhileShrinking(child);
+                continue;
+            }
+            if (childVersion == UNLINKED || child != (right ? node.right : node.left)) {
+                continue;
+            }
+            if (node.version != nodeVersion) {
+                return RETRY;
+            }
+            long changed = attemptUpdate(key, delta, child, key > child.key, childVersion);
+            if (changed != RETRY) {
+                return changed;
+            }
+        }
+    }
+
+    private long updateCount(CNode node, int delta) {
+        long changed;
+        synchronized (node) {
+            if (node.version == UNLINKED) {
+                return RETRY;
+            }
+            int count = node.count;
+            if (delta > 0) {
+                node.count = Math.addExact(count, delta);
+                changed = delta;
+            } else {
+                changed = Math.min(count, -delta);
+                node.count = count - (int) changed;
+            }
+        }
+        if (changed > 0) {
+            repair(node);
+        }
+        return changed;
+    }
+
+    /*
+     Bringing node and its ancestors up to date after a change below or at node. Each node is
+     recomputed under its own lock; the walk stops at the first node that did not change,
+     because whoever changed that node last is walking up from it as well.
+     */
+    private void repair(CNode node) {
+        while (node != holder) {
+            int outcome;
+            synchronized (node) {
+                if (node.version == UNLINKED) {
+                    return; // whoever unlinked it repairs its parent
+                }
+                outcome = fix(node);
+            }
+            if (outcome == UNCHANGED) {
+                return;
+            }
+            if (outcome == CHANGED) {
+                node = node.parent;
+                continue;
+            }
+
+            CNode parent = node.parent;
+            CNode[] lowered = new CNode[2];
+            synchronized (parent) {
+                if (node.version == UNLINKED) {
+                    return;
+                }
+                if (parent.version == UNLINKED || node.parent != parent) {
+                    continue; // node moved meanwhile: look at it again
+                }
+                synchronized (node) {
+                    node = restructure(parent, node, lowered);
+                }
+            }
+            for (CNode moved : lowered) {
+                if (moved != null) {
+                    repair(moved);
+                }
+            }
+        }
+    }
+
+    // Recomputing height and weight of a locked node, unless it has to be spliced out or rotated
+    private static int fix(CNode node) {
+        CNode left = node.left;
+        CNode right = node.right;
+        if (node.count == 0 && (left == null || right == null)) {
+            return RESTRUCTURE;
+        }
+        int leftHeight = height(left);
+        int rightHeight = height(right);
+        if (Math.abs(leftHeight - rightHeight) > 1) {
+            return RESTRUCTURE;
+        }
+        int height = Math.max(leftHeight, rightHeight) + 1;
+        long weight = node.count + weight(left) + weight(right);
+        if (height == node.height && weight == node.weight) {
+            return UNCHANGED;
+        }
+        node.height = height;
+        node.weight = weight;
+        return CHANGED;
+    }
+
+    // Under the locks of parent and node: splicing out or rotating node; returns the node to repair next
+    private static CNode restructure(CNode parent, CNode node, CNode[] lowered) {
+        CNode left = node.left;
+        CNode right = node.right;
+        if (node.count == 0 && (left == null || right == null)) {
+            CNode child = (left != null) ? left : right;
+            replaceChild(parent, node, child);
+            if (child != null) {
+                child.parent = parent;
+            }
+            node.version = UNLINKED; // its links stay, for readers still standing on it
+            return parent;
+        }
+        int balance = height(left) - height(right);
+        if (balance > 1) {
+            synchronized (left) {
+                return rotateRight(parent, node, left, lowered);
+            }
+        }
+        if (balance < -1) {
+            synchronized (right) {
+                return rotateLeft(parent, node, right, lowered);
+            }
+        }
+        return node; // balanced by someone else meanwhile
+    }
+
+    // node's left child rises (single rotation) or its left-right grandchild does (double rotation)
+    private static CNode rotateRight(CNode parent, CNode node, CNode left, CNode[] lowered) {
+        CNode leftRight = left.right;
+        if (height(left.left) >= height(leftRight)) {
+            long version = beginShrink(node);
+            node.left = leftRight;
+            if (leftRight != null) {
+                leftRight.parent = node;
+            }
+            left.right = node;
+            node.parent = left;
+            replaceChild(parent, node, left);
+            left.parent = parent;
+            recompute(node);
+            recompute(left);
+            endShrink(node, version);
+            lowered[0] = node;
+            return parent;
+        }
+        synchronized (leftRight) {
+            long nodeVersion = beginShrink(node);
+            long leftVersion = beginShrink(left);
+            CNode a = leftRight.left;
+            CNode b = leftRight.right;
+            left.right = a;
+            if (a != null) {
+                a.parent = left;
+            }
+            node.left = b;
+            if (b != null) {
+                b.parent = node;
+            }
+            leftRight.left = left;
+            left.parent = leftRight;
+            leftRight.right = node;
+            node.parent = leftRight;
+            replaceChild(parent, node, leftRight);
+            leftRight.parent = parent;
+            recompute(left);
+            recompute(node);
+            recompute(leftRight);
+            endShrink(node, nodeVersion);
+            endShrink(left, leftVersion);
+            lowered[0] = node;
+            lowered[1] = left;
+            return parent;
+        }
+    }
+
+    // Mirror image of rotateRight
+    private static CNode rotateLeft(CNode parent, CNode node, CNode right, CNode[] lowered) {
+        CNode rightLeft = right.left;
+        if (height(right.right) >= height(rightLeft)) {
+            long version = beginShrink(node);
+            node.right = rightLeft;
+            if (rightLeft != null) {
+                rightLeft.parent = node;
+            }
+            right.left = node;
+            node.parent = right;
+            replaceChild(parent, node, right);
+            right.parent = parent;
+            recompute(node);
+            recompute(right);
+            endShrink(node, version);
+            lowered[0] = node;
+            return parent;
+        }
+        synchronized (rightLeft) {
+            long nodeVersion = beginShrink(node);
+            long rightVersion = beginShrink(right);
+            CNode a = rightLeft.right;
+            CNode b = rightLeft.left;
+            right.left = a;
+            if (a != null) {
+                a.parent = right;
+            }
+            node.right = b;
+            if (b != null) {
+                b.parent = node;
+            }
+            rightLeft.right = right;
+            right.parent = rightLeft;
+            rightLeft.left = node;
+            node.parent = rightLeft;
+            replaceChild(parent, node, rightLeft);
+            rightLeft.parent = parent;
+            recompute(right);
+            recompute(node);
+            recompute(rightLeft);
+            endShrink(node, nodeVersion);
+            endShrink(right, rightVersion);
+            lowered[0] = node;
+            lowered[1] = right;
+            return parent;
+        }
+    }
+
+    private static long beginShrink(CNode node) {
+        long version = node.version;
+        node.version = version | SHRINKING;
+        return version;
+    }
+
+    private static void endShrink(CNode node, long version) {
+        node.version = version + SHRINK_STEP;
+    }
+
+    private static void replaceChild(CNode parent, CNode oldChild, CNode newChild) {
+        if (parent.left == oldChild) {
+            parent.left = newChild;
+        } else {
+            parent.right = newChild;
+        }
+    }
+
+    private static void recompute(CNode node) {
+        node.height = Math.max(height(node.left), height(node.right)) + 1;
+        node.weight = node.count + weight(node.left) + weight(node.right);
+    }
+
+    private static int height(CNode node) {
+        return (node == null) ? 0 : node.height;
+    }
+
+    private static long weight(CNode node) {
+        return (node == null) ? 0 : node.weight;
+    }
+}
@@ -0,0 +1,619 @@
+package edu.cn5005.bst;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ Crash-safe AVL tree: the tree lives in memory as a PersistentAVL version, and every
+ mutation is also appended to a write-ahead log (see WriteAheadLog) in a directory.
+
+ Files, numbered by generation g:
+ - snapshot-g.snap: the whole tree (BST.save format) as it was when wal-g was started
+ - wal-g.log: the mutations made after that point
+ Recovery loads the newest snapshot G and replays wal-g for every g >= G in order. A torn
+ record at the end of the newest log (a crash in the middle of a write) is cut off, and a
+ snapshot-g.tmp left by a compaction that crashed before its rename is deleted.
+
+ Group commit: writers only copy their record into an in-memory buffer. A flusher thread
+ waits up to the commit window for more records to arrive, writes the whole batch and
+ fsyncs once, so one fsync covers every mutation of the window instead of one fsync per op.
+ - GROUP: a mutation returns once the fsync covering it is done (durable on return);
+   concurrent writers share the same fsync
+ - PERIODIC: a mutation returns right away and is durable within one window; sync() waits
+   for everything written so far
+
+ Compaction: once the current log has grown past compactBytes, a background thread asks the
+ flusher to start the next log generation. The flusher takes the current version when it
+ takes the last batch of the old log (O(1): versions never change, so it matches the end of
+ the old log exactly), writes and fsyncs that batch, and only then creates the next log, so
+ a log is complete on disk before a newer one exists. The version is saved as the new
+ snapshot while writers go on (PersistentAVL.save writes its nodes directly, in O(n)), and
+ older snapshots and logs are deleted afterwards. A failed background compaction loses
+ nothing (the old files stay) and is reported by the next sync() or close().
+
+ Queries read the current version without taking the lock.
+ */
+public class DurableAVL implements AutoCloseable {
+
+    // When a mutation returns (see the class comment)
+    public enum SyncMode {
+        GROUP,
+        PERIODIC
+    }
+
+    public static final long DEFAULT_WINDOW_MICROS = 2_000;
+    public static final long DEFAULT_COMPACT_BYTES = 64L << 20;
+
+    private static final int MAX_PENDING_BYTES = 4 << 20; // writers wait for the flusher above this
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+    private static final String TMP_SUFFIX = ".tmp"; // a snapshot being written
+    private static final String LOG_PREFIX = "wal-";
+    private static final String LOG_SUFFIX = ".log";
+
+    private final Path dir;
+    private final SyncMode mode;
+    private final long windowNanos;
+    private final long compactBytes;
+
+    private volatile PersistentAVL tree; // replaced (under lock) by every mutation
+    private final WriteAheadLog log = new WriteAheadLog();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition work = lock.newCondition();    // flusher: records or a request arrived
+    private final Condition flushed = lock.newCondition(); // writers: a batch was synced or the log rotated
+
+    // Guarded by lock
+    private ByteBuffer pending;  // records waiting for the flusher
+    private ByteBuffer spare;    // the other buffer (null while the flusher writes it)
+    private long appendedSeq;    // records appended so far
+    private long durableSeq;     // records fsynced so far
+    private boolean flushNow;
+    private boolean rotateRequested;
+    private Rotation rotation;   // result of the last rotation, taken by compact()
+    private boolean closing;
+    private boolean stopped;     // the flusher has exited
+    private IOException failure; // first write/fsync error; the tree refuses writes after it
+    private IOException compactionFailure; // last background compaction error, not yet reported
+    private FileChannel channel; // current log (only the flusher writes to it)
+    private long generation;
+    private long logBytes;
+
+    private final Thread flusher;
+    private final ReentrantLock compactionLock = new ReentrantLock();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private volatile Thread compactor;
+
+    // The version the old log ends with, and the generation of the log that follows it
+    private static final class Rotation {
+        final PersistentAVL tree;
+        final long generation;
+
+        Rotation(PersistentAVL tree, long generation) {
+            this.tree = tree;
+            this.generation = generation;
+        }
+    }
+
+    private DurableAVL(Path dir, SyncMode mode, long windowMicros, long compactBytes,
+                       PersistentAVL tree, long generation) throws IOException {
+        this.dir = dir;
+        this.mode = mode;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.compactBytes = compactBytes;
+        this.tree = tree;
+        this.generation = generation;
+        this.pending = newBuffer(1 << 16);
+        this.spare = newBuffer(1 << 16);
+        this.channel = openLog(generation);
+
+        flusher = new Thread(this::flushLoop, "durable-avl-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // Opening (or creating) the tree stored in dir, with group commit and the default window
+    public static DurableAVL open(Path dir) throws IOException {
+        return open(dir, SyncMode.GROUP, DEFAULT_WINDOW_MICROS, DEFAULT_COMPACT_BYTES);
+    }
+
+    public static DurableAVL open(Path dir, SyncMode mode, long windowMicros, long compactBytes) throws IOException {
+        if (windowMicros < 0 || compactBytes <= 0) {
+            throw new IllegalArgumentException("windowMicros must be >= 0 and compactBytes > 0");
+        }
+        Files.createDirectories(dir);
+
+        long snapshot = -1;
+        List<Long> logs = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long g = generationOf(name, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+                if (g >= 0) {
+                    snapshot = Math.max(snapshot, g);
+                }
+                g = generationOf(name, LOG_PREFIX, LOG_SUFFIX);
+                if (g >= 0) {
+                    logs.add(g);
+                }
+                if (generationOf(name, SNAPSHOT_PREFIX, TMP_SUFFIX) >= 0) {
+                    Files.delete(file); // left by a compaction that crashed before its rename
+                }
+            }
+        }
+        Collections.sort(logs);
+
+        // Recovery: newest snapshot, then every log from its generation on
+        PersistentAVL[] tree = {(snapshot < 0) ? PersistentAVL.empty()
+                : PersistentAVL.copyOf(AVL.load(dir.resolve(SNAPSHOT_PREFIX + snapshot + SNAPSHOT_SUFFIX)))};
+        long last = snapshot;
+        for (int i = 0; i < logs.size(); i++) {
+            long g = logs.get(i);
+            if (g < snapshot) {
+                continue; // already contained in the snapshot, left over from an interrupted cleanup
+            }
+            WriteAheadLog.replay(dir.resolve(LOG_PREFIX + g + LOG_SUFFIX),
+                    (op, a, b) -> tree[0] = apply(tree[0], op, a, b), i == logs.size() - 1);
+            last = g;
+        }
+
+        return new DurableAVL(dir, mode, windowMicros, compactBytes, tree[0], last + 1);
+    }
+
+    // Mutations
+
+    public void insert(int key) {
+        add(key, 1);
+    }
+
+    public void delete(int key) {
+        remove(key, 1);
+    }
+
+    public void add(int key, int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("n must not be negative: " + n);
+        }
+        if (n == 0) {
+            return;
+        }
+        long seq;
+        lock.lock();
+        try {
+            beginWrite();
+            tree = tree.add(key, n);
+            seq = append(WriteAheadLog.ADD, key, n);
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(seq);
+    }
+
+    // Removing up to n occurrences, returning how many were removed
+    public int remove(int key, int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("n must not be negative: " + n);
+        }
+        int removed;
+        long seq = 0;
+        lock.lock();
+        try {
+            beginWrite();
+            removed = Math.min(n, tree.count(key));
+            if (removed > 0) {
+                tree = tree.remove(key, removed);
+                seq = append(WriteAheadLog.REMOVE, key, removed);
+            }
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(seq);
+        return removed;
+    }
+
+    public boolean changeKey(int oldKey, int newKey) {
+        boolean changed;
+        long seq = 0;
+        lock.lock();
+        try {
+            beginWrite();
+            changed = tree.contains(oldKey);
+            if (changed) {
+                tree = tree.changeKey(oldKey, newKey);
+                seq = append(WriteAheadLog.CHANGE_KEY, oldKey, newKey);
+            }
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(seq);
+        return changed;
+    }
+
+    // Waiting until every mutation made so far is on disk (needed only in PERIODIC mode)
+    public void sync() throws IOException {
+        lock.lock();
+        try {
+            long target = appendedSeq;
+            flushNow = true;
+            work.signal();
+            while (durableSeq < target && failure == null && !stopped) {
+                flushed.awaitUninterruptibly();
+            }
+            if (durableSeq < target) {
+                throw (failure != null) ? new IOException("write-ahead log failed", failure)
+                        : new IOException("tree is closed");
+            }
+            reportCompactionFailure();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Queries
+
+    public int count(int key) {
+        return tree.count(key);
+    }
+
+    public boolean contains(int key) {
+        return count(key) > 0;
+    }
+
+    public long size() {
+        return tree.size();
+    }
+
+    public long rank(int key) {
+        return tree.rank(key);
+    }
+
+    public List<String> inorder() {
+        return tree.inorder();
+    }
+
+    /*
+     Writing a new snapshot and deleting the logs it replaces. Runs in the background on its own
+     when the log passes compactBytes; calling it directly waits until the snapshot is on disk.
+     */
+    public void compact() throws IOException {
+        compactionLock.lock();
+        try {
+            Rotation r = rotate();
+            if (r == null) {
+                return; // closing
+            }
+            Path target = dir.resolve(SNAPSHOT_PREFIX + r.generation + SNAPSHOT_SUFFIX);
+            Path tmp = dir.resolve(SNAPSHOT_PREFIX + r.generation + TMP_SUFFIX);
+            r.tree.save(tmp); // straight from the version's nodes, in O(n)
+            try (FileChannel file = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                file.force(true);
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            syncDirectory();
+
+            // Everything older than the new snapshot is no longer needed
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    long g = Math.max(generationOf(name, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX),
+                            generationOf(name, LOG_PREFIX, LOG_SUFFIX));
+                    if (g >= 0 && g < r.generation) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    // Flushing what is left, stopping the background threads and closing the log
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closing) {
+                return;
+            }
+            closing = true;
+            work.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        joinUninterruptibly(flusher);
+        Thread background = compactor;
+        if (background != null) {
+            joinUninterruptibly(background);
+        }
+
+        lock.lock();
+        try {
+            channel.close();
+            if (failure != null) {
+                throw new IOException("write-ahead log failed", failure);
+            }
+            reportCompactionFailure();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Writer side (called with the lock held)
+
+    private void beginWrite() {
+        if (closing) {
+            throw new IllegalStateException("tree is closed");
+        }
+        // Back-pressure: a writer that outruns the disk waits for the flusher
+        while (pending.position() >= MAX_PENDING_BYTES && failure == null) {
+            flushNow = true;
+            work.signal();
+            flushed.awaitUninterruptibly();
+        }
+        if (failure != null) {
+            throw new UncheckedIOException("write-ahead log failed", failure);
+        }
+    }
+
+    private long append(byte op, int a, int b) {
+        boolean wasEmpty = pending.position() == 0;
+        if (pending.remaining() < WriteAheadLog.RECORD_BYTES) {
+            ByteBuffer bigger = newBuffer(pending.capacity() * 2);
+            pending.flip();
+            bigger.put(pending);
+            pending = bigger;
+        }
+        log.encode(pending, op, a, b);
+        appendedSeq++;
+        if (wasEmpty || pending.position() >= MAX_PENDING_BYTES) {
+            work.signal(); // later records of the same window do not wake the flusher again
+        }
+        return appendedSeq;
+    }
+
+    // GROUP mode: waiting for the fsync that covers record seq (0 = nothing was logged)
+    private void awaitDurable(long seq) {
+        if (mode != SyncMode.GROUP || seq == 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (durableSeq < seq && failure == null) {
+                flushed.awaitUninterruptibly();
+            }
+            if (durableSeq < seq) {
+                throw new UncheckedIOException("write-ahead log failed", failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Flusher thread
+
+    private void flushLoop() {
+        while (true) {
+            ByteBuffer batch;
+            long batchSeq;
+            FileChannel target;
+            FileChannel next = null;
+            PersistentAVL endOfLog = null; // set when the log rotates after this batch
+            IOException error = null;
+
+            lock.lock();
+            try {
+                while (pending.position() == 0 && !flushNow && !rotateRequested && !closing) {
+                    work.awaitUninterruptibly();
+                }
+                // Collecting the group: waiting out the window unless a flush is needed now
+                long wait = windowNanos;
+                while (wait > 0 && !flushNow && !rotateRequested && !closing
+                        && pending.position() < MAX_PENDING_BYTES) {
+                    try {
+                        wait = work.awaitNanos(wait);
+                    } catch (InterruptedException e) {
+                        wait = 0;
+                    }
+                }
+                flushNow = false;
+
+                batch = pending;
+                pending = spare;
+                spare = null;
+                batchSeq = appendedSeq;
+                target = channel;
+                if (rotateRequested) {
+                    rotateRequested = false;
+                    endOfLog = tree; // the state after the last record of this batch
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            // The old log gets its last batch and is fsynced before the next log is created,
+            // so only the newest log can ever end in a torn record
+            int written = batch.position();
+            try {
+                batch.flip();
+                while (batch.hasRemaining()) {
+                    target.write(batch);
+                }
+                if (written > 0) {
+                    target.force(false);
+                }
+                if (endOfLog != null) {
+                    target.close();
+                    next = openLog(generation + 1); // only this thread changes generation
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+
+            lock.lock();
+            try {
+                batch.clear();
+                spare = batch;
+                if (error != null) {
+                    if (failure == null) {
+                        failure = error;
+                    }
+                } else {
+                    durableSeq = batchSeq;
+                    if (next != null) {
+                        channel = next;
+                        generation++;
+                        logBytes = 0; // the batch went to the old log
+                        rotation = new Rotation(endOfLog, generation);
+                    } else {
+                        logBytes += written;
+                    }
+                }
+                if (failure != null || (closing && pending.position() == 0 && !rotateRequested)) {
+                    stopped = true;
+                    flushed.signalAll();
+                    return;
+                }
+                flushed.signalAll();
+                if (logBytes >= compactBytes && !closing) {
+                    startCompaction();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Asking the flusher to start the next log generation; null if the tree is closing
+    private Rotation rotate() throws IOException {
+        lock.lock();
+        try {
+            if (closing || stopped) {
+                return null;
+            }
+            rotateRequested = true;
+            work.signal();
+            while (rotation == null && failure == null && !stopped) {
+                flushed.awaitUninterruptibly();
+            }
+            if (rotation == null) {
+                if (failure != null) {
+                    throw new IOException("write-ahead log failed", failure);
+                }
+                return null;
+            }
+            Rotation r = rotation;
+            rotation = null;
+            return r;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Throwing (once) the error of a failed background compaction (called with the lock held)
+    private void reportCompactionFailure() throws IOException {
+        IOException e = compactionFailure;
+        if (e != null) {
+            compactionFailure = null;
+            throw new IOException("background compaction failed", e);
+        }
+    }
+
+    private void startCompaction() {
+        if (!compacting.compareAndSet(false, true)) {
+            return;
+        }
+        Thread background = new Thread(() -> {
+            try {
+                compact();
+            } catch (IOException e) {
+                // The old snapshot and logs are still in place, so nothing is lost
+                lock.lock();
+                try {
+                    compactionFailure = e;
+                } finally {
+                    lock.unlock();
+                }
+            } finally {
+                compacting.set(false);
+            }
+        }, "durable-avl-compaction");
+        background.setDaemon(true);
+        compactor = background;
+        background.start();
+    }
+
+    // Helpers
+
+    private FileChannel openLog(long g) throws IOException {
+        FileChannel log = FileChannel.open(dir.resolve(LOG_PREFIX + g + LOG_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        syncDirectory(); // the new file name must survive a crash too
+        return log;
+    }
+
+    // Making renames and new files durable (not every platform can open a directory)
+    private void syncDirectory() {
+        try (FileChannel directory = FileChannel.open(dir, StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // best effort
+        }
+    }
+
+    private static PersistentAVL apply(PersistentAVL tree, byte op, int a, int b) {
+        switch (op) {
+            case WriteAheadLog.ADD:
+                return tree.add(a, b);
+            case WriteAheadLog.REMOVE:
+                return tree.remove(a, b);
+            default:
+                return tree.changeKey(a, b);
+        }
+    }
+
+    // "wal-12.log" -> 12, -1 if the name does not match
+    private static long generationOf(String name, String prefix, String suffix) {
+        if (!name.startsWith(prefix) || !name.endsWith(suffix)
+                || name.length() <= prefix.length() + suffix.length()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static ByteBuffer newBuffer(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package edu.cn5005.bst;
+
+import java.util.Arrays;
+
+/*
+ Immutable, read-only copy of a tree in the Eytzinger (BFS) layout, made by BST.freeze().
+
+ The distinct keys are stored in one int array in the order of a breadth-first walk of a
+ perfectly balanced tree: the root at index 1, the children of i at 2i and 2i+1. A search
+ descends with index arithmetic instead of pointers:
+     i = 2 * i + (keys[i] < key ? 1 : 0)
+ which the JIT compiles to a conditional move, so there is no branch to mispredict. The top
+ levels are shared by every search and stay in cache, and the 16 descendants four levels
+ below i (indexes 16i..16i+15) are 64 contiguous bytes, a single cache line. A Node walk
+ instead loads a separate object (header, fields, two references) at every level.
+
+ After the descent, i encodes the path as bits (1 = went right); the answer is the node
+ where the search last turned the other way, found by stripping the trailing bits:
+ - lower bound (first key >= k): i >> (numberOfTrailingZeros(~i) + 1)
+ - floor with "<=" comparisons: i >> (numberOfTrailingZeros(i) + 1)
+ Index 0 means "no such key".
+
+ Java has no prefetch instruction, so large indexes (PREFETCH_KEYS and up) issue a plain load
+ of keys[16i] while comparing at i: its result is not on the search path, so the CPU fetches
+ that cache line in parallel and it is already there four levels later.
+
+ counts[i] is the count of keys[i] and before[i] the number of occurrences of smaller keys,
+ so count and rank are one descent each.
+ */
+public final class FrozenIndex {
+
+    // Below this many keys the index mostly fits in cache and prefetching does not pay
+    private static final int PREFETCH_KEYS = 1 << 21;
+
+    // Searches advanced together by the scalar batch search
+    private static final int BATCH = 16;
+
+    private static final boolean VECTOR_API = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private final int n;         // number of distinct keys
+    private final int[] keys;    // Eytzinger order, index 0 unused
+    private final int[] counts;
+    private final long[] before; // occurrences of all smaller keys
+    private final long size;
+
+    // sortedKeys/sortedCounts: the first n entries, distinct keys in ascending order
+    FrozenIndex(int[] sortedKeys, int[] sortedCounts, int n) {
+        if (n >= 1 << 30) {
+            throw new IllegalArgumentException("too many keys for an Eytzinger index: " + n); // 2i + 1 must fit in an int
+        }
+        this.n = n;
+        this.keys = new int[n + 1];
+        this.counts = new int[n + 1];
+        this.before = new long[n + 1];
+        long[] prefix = new long[n + 1];
+        for (int j = 0; j < n; j++) {
+            prefix[j + 1] = prefix[j] + sortedCounts[j];
+        }
+        this.size = prefix[n];
+        fill(sortedKeys, sortedCounts, prefix, 0, 1);
+    }
+
+    // Collecting the distinct keys of a tree in ascending order
+    static FrozenIndex of(BST tree) {
+        int[][] columns = {new int[16], new int[16]};
+        int[] n = {0};
+        tree.forEachInorder((key, count) -> {
+            if (n[0] == columns[0].length) {
+                columns[0] = Arrays.copyOf(columns[0], n[0] * 2);
+                columns[1] = Arrays.copyOf(columns[1], n[0] * 2);
+            }
+            columns[0][n[0]] = key;
+            columns[1][n[0]] = count;
+            n[0]++;
+        });
+        return new FrozenIndex(columns[0], columns[1], n[0]);
+    }
+
+    // In-order walk of the implicit tree: position k receives the next key in sorted order
+    private int fill(int[] sortedKeys, int[] sortedCounts, long[] prefix, int next, int k) {
+        if (k <= n) {
+            next = fill(sortedKeys, sortedCounts, prefix, next, 2 * k);
+            keys[k] = sortedKeys[next];
+            counts[k] = sortedCounts[next];
+            before[k] = prefix[next];
+            next++;
+            next = fill(sortedKeys, sortedCounts, prefix, next, 2 * k + 1);
+        }
+        return next;
+    }
+
+    /*
+     Index of the first key >= key, 0 if every key is smaller.
+     The prefetching loads are folded into the result as touched & keys[0]: slot 0 is unused
+     and always 0, but the compiler cannot know that, so it has to keep the loads. Nothing is
+     stored, so concurrent readers share the index without writing to it.
+     */
+    private int lowerBound(int key) {
+        int i = 1;
+        int touched = 0;
+        if (n < PREFETCH_KEYS) {
+            while (i <= n) {
+                i = 2 * i + (keys[i] < key ? 1 : 0);
+            }
+        } else {
+            while (i <= n) {
+                touched += keys[(int) Math.min(16L * i, n)]; // the cache line four levels down
+                i = 2 * i + (keys[i] < key ? 1 : 0);
+            }
+            touched &= keys[0];
+        }
+        return (i >> (Integer.numberOfTrailingZeros(~i) + 1)) + touched;
+    }
+
+    public boolean contains(int key) {
+        int i = lowerBound(key);
+        return i != 0 && keys[i] == key;
+    }
+
+    // Returning the number of occurrences of a key (0 if absent)
+    public int count(int key) {
+        int i = lowerBound(key);
+        return (i != 0 && keys[i] == key) ? counts[i] : 0;
+    }
+
+    /*
+     Batch lookup: out[j] = count(keys[j]). The searches are interleaved so that their cache
+     misses overlap: with the Vector API available (see VectorBatchSearch) a whole vector of
+     searches descends together, otherwise BATCH scalar searches take turns level by level.
+     */
+    public void countAll(int[] keys, int[] out) {
+        if (out.length < keys.length) {
+            throw new IllegalArgumentException("out is shorter than keys: " + out.length + " < " + keys.length);
+        }
+        int done = VECTOR_API ? VectorBatchSearch.countAll(this.keys, counts, n, keys, out) : 0;
+
+        int[] position = new int[BATCH];
+        for (int start = done; start < keys.length; start += BATCH) {
+            int batch = Math.min(BATCH, keys.length - start);
+            for (int lane = 0; lane < batch; lane++) {
+                position[lane] = 1;
+            }
+            boolean live = true;
+            while (live) {
+                live = false;
+                for (int lane = 0; lane < batch; lane++) {
+                    int i = position[lane];
+                    if (i <= n) {
+                        position[lane] = 2 * i + (this.keys[i] < keys[start + lane] ? 1 : 0);
+                        live = true;
+                    }
+                }
+            }
+            for (int lane = 0; lane < batch; lane++) {
+                int i = position[lane];
+                i >>= Integer.numberOfTrailingZeros(~i) + 1;
+                out[start + lane] = (i != 0 && this.keys[i] == keys[start + lane]) ? counts[i] : 0;
+            }
+        }
+    }
+
+    // Smallest key >= key, or null
+    public Integer ceiling(int key) {
+        int i = lowerBound(key);
+        return (i == 0) ? null : keys[i];
+    }
+
+    // Greatest key <= key, or null
+    public Integer floor(int key) {
+        int i = 1;
+        while (i <= n) {
+            i = 2 * i + (keys[i] <= key ? 1 : 0);
+        }
+        i >>= Integer.numberOfTrailingZeros(i) + 1;
+        return (i == 0) ? null : keys[i];
+    }
+
+    // Number of occurrences with a key smaller than key
+    public long rank(int key) {
+        int i = lowerBound(key);
+        return (i == 0) ? size : before[i];
+    }
+
+    // Total number of occurrences (sum of all counts)
+    public long size() {
+        return size;
+    }
+
+    // Number of distinct keys
+    public int distinctKeys() {
+        return n;
+    }
+
+    public boolean isEmpty() {
+        return n == 0;
+    }
+}
@@ -0,0 +1,11 @@
+package edu.cn5005.bst;
+
+/*
+ Callback used by the streaming traversals of BST/AVL (forEachPreorder, forEachInorder,
+ forEachPostorder). It receives the key and its count as plain ints, so walking a tree
+ does not create a String (or any other object) per node.
+ */
+@FunctionalInterface
+public interface KeyCountVisitor {
+    void visit(int key, int count);
+}
@@ -0,0 +1,114 @@
+package edu.cn5005.bst;
+
+import java.util.Arrays;
+
+/*
+ Inorder cursor over a BST/AVL that exposes the current node as primitive (key, count).
+
+ Usage:
+   KeyCursor c = tree.cursor();          // or tree.range(from, to)
+   while (c.next()) { use c.key() and c.count() }
+
+ The only state is an explicit stack of the ancestors still to visit, allocated once
+ (and doubled if a degenerate BST is deeper than expected), so advancing the cursor
+ never allocates. The cursor reads the live tree: it must not be used after the tree
+ is modified.
+
+ Range cursors stop after the last key <= to. seek(key) / seekAfter(key) reposition the
+ cursor in O(log n) without walking the keys in between, so a client can page through a
+ huge tree by remembering the last key it saw and calling seekAfter(lastKey) (or
+ tree.range(...) again) for the next page.
+ */
+public class KeyCursor {
+    private final Node root;
+    private final int to; // inclusive upper bound (Integer.MAX_VALUE when unbounded)
+    private Node[] stack = new Node[64];
+    private int top;
+    private Node pending; // subtree whose keys come before everything on the stack
+    private int key;
+    private int count;
+
+    KeyCursor(Node root) {
+        this(root, Integer.MAX_VALUE);
+        this.pending = root;
+    }
+
+    KeyCursor(Node root, int to) {
+        this.root = root;
+        this.to = to;
+    }
+
+    // Moving to the next key in ascending order, returning false when there is none left
+    public boolean next() {
+        Node node = pending;
+        while (node != null) {
+            push(node);
+            node = node.getLeft();
+        }
+        if (top == 0) {
+            return false;
+        }
+
+        node = stack[--top];
+        stack[top] = null;
+        if (node.getKey() > to) {
+            clear(); // past the end of the range
+            return false;
+        }
+        key = node.getKey();
+        count = node.getCount();
+        pending = node.getRight();
+        return true;
+    }
+
+    // Positioning the cursor so that next() returns the smallest key >= from
+    public void seek(int from) {
+        clear();
+        Node node = root;
+        while (node != null) {
+            if (node.getKey() >= from) {
+                push(node); // node and its right subtree come after its left subtree
+                node = node.getLeft();
+            } else {
+                node = node.getRight();
+            }
+        }
+    }
+
+    // Positioning the cursor so that next() returns the smallest key > after
+    public void seekAfter(int after) {
+        clear();
+        Node node = root;
+        while (node != null) {
+            if (node.getKey() > after) {
+                push(node);
+                node = node.getLeft();
+            } else {
+                node = node.getRight();
+            }
+        }
+    }
+
+    // Key of the current node (valid after next() returned true)
+    public int key() {
+        return key;
+    }
+
+    // Count of the current node (valid after next() returned true)
+    public int count() {
+        return count;
+    }
+
+    private void push(Node node) {
+        if (top == stack.length) {
+            stack = Arrays.copyOf(stack, top * 2);
+        }
+        stack[top++] = node;
+    }
+
+    private void clear() {
+        Arrays.fill(stack, 0, top, null);
+        top = 0;
+        pending = null;
+    }
+}
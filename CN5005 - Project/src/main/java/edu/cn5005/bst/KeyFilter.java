@@ -0,0 +1,170 @@
+package edu.cn5005.bst;
+
+import java.util.Arrays;
+
+/*
+ Blocked counting Bloom filter over the distinct keys of a tree (see BST.enableKeyFilter).
+
+ It answers "key is certainly absent" or "key may be present". The tree consults it before
+ count, contains and remove/delete, so a lookup of a missing key usually costs one hash and
+ one cache line instead of a root-to-leaf walk.
+
+ Layout: the filter is an array of 64-byte blocks (8 longs = 128 counters of 4 bits). A key
+ hashes to one block and to PROBES counters inside it, so a lookup touches a single cache
+ line. With about COUNTERS_PER_KEY counters per key the false-positive rate is around 1%.
+
+ Deletes: every counter is a 4-bit count of the keys that set it, so removing a key
+ decrements what adding it incremented. A counter that reaches 15 sticks there (it cannot
+ tell any more how many keys share it), which only costs accuracy, never correctness.
+ The filter is sized for capacity keys; once the tree holds more distinct keys than that,
+ the tree rebuilds it at twice the size from its keys (rebuild() also clears stuck counters).
+
+ falsePositiveRate() is measured, not estimated: of the lookups for absent keys, the share
+ the filter let through to the tree.
+ */
+public final class KeyFilter {
+
+    static final int PROBES = 5;
+    static final int COUNTERS_PER_KEY = 12;
+    private static final int MIN_CAPACITY = 1024;
+    private static final int LONGS_PER_BLOCK = 8;
+    private static final int COUNTERS_PER_BLOCK = 128;
+    private static final long MAX_COUNT = 15;
+
+    private long[] counters;
+    private int blockMask;
+    private int capacity;
+    private long keys;          // distinct keys added and not removed
+    private long negatives;     // lookups the filter answered "absent"
+    private long falsePositives; // lookups it let through for a key that was not there
+
+    KeyFilter(long expectedKeys) {
+        allocate(expectedKeys);
+    }
+
+    // Sizing for expectedKeys: a power of two number of blocks (at most 2^24, as many as the hash
+    // has bits for), at least COUNTERS_PER_KEY counters per key
+    private void allocate(long expectedKeys) {
+        long wanted = Math.max(expectedKeys, MIN_CAPACITY) * COUNTERS_PER_KEY / COUNTERS_PER_BLOCK + 1;
+        int blocks = Integer.highestOneBit((int) Math.min(wanted, 1 << 24) - 1) << 1;
+        counters = new long[blocks * LONGS_PER_BLOCK];
+        blockMask = blocks - 1;
+        capacity = (int) Math.min(Integer.MAX_VALUE, (long) blocks * COUNTERS_PER_BLOCK / COUNTERS_PER_KEY);
+        keys = 0;
+    }
+
+    // 64-bit mix of the key (murmur3 finalizer): block from the high bits, probes from the low ones
+    private static long hash(int key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public boolean mightContain(int key) {
+        long h = hash(key);
+        int base = ((int) (h >>> 40) & blockMask) * LONGS_PER_BLOCK;
+        for (int probe = 0; probe < PROBES; probe++) {
+            int counter = (int) (h >>> (7 * probe)) & (COUNTERS_PER_BLOCK - 1);
+            if ((counters[base + (counter >>> 4)] >>> ((counter & 15) * 4) & MAX_COUNT) == 0) {
+                negatives++;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void add(int key) {
+        long h = hash(key);
+        int base = ((int) (h >>> 40) & blockMask) * LONGS_PER_BLOCK;
+        for (int probe = 0; probe < PROBES; probe++) {
+            int counter = (int) (h >>> (7 * probe)) & (COUNTERS_PER_BLOCK - 1);
+            int shift = (counter & 15) * 4;
+            long word = counters[base + (counter >>> 4)];
+            if ((word >>> shift & MAX_COUNT) != MAX_COUNT) {
+                counters[base + (counter >>> 4)] = word + (1L << shift);
+            }
+        }
+        keys++;
+    }
+
+    void remove(int key) {
+        long h = hash(key);
+        int base = ((int) (h >>> 40) & blockMask) * LONGS_PER_BLOCK;
+        for (int probe = 0; probe < PROBES; probe++) {
+            int counter = (int) (h >>> (7 * probe)) & (COUNTERS_PER_BLOCK - 1);
+            int shift = (counter & 15) * 4;
+            long word = counters[base + (counter >>> 4)];
+            long count = word >>> shift & MAX_COUNT;
+            if (count != MAX_COUNT && count != 0) {
+                counters[base + (counter >>> 4)] = word - (1L << shift);
+            }
+        }
+        keys--;
+    }
+
+    // Called by the tree when a key the filter let through was not there
+    void recordFalsePositive() {
+        falsePositives++;
+    }
+
+    // More distinct keys than the filter was sized for
+    boolean overloaded() {
+        return keys > capacity;
+    }
+
+    // Refilling from the keys of tree, sized for twice as many keys as it has now
+    void rebuild(BST tree) {
+        long[] distinct = {0};
+        tree.forEachInorder((key, count) -> distinct[0]++);
+        allocate(2 * distinct[0]);
+        tree.forEachInorder((key, count) -> add(key));
+    }
+
+    void clear() {
+        Arrays.fill(counters, 0);
+        keys = 0;
+    }
+
+    // Number of distinct keys the filter holds
+    public long keys() {
+        return keys;
+    }
+
+    // Number of distinct keys the filter is sized for
+    public int capacity() {
+        return capacity;
+    }
+
+    public long negatives() {
+        return negatives;
+    }
+
+    public long falsePositives() {
+        return falsePositives;
+    }
+
+    // Share of the lookups for absent keys that the filter did not stop (0 before any)
+    public double falsePositiveRate() {
+        long absent = negatives + falsePositives;
+        return (absent == 0) ? 0.0 : (double) falsePositives / absent;
+    }
+
+    public void resetStatistics() {
+        negatives = 0;
+        falsePositives = 0;
+    }
+
+    public long memoryBytes() {
+        return (long) counters.length * Long.BYTES;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("keys=%d capacity=%d negatives=%d falsePositives=%d falsePositiveRate=%.4f",
+                keys, capacity, negatives, falsePositives, falsePositiveRate());
+    }
+}
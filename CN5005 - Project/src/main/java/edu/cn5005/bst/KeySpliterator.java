@@ -0,0 +1,135 @@
+package edu.cn5005.bst;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.IntConsumer;
+
+/*
+ Spliterator over the distinct keys of a BST/AVL in ascending order, used by BST.keys().
+
+ It walks the tree with the same explicit stack as KeyCursor (no allocation per key).
+ A stacked node stands for "the node, then its right subtree". The remaining keys can be
+ split at any point:
+ - before a subtree is entered, its left subtree is handed to a new spliterator and this
+   one keeps the subtree root and its right subtree
+ - when only one stacked node is left, the prefix gets that node and the left part of its
+   right subtree, ending at an exclusive upper bound (fence), and this one keeps the rest
+ - with several stacked nodes, the prefix gets all but the bottom one
+ so every piece can be split again and parallel IntStream pipelines divide a balanced tree
+ into halves, then quarters, and so on.
+ */
+class KeySpliterator implements Spliterator.OfInt {
+    private Node[] stack = new Node[64];
+    private int top;
+    private Node pending; // subtree to enter before popping the stack
+    private long estimate;
+    private boolean bounded; // keys >= fence belong to another spliterator
+    private int fence;
+
+    KeySpliterator(Node root, long estimate) {
+        this.pending = root;
+        this.estimate = estimate;
+    }
+
+    @Override
+    public boolean tryAdvance(IntConsumer action) {
+        Node node = pending;
+        while (node != null) {
+            push(node);
+            node = node.getLeft();
+        }
+        if (top == 0) {
+            return false;
+        }
+
+        node = stack[--top];
+        stack[top] = null;
+        if (bounded && node.getKey() >= fence) {
+            top = 0; // every key left is past the fence
+            pending = null;
+            return false;
+        }
+        pending = node.getRight();
+        action.accept(node.getKey());
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(IntConsumer action) {
+        while (tryAdvance(action)) {
+            // tryAdvance does the work
+        }
+    }
+
+    @Override
+    public Spliterator.OfInt trySplit() {
+        // Parts of pending past the fence are never visited
+        while (bounded && pending != null && pending.getKey() >= fence) {
+            pending = pending.getLeft();
+        }
+        if (pending != null && pending.getLeft() == null) {
+            push(pending); // same keys: the node, then its right subtree
+            pending = null;
+        }
+
+        KeySpliterator prefix;
+        if (pending != null) {
+            // Prefix: the left subtree; this spliterator continues with pending, then its right subtree
+            prefix = new KeySpliterator(pending.getLeft(), estimate >>> 1);
+            push(pending);
+            pending = null;
+        } else if (top > 1) {
+            // Prefix: every stacked node but the bottom one (all their keys are smaller)
+            prefix = new KeySpliterator(null, estimate >>> 1);
+            prefix.stack = Arrays.copyOfRange(stack, 1, stack.length);
+            prefix.top = top - 1;
+            Arrays.fill(stack, 1, top, null);
+            top = 1;
+        } else if (top == 1) {
+            // Prefix: the node and the left part of its right subtree, up to a node inside the fence
+            Node split = stack[0].getRight();
+            while (bounded && split != null && split.getKey() >= fence) {
+                split = split.getLeft();
+            }
+            if (split == null) {
+                return null; // a single key left
+            }
+            prefix = new KeySpliterator(null, estimate >>> 1);
+            prefix.push(stack[0]);
+            prefix.bounded = true;
+            prefix.fence = split.getKey();
+            stack[0] = split;
+            estimate -= prefix.estimate;
+            return prefix;
+        } else {
+            return null;
+        }
+        prefix.bounded = bounded;
+        prefix.fence = fence;
+        estimate -= prefix.estimate;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return estimate;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SORTED | DISTINCT | NONNULL;
+    }
+
+    @Override
+    public Comparator<? super Integer> getComparator() {
+        return null; // natural (ascending) order
+    }
+
+    private void push(Node node) {
+        if (top == stack.length) {
+            stack = Arrays.copyOf(stack, top * 2);
+        }
+        stack[top++] = node;
+    }
+}
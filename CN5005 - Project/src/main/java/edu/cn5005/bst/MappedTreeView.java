@@ -0,0 +1,177 @@
+package edu.cn5005.bst;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ Read-only view of a FIXED tree snapshot (see TreeSnapshot), queried in place through
+ memory-mapped buffers: opening it builds no nodes and reads nothing but the header, and
+ the operating system pages the records in as the searches touch them.
+
+ A search starts at the root (the last record) and moves to a child by index arithmetic:
+ the right child of record i is i-1 and its left child is i-1-nodes(right child), so every
+ step reads at most two records.
+
+ A MappedByteBuffer is limited to 2 GB, so the records are mapped in chunks of
+ RECORDS_PER_CHUNK (a whole number of records per chunk, a record never spans two chunks).
+ */
+public final class MappedTreeView {
+
+    private static final int CHUNK_SHIFT = 27;
+    private static final long RECORDS_PER_CHUNK = 1L << CHUNK_SHIFT; // 1.75 GB of records
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+    private static final int KEY = 0;
+    private static final int COUNT = 4;
+    private static final int NODES = 8;
+    private static final int HEIGHT = 12;
+    private static final int CHILDREN = 13;
+
+    private final MappedByteBuffer[] chunks;
+    private final long nodeCount;
+    private final long size;
+
+    private MappedTreeView(MappedByteBuffer[] chunks, long nodeCount, long size) {
+        this.chunks = chunks;
+        this.nodeCount = nodeCount;
+        this.size = size;
+    }
+
+    // Mapping a snapshot written by BST.save(file) (the FIXED format)
+    public static MappedTreeView open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer headerBuffer = ByteBuffer.allocate(TreeSnapshot.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (headerBuffer.hasRemaining()) {
+                if (channel.read(headerBuffer) < 0) {
+                    break; // shorter than a header: readHeader rejects it
+                }
+            }
+            headerBuffer.flip();
+            TreeSnapshot.Header header = TreeSnapshot.readHeader(headerBuffer, file);
+            if (header.format != TreeSnapshot.FIXED) {
+                throw new IOException("only FIXED snapshots can be mapped (saved compact): " + file);
+            }
+            long expected = TreeSnapshot.HEADER_BYTES + header.nodeCount * TreeSnapshot.RECORD_BYTES;
+            if (channel.size() < expected) {
+                throw new IOException("truncated tree snapshot: " + file);
+            }
+
+            // The mappings stay valid after the channel is closed
+            int chunkCount = (int) ((header.nodeCount + RECORDS_PER_CHUNK - 1) / RECORDS_PER_CHUNK);
+            MappedByteBuffer[] chunks = new MappedByteBuffer[chunkCount];
+            for (int c = 0; c < chunkCount; c++) {
+                long first = c * RECORDS_PER_CHUNK;
+                long records = Math.min(RECORDS_PER_CHUNK, header.nodeCount - first);
+                chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        TreeSnapshot.HEADER_BYTES + first * TreeSnapshot.RECORD_BYTES,
+                        records * TreeSnapshot.RECORD_BYTES);
+                chunks[c].order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new MappedTreeView(chunks, header.nodeCount, header.size);
+        }
+    }
+
+    // Returning the number of occurrences of a key (0 if absent)
+    public int count(int key) {
+        long node = nodeCount - 1;
+        while (node >= 0) {
+            int nodeKey = intAt(node, KEY);
+            if (key == nodeKey) {
+                return intAt(node, COUNT);
+            }
+            node = (key < nodeKey) ? left(node) : right(node);
+        }
+        return 0;
+    }
+
+    public boolean contains(int key) {
+        return count(key) > 0;
+    }
+
+    // Greatest key <= key, or null
+    public Integer floor(int key) {
+        Integer best = null;
+        long node = nodeCount - 1;
+        while (node >= 0) {
+            int nodeKey = intAt(node, KEY);
+            if (key == nodeKey) {
+                return nodeKey;
+            }
+            if (key < nodeKey) {
+                node = left(node);
+            } else {
+                best = nodeKey;
+                node = right(node);
+            }
+        }
+        return best;
+    }
+
+    // Smallest key >= key, or null
+    public Integer ceiling(int key) {
+        Integer best = null;
+        long node = nodeCount - 1;
+        while (node >= 0) {
+            int nodeKey = intAt(node, KEY);
+            if (key == nodeKey) {
+                return nodeKey;
+            }
+            if (key > nodeKey) {
+                node = right(node);
+            } else {
+                best = nodeKey;
+                node = left(node);
+            }
+        }
+        return best;
+    }
+
+    // Total number of occurrences (sum of all counts)
+    public long size() {
+        return size;
+    }
+
+    // Number of distinct keys (records)
+    public long nodeCount() {
+        return nodeCount;
+    }
+
+    public boolean isEmpty() {
+        return nodeCount == 0;
+    }
+
+    public int height() {
+        return (nodeCount == 0) ? 0 : byteAt(nodeCount - 1, HEIGHT) & 0xFF;
+    }
+
+    // Child navigation, -1 when there is no child
+
+    private long right(long node) {
+        return ((byteAt(node, CHILDREN) & TreeSnapshot.HAS_RIGHT) != 0) ? node - 1 : -1;
+    }
+
+    private long left(long node) {
+        if ((byteAt(node, CHILDREN) & TreeSnapshot.HAS_LEFT) == 0) {
+            return -1;
+        }
+        long right = right(node);
+        return (right < 0) ? node - 1 : right - intAt(right, NODES);
+    }
+
+    private int intAt(long record, int field) {
+        return chunks[(int) (record >>> CHUNK_SHIFT)].getInt(offset(record, field));
+    }
+
+    private byte byteAt(long record, int field) {
+        return chunks[(int) (record >>> CHUNK_SHIFT)].get(offset(record, field));
+    }
+
+    private static int offset(long record, int field) {
+        return (int) (record & CHUNK_MASK) * TreeSnapshot.RECORD_BYTES + field;
+    }
+}
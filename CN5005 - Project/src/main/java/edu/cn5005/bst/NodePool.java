@@ -0,0 +1,125 @@
+package edu.cn5005.bst;
+
+/*
+ Per-tree pool of free Node objects (see BST.enableNodePool).
+
+ Under steady insert/delete churn every delete drops a node and the next insert allocates
+ one. The pool keeps the dropped nodes on a free-list (chained through their left field)
+ and hands them out again, so a tree whose size stays about the same stops allocating.
+
+ Bounded retention: at most maxRetained nodes are kept; a node released into a full pool
+ is simply left to the garbage collector.
+ Shrinking: the pool tracks the smallest number of free nodes it held during each window
+ of SHRINK_WINDOW takes and releases. Those nodes sat unused for the whole window, so half
+ of them are let go at the end of it. A tree that shrinks for good gives its memory back
+ over a few windows, one that only fluctuates keeps what it reuses.
+
+ Like the trees, a pool is not thread-safe and belongs to exactly one tree: a node must not
+ be released while anything can still reach it.
+ */
+public final class NodePool {
+
+    public static final int DEFAULT_MAX_RETAINED = 1 << 16;
+    static final int SHRINK_WINDOW = 1 << 16;
+
+    private final int maxRetained;
+    private Node free;       // free-list, chained through left
+    private int retained;    // nodes on the free-list
+    private int lowWater;    // smallest value of retained in the current window
+    private int operations;  // takes and releases in the current window
+    private long reused;
+    private long allocated;
+    private long dropped;
+
+    public NodePool(int maxRetained) {
+        if (maxRetained < 0) {
+            throw new IllegalArgumentException("maxRetained must not be negative: " + maxRetained);
+        }
+        this.maxRetained = maxRetained;
+    }
+
+    // A node holding key, with no children and height 1 (the caller sets count and weight)
+    Node take(int key) {
+        tick();
+        Node node = free;
+        if (node == null) {
+            allocated++;
+            return new Node(key);
+        }
+        free = node.getLeft();
+        retained--;
+        lowWater = Math.min(lowWater, retained);
+        reused++;
+        node.setKey(key);
+        node.setLeft(null);
+        node.setHeight(1);
+        return node;
+    }
+
+    // Taking back a node that has been unlinked from the tree
+    void release(Node node) {
+        tick();
+        node.setRight(null);
+        if (retained >= maxRetained) {
+            node.setLeft(null);
+            dropped++;
+            return;
+        }
+        node.setLeft(free);
+        free = node;
+        retained++;
+    }
+
+    // Closing a window: half of the nodes that stayed free all along are let go
+    private void tick() {
+        if (++operations < SHRINK_WINDOW) {
+            return;
+        }
+        operations = 0;
+        int surplus = lowWater / 2;
+        for (int i = 0; i < surplus; i++) {
+            free = free.getLeft();
+        }
+        retained -= surplus;
+        dropped += surplus;
+        lowWater = retained;
+    }
+
+    // Letting go of every free node
+    public void clear() {
+        dropped += retained;
+        free = null;
+        retained = 0;
+        lowWater = 0;
+    }
+
+    // Number of free nodes held right now
+    public int retained() {
+        return retained;
+    }
+
+    public int maxRetained() {
+        return maxRetained;
+    }
+
+    // Nodes handed out from the free-list
+    public long reused() {
+        return reused;
+    }
+
+    // Nodes that had to be allocated because the free-list was empty
+    public long allocated() {
+        return allocated;
+    }
+
+    // Released nodes left to the garbage collector (pool full, shrinking or clear)
+    public long dropped() {
+        return dropped;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("retained=%d/%d reused=%d allocated=%d dropped=%d",
+                retained, maxRetained, reused, allocated, dropped);
+    }
+}
@@ -0,0 +1,62 @@
+package edu.cn5005.bst;
+
+import java.util.List;
+
+/*
+ The operations every tree in this package offers, whatever its balancing scheme:
+ BST (none), AVL, RedBlackTree, WAVLTree and Treap.
+
+ All of them store each distinct key once with a count of its occurrences: insert/delete
+ change the count by one, add/remove by n, and a key disappears when its count reaches 0.
+ size() is the total number of occurrences. Navigation (floor, ceiling, higher, lower,
+ first, last, pollFirst) is over the distinct keys, with the meaning of java.util.TreeSet.
+
+ Rotations (by case) are reported by metrics() once enableMetrics() has been called, which
+ is how the balancing schemes can be compared on the same workload.
+ */
+public interface OrderedMultiset {
+
+    void insert(int key);
+
+    void delete(int key);
+
+    // Inserting n occurrences of a key
+    void add(int key, int n);
+
+    // Deleting up to n occurrences of a key, returning how many were actually removed
+    int remove(int key, int n);
+
+    // Changing all occurrences of oldKey into newKey; false if oldKey was not present
+    boolean changeKey(int oldKey, int newKey);
+
+    int count(int key);
+
+    boolean contains(int key);
+
+    long size();
+
+    boolean isEmpty();
+
+    Integer floor(int key);
+
+    Integer ceiling(int key);
+
+    Integer higher(int key);
+
+    Integer lower(int key);
+
+    int first();
+
+    int last();
+
+    Integer pollFirst();
+
+    List<String> inorder();
+
+    void forEachInorder(KeyCountVisitor visitor);
+
+    TreeMetrics enableMetrics();
+
+    // null unless metrics are enabled
+    TreeMetrics metrics();
+}
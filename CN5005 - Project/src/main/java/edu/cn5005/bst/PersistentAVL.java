@@ -0,0 +1,324 @@
+package edu.cn5005.bst;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ Persistent (immutable) AVL Tree.
+
+ A PersistentAVL never changes: insert/delete/add/remove/changeKey return a new version and
+ leave this one untouched. Only the nodes on the root-to-key path (O(log n) of them) are copied;
+ every other subtree is shared between the old and the new version (structural sharing).
+ Because nothing is ever modified in place, any version can be read by any number of threads
+ while newer versions are being built.
+
+ Duplicates use the same count policy as BST/AVL, and every node stores its height and its
+ subtree weight (sum of counts) like the mutable AVL.
+
+ The recursion in insert/delete follows one root-to-leaf path, so it is bounded by the AVL
+ height (under 46 levels for 2^31 keys).
+ */
+public final class PersistentAVL {
+
+    // Immutable node; all fields are final so a published version is safe to share between threads
+    static final class PNode {
+        final int key;
+        final int count;
+        final int height;
+        final long weight;
+        final PNode left;
+        final PNode right;
+
+        PNode(int key, int count, PNode left, PNode right) {
+            this.key = key;
+            this.count = count;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+            this.weight = count + weight(left) + weight(right);
+        }
+    }
+
+    public static final PersistentAVL EMPTY = new PersistentAVL(null, 0);
+
+    private final PNode root;
+    private final long size; // sum of all counts
+
+    private PersistentAVL(PNode root, long size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    public static PersistentAVL empty() {
+        return EMPTY;
+    }
+
+    // A version with the same keys and counts as tree, built balanced in O(n)
+    public static PersistentAVL copyOf(BST tree) {
+        int[] keys = new int[16];
+        int[] counts = new int[16];
+        int n = 0;
+        KeyCursor cursor = tree.cursor();
+        while (cursor.next()) {
+            if (n == keys.length) {
+                keys = Arrays.copyOf(keys, n * 2);
+                counts = Arrays.copyOf(counts, n * 2);
+            }
+            keys[n] = cursor.key();
+            counts[n++] = cursor.count();
+        }
+        return new PersistentAVL(build(keys, counts, 0, n), tree.size());
+    }
+
+    // Updates (each returns a new version)
+
+    public PersistentAVL insert(int key) {
+        return add(key, 1);
+    }
+
+    public PersistentAVL delete(int key) {
+        return remove(key, 1);
+    }
+
+    public PersistentAVL add(int key, int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("n must not be negative: " + n);
+        }
+        if (n == 0) {
+            return this;
+        }
+        return new PersistentAVL(add(root, key, n), size + n);
+    }
+
+    // Removing up to n occurrences; returns this version unchanged if the key is absent
+    public PersistentAVL remove(int key, int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("n must not be negative: " + n);
+        }
+        int c = count(key);
+        if (c == 0 || n == 0) {
+            return this;
+        }
+        int removed = Math.min(n, c);
+        return new PersistentAVL(remove(root, key, removed), size - removed);
+    }
+
+    // Moving all occurrences of oldKey to newKey; returns this version unchanged if oldKey is absent
+    public PersistentAVL changeKey(int oldKey, int newKey) {
+        int c = count(oldKey);
+        if (c == 0 || oldKey == newKey) {
+            return this;
+        }
+        return remove(oldKey, c).add(newKey, c);
+    }
+
+    // Queries
+
+    public int count(int key) {
+        PNode node = root;
+        while (node != null) {
+            if (key == node.key) return node.count;
+            node = (key < node.key) ? node.left : node.right;
+        }
+        return 0;
+    }
+
+    public boolean contains(int key) {
+        return count(key) > 0;
+    }
+
+    // Total number of occurrences (sum of all counts)
+    public long size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    public int height() {
+        return height(root);
+    }
+
+    // Number of occurrences with a key smaller than key
+    public long rank(int key) {
+        long rank = 0;
+        PNode node = root;
+        while (node != null) {
+            if (key <= node.key) {
+                node = node.left;
+            } else {
+                rank += weight(node.left) + node.count;
+                node = node.right;
+            }
+        }
+        return rank;
+    }
+
+    // Traversals
+
+    public void forEachInorder(KeyCountVisitor visitor) {
+        PNode[] stack = new PNode[64];
+        int top = 0;
+        PNode node = root;
+        while (node != null || top > 0) {
+            while (node != null) {
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, top * 2);
+                }
+                stack[top++] = node;
+                node = node.left;
+            }
+            node = stack[--top];
+            visitor.visit(node.key, node.count);
+            node = node.right;
+        }
+    }
+
+    public void forEachPreorder(KeyCountVisitor visitor) {
+        if (root == null) {
+            return;
+        }
+        PNode[] stack = new PNode[64];
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            PNode node = stack[--top];
+            visitor.visit(node.key, node.count);
+            if (top + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            if (node.right != null) stack[top++] = node.right;
+            if (node.left != null) stack[top++] = node.left;
+        }
+    }
+
+    /*
+     Writing this version as an AVL snapshot (same file as AVL.save; AVL.load reads it back).
+     The nodes go straight to the writer in postorder, so no mutable copy of the tree is built.
+     */
+    public void save(Path file) throws IOException {
+        try (TreeSnapshot.Writer writer = new TreeSnapshot.Writer(file, false)) {
+            writePostorder(root, writer);
+            writer.finish(TreeSnapshot.BALANCED, size);
+        }
+    }
+
+    private static void writePostorder(PNode node, TreeSnapshot.Writer writer) throws IOException {
+        if (node == null) {
+            return;
+        }
+        writePostorder(node.left, writer);
+        writePostorder(node.right, writer);
+        writer.record(node.key, node.count, node.height, node.left != null, node.right != null);
+    }
+
+    public List<String> inorder() {
+        List<String> inorder_list = new ArrayList<>();
+        forEachInorder((key, count) -> inorder_list.add(key + ":" + count));
+        return inorder_list;
+    }
+
+    public List<String> preorder() {
+        List<String> preorder_list = new ArrayList<>();
+        forEachPreorder((key, count) -> preorder_list.add(key + ":" + count));
+        return preorder_list;
+    }
+
+    // Path-copying helpers
+
+    // Balanced subtree of the sorted keys[from, to): the middle key becomes the root
+    private static PNode build(int[] keys, int[] counts, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        int mid = (from + to) >>> 1;
+        return new PNode(keys[mid], counts[mid], build(keys, counts, from, mid), build(keys, counts, mid + 1, to));
+    }
+
+    private static int height(PNode node) {
+        return (node == null) ? 0 : node.height;
+    }
+
+    private static long weight(PNode node) {
+        return (node == null) ? 0 : node.weight;
+    }
+
+    private static PNode add(PNode node, int key, int n) {
+        if (node == null) {
+            return new PNode(key, n, null, null);
+        }
+        if (key < node.key) {
+            return balance(node.key, node.count, add(node.left, key, n), node.right);
+        }
+        if (key > node.key) {
+            return balance(node.key, node.count, node.left, add(node.right, key, n));
+        }
+        return new PNode(key, Math.addExact(node.count, n), node.left, node.right); // Duplicate key
+    }
+
+    // Removing n occurrences of a key that is known to be present with count >= n
+    private static PNode remove(PNode node, int key, int n) {
+        if (key < node.key) {
+            return balance(node.key, node.count, remove(node.left, key, n), node.right);
+        }
+        if (key > node.key) {
+            return balance(node.key, node.count, node.left, remove(node.right, key, n));
+        }
+
+        if (node.count > n) {
+            return new PNode(key, node.count - n, node.left, node.right);
+        }
+        if (node.left == null) return node.right;
+        if (node.right == null) return node.left;
+
+        // Two children: the inorder successor takes this node's place
+        PNode successor = node.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+        return balance(successor.key, successor.count, node.left, removeMin(node.right));
+    }
+
+    private static PNode removeMin(PNode node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        return balance(node.key, node.count, removeMin(node.left), node.right);
+    }
+
+    // Building a node from (possibly unbalanced by one level) children, rotating if needed (LL, LR, RR, RL)
+    private static PNode balance(int key, int count, PNode left, PNode right) {
+        int hl = height(left);
+        int hr = height(right);
+
+        if (hl > hr + 1) {
+            if (height(left.left) >= height(left.right)) {
+                // LL case: single right rotation
+                return new PNode(left.key, left.count, left.left, new PNode(key, count, left.right, right));
+            }
+            // LR case: left rotation of the left child, then right rotation
+            PNode lr = left.right;
+            return new PNode(lr.key, lr.count,
+                    new PNode(left.key, left.count, left.left, lr.left),
+                    new PNode(key, count, lr.right, right));
+        }
+
+        if (hr > hl + 1) {
+            if (height(right.right) >= height(right.left)) {
+                // RR case: single left rotation
+                return new PNode(right.key, right.count, new PNode(key, count, left, right.left), right.right);
+            }
+            // RL case: right rotation of the right child, then left rotation
+            PNode rl = right.left;
+            return new PNode(rl.key, rl.count,
+                    new PNode(key, count, left, rl.left),
+                    new PNode(right.key, right.count, rl.right, right.right));
+        }
+
+        return new PNode(key, count, left, right);
+    }
+}
@@ -0,0 +1,226 @@
+package edu.cn5005.bst;
+
+/*
+ Red-black tree extension of BST (classic bottom-up insertion and deletion, as in CLRS).
+
+ Rules: the root and missing children are black, a red node has no red child, and every
+ path from a node down to a missing child passes the same number of black nodes. That keeps
+ the height below 2 log2(n + 1), looser than AVL (about 1.44 log2 n), but rebalancing is cheap:
+ - insertion: recolorings move up the path, then at most one single or double rotation
+ - deletion: at most three rotations (AVL may rotate at every level on the way up)
+
+ The color is kept in the height field of Node (RED = 1, BLACK = 0), so a red-black node
+ costs nothing more than an AVL node. A fresh node from newNode has height 1, i.e. is red.
+ Duplicates, changeKey and everything read-only behave exactly as in BST/AVL.
+ */
+public class RedBlackTree extends BalancedBST {
+
+    private static final int RED = 1;
+    private static final int BLACK = 0;
+
+    private static boolean isRed(Node node) {
+        return node != null && node.getHeight() == RED;
+    }
+
+    private static void setColor(Node node, int color) {
+        node.setHeight(color);
+    }
+
+    @Override
+    public void add(int key, int n) {
+        checkCount(n);
+        if (n == 0) {
+            return;
+        }
+        insertRB(key, n);
+        size += n;
+    }
+
+    @Override
+    public int remove(int key, int n) {
+        checkCount(n);
+        if (n == 0 || filteredOut(key)) {
+            return 0;
+        }
+        int removed = deleteRB(key, n);
+        if (removed == 0) {
+            filterMissed();
+        }
+        size -= removed;
+        return removed;
+    }
+
+    private void insertRB(int key, int n) {
+        Node node = descend(key);
+        if (node != null) {
+            node.setCount(Math.addExact(node.getCount(), n)); // Duplicate key: no structural change
+            return;
+        }
+
+        Node x = newNode(key, n);
+        setColor(x, RED);
+        if (depth == 0) {
+            root = x;
+            setColor(x, BLACK);
+            return;
+        }
+        Node parent = path[depth - 1];
+        if (key < parent.getKey()) {
+            parent.setLeft(x);
+        } else {
+            parent.setRight(x);
+        }
+
+        // Fixing a red x under a red parent path[i] (which is not the root, so path[i - 1] exists)
+        int i = depth - 1;
+        while (i >= 1 && isRed(path[i])) {
+            Node p = path[i];
+            Node g = path[i - 1];
+            Node uncle = (g.getLeft() == p) ? g.getRight() : g.getLeft();
+
+            // Red uncle: recoloring moves the violation two levels up
+            if (isRed(uncle)) {
+                setColor(p, BLACK);
+                setColor(uncle, BLACK);
+                setColor(g, RED);
+                x = g;
+                i -= 2;
+                continue;
+            }
+
+            // Black uncle: one single (LL, RR) or double (LR, RL) rotation ends the fix
+            Node top;
+            if (g.getLeft() == p) {
+                if (p.getRight() == x) {
+                    recordRotation(TreeMetrics.Rotation.LR);
+                    g.setLeft(rotateLeft(p));
+                } else {
+                    recordRotation(TreeMetrics.Rotation.LL);
+                }
+                top = rotateRight(g);
+            } else {
+                if (p.getLeft() == x) {
+                    recordRotation(TreeMetrics.Rotation.RL);
+                    g.setRight(rotateRight(p));
+                } else {
+                    recordRotation(TreeMetrics.Rotation.RR);
+                }
+                top = rotateLeft(g);
+            }
+            setColor(top, BLACK);
+            setColor(g, RED);
+            relink((i >= 2) ? path[i - 2] : null, g, top);
+            break;
+        }
+        setColor(root, BLACK);
+    }
+
+    private int deleteRB(int key, int n) {
+        Node node = descend(key);
+        if (node == null) {
+            return 0; // Key not found
+        }
+        int count = node.getCount();
+        if (count > n) {
+            node.setCount(count - n); // No structural change
+            return n;
+        }
+
+        // Node with two children: replacing with inorder successor, which is unlinked instead
+        Node removed = node;
+        if (node.getLeft() != null && node.getRight() != null) {
+            push(node);
+            Node successor = node.getRight();
+            while (successor.getLeft() != null) {
+                push(successor);
+                successor = successor.getLeft();
+            }
+            node.setKey(successor.getKey());
+            node.setCount(successor.getCount());
+            removed = successor;
+        }
+
+        Node child = (removed.getLeft() != null) ? removed.getLeft() : removed.getRight();
+        relink((depth == 0) ? null : path[depth - 1], removed, child);
+        boolean removedBlack = !isRed(removed);
+        release(removed);
+        keyRemoved(key);
+
+        // Removing a black node leaves its side one black short
+        if (removedBlack) {
+            if (isRed(child)) {
+                setColor(child, BLACK);
+            } else {
+                fixDoubleBlack(child, depth - 1);
+            }
+        }
+        return count;
+    }
+
+    // x (possibly missing) under path[i] is one black short; i = -1 when x is the root
+    private void fixDoubleBlack(Node x, int i) {
+        while (i >= 0 && !isRed(x)) {
+            Node p = path[i];
+            Node g = (i > 0) ? path[i - 1] : null;
+            boolean left = p.getLeft() == x;
+            Node w = left ? p.getRight() : p.getLeft(); // never missing: its side has a black more
+
+            // Red sibling: rotating it above p leaves x with a black sibling
+            if (isRed(w)) {
+                setColor(w, BLACK);
+                setColor(p, RED);
+                recordRotation(left ? TreeMetrics.Rotation.RR : TreeMetrics.Rotation.LL);
+                relink(g, p, left ? rotateLeft(p) : rotateRight(p));
+                ensurePath(i + 1);
+                path[i] = w;
+                path[i + 1] = p;
+                i++;
+                g = w;
+                w = left ? p.getRight() : p.getLeft();
+            }
+
+            // Black sibling with black children: recoloring it moves the shortage up to p
+            if (!isRed(w.getLeft()) && !isRed(w.getRight())) {
+                setColor(w, RED);
+                x = p;
+                i--;
+                continue;
+            }
+
+            // Black sibling with a red child: one single or double rotation ends the fix
+            if (left) {
+                if (!isRed(w.getRight())) {
+                    setColor(w.getLeft(), BLACK);
+                    setColor(w, RED);
+                    p.setRight(rotateRight(w));
+                    w = p.getRight();
+                    recordRotation(TreeMetrics.Rotation.RL);
+                } else {
+                    recordRotation(TreeMetrics.Rotation.RR);
+                }
+                setColor(w, p.getHeight());
+                setColor(p, BLACK);
+                setColor(w.getRight(), BLACK);
+                relink(g, p, rotateLeft(p));
+            } else {
+                if (!isRed(w.getLeft())) {
+                    setColor(w.getRight(), BLACK);
+                    setColor(w, RED);
+                    p.setLeft(rotateLeft(w));
+                    w = p.getLeft();
+                    recordRotation(TreeMetrics.Rotation.LR);
+                } else {
+                    recordRotation(TreeMetrics.Rotation.LL);
+                }
+                setColor(w, p.getHeight());
+                setColor(p, BLACK);
+                setColor(w.getLeft(), BLACK);
+                relink(g, p, rotateRight(p));
+            }
+            return;
+        }
+        if (x != null) {
+            setColor(x, BLACK);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package edu.cn5005.bst;
+
+import java.util.SplittableRandom;
+
+/*
+ Treap extension of BST: a search tree on the keys that is at the same time a max-heap on a
+ random priority per key, which makes its shape that of a BST built from the keys in random
+ order (expected depth about 1.39 log2 n, whatever the insertion order).
+
+ The priority is not stored: it is a seeded hash of the key (a bijection on int, so two keys
+ never tie), computed when needed. Each tree draws its own seed, so an adversary cannot pick
+ keys that degenerate it; Treap(seed) gives a reproducible shape for benchmarks and tests.
+
+ - insertion: the new leaf rotates up while its priority beats its parent's
+ - deletion: the node rotates down (lifting its child with the higher priority) until it has
+   at most one child, then it is unlinked
+ Both need about two rotations on average (only single rotations, LL and RR in TreeMetrics).
+ */
+public class Treap extends BalancedBST {
+
+    private final int seed;
+
+    public Treap() {
+        this(new SplittableRandom().nextInt());
+    }
+
+    public Treap(int seed) {
+        this.seed = seed;
+    }
+
+    // Seeded murmur3 finalizer: a bijective mix, so distinct keys get distinct priorities
+    private int priority(int key) {
+        int h = (key ^ seed) * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    @Override
+    public void add(int key, int n) {
+        checkCount(n);
+        if (n == 0) {
+            return;
+        }
+        insertTreap(key, n);
+        size += n;
+    }
+
+    @Override
+    public int remove(int key, int n) {
+        checkCount(n);
+        if (n == 0 || filteredOut(key)) {
+            return 0;
+        }
+        int removed = deleteTreap(key, n);
+        if (removed == 0) {
+            filterMissed();
+        }
+        size -= removed;
+        return removed;
+    }
+
+    private void insertTreap(int key, int n) {
+        Node node = descend(key);
+        if (node != null) {
+            node.setCount(Math.addExact(node.getCount(), n)); // Duplicate key: no structural change
+            return;
+        }
+
+        Node x = newNode(key, n);
+        if (depth == 0) {
+            root = x;
+            return;
+        }
+        Node parent = path[depth - 1];
+        if (key < parent.getKey()) {
+            parent.setLeft(x);
+        } else {
+            parent.setRight(x);
+        }
+
+        // Rotating x up while it has a higher priority than its parent
+        int priority = priority(key);
+        for (int i = depth - 1; i >= 0 && priority(path[i].getKey()) < priority; i--) {
+            Node p = path[i];
+            Node top;
+            if (p.getLeft() == x) {
+                recordRotation(TreeMetrics.Rotation.LL);
+                top = rotateRight(p);
+            } else {
+                recordRotation(TreeMetrics.Rotation.RR);
+                top = rotateLeft(p);
+            }
+            relink((i > 0) ? path[i - 1] : null, p, top);
+        }
+    }
+
+    private int deleteTreap(int key, int n) {
+        Node node = descend(key);
+        if (node == null) {
+            return 0; // Key not found
+        }
+        int count = node.getCount();
+        if (count > n) {
+            node.setCount(count - n); // No structural change
+            return n;
+        }
+
+        // Rotating the node down until it has at most one child
+        Node parent = (depth == 0) ? null : path[depth - 1];
+        while (node.getLeft() != null && node.getRight() != null) {
+            Node top;
+            if (priority(node.getLeft().getKey()) > priority(node.getRight().getKey())) {
+                recordRotation(TreeMetrics.Rotation.LL);
+                top = rotateRight(node);
+            } else {
+                recordRotation(TreeMetrics.Rotation.RR);
+                top = rotateLeft(node);
+            }
+            relink(parent, node, top);
+            parent = top;
+        }
+
+        relink(parent, node, (node.getLeft() != null) ? node.getLeft() : node.getRight());
+        release(node);
+        keyRemoved(key);
+        return count;
+    }
+}
@@ -0,0 +1,286 @@
+package edu.cn5005.bst;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/*
+ Optional instrumentation of a BST/AVL (see BST.enableMetrics).
+
+ A tree without metrics keeps a null reference and pays one null check per operation.
+ With metrics enabled every insert/delete/search records:
+ - the number of key comparisons it made (one per node visited on the way down), which is
+   also its search depth and goes into a histogram (bucket i = operations that visited i
+   nodes, the last bucket collects everything deeper)
+ - nodes allocated and freed
+ - rotations by case: LL/RR are single right/left rotations, LR/RL double rotations
+   (Treap only does single rotations)
+
+ The counters are plain fields written by the thread that uses the tree (the trees are not
+ thread-safe anyway); a JMX client reading them from another thread may see values that
+ are a little behind.
+
+ Shape statistics (height, average depth, gap to the optimal height) need a full traversal,
+ so they are only computed when BST.shape() is called; the last result is kept here for JMX.
+ */
+public final class TreeMetrics implements TreeMetricsMXBean {
+
+    public enum Rotation { LL, RR, LR, RL }
+
+    public static final int DEPTH_BUCKETS = 64;
+
+    private final long[] rotations = new long[Rotation.values().length];
+    private final long[] depthHistogram = new long[DEPTH_BUCKETS];
+    private long operations;
+    private long comparisons;
+    private long allocated;
+    private long freed;
+    private volatile Shape lastShape;
+
+    // Recording (called by the trees)
+
+    void recordPath(int visited) {
+        operations++;
+        comparisons += visited;
+        depthHistogram[Math.min(visited, DEPTH_BUCKETS - 1)]++;
+    }
+
+    void recordRotation(Rotation rotation) {
+        rotations[rotation.ordinal()]++;
+    }
+
+    void recordAllocation() {
+        allocated++;
+    }
+
+    void recordFree() {
+        freed++;
+    }
+
+    void recordShape(Shape shape) {
+        lastShape = shape;
+    }
+
+    // Reading
+
+    public long rotations(Rotation rotation) {
+        return rotations[rotation.ordinal()];
+    }
+
+    @Override
+    public long getOperations() {
+        return operations;
+    }
+
+    @Override
+    public long getComparisons() {
+        return comparisons;
+    }
+
+    @Override
+    public double getComparisonsPerOperation() {
+        return (operations == 0) ? 0.0 : (double) comparisons / operations;
+    }
+
+    @Override
+    public long getNodesAllocated() {
+        return allocated;
+    }
+
+    @Override
+    public long getNodesFreed() {
+        return freed;
+    }
+
+    @Override
+    public long getRotationsLL() {
+        return rotations(Rotation.LL);
+    }
+
+    @Override
+    public long getRotationsRR() {
+        return rotations(Rotation.RR);
+    }
+
+    @Override
+    public long getRotationsLR() {
+        return rotations(Rotation.LR);
+    }
+
+    @Override
+    public long getRotationsRL() {
+        return rotations(Rotation.RL);
+    }
+
+    // Single rotations in total (a double rotation counts as two)
+    @Override
+    public long getSingleRotations() {
+        return rotations(Rotation.LL) + rotations(Rotation.RR) + 2 * (rotations(Rotation.LR) + rotations(Rotation.RL));
+    }
+
+    @Override
+    public long[] getDepthHistogram() {
+        return depthHistogram.clone();
+    }
+
+    @Override
+    public int getHeight() {
+        Shape shape = lastShape;
+        return (shape == null) ? -1 : shape.height;
+    }
+
+    @Override
+    public double getAverageDepth() {
+        Shape shape = lastShape;
+        return (shape == null) ? -1 : shape.averageDepth;
+    }
+
+    @Override
+    public int getHeightGap() {
+        Shape shape = lastShape;
+        return (shape == null) ? -1 : shape.heightGap;
+    }
+
+    // Last shape computed by BST.shape(), or null
+    public Shape lastShape() {
+        return lastShape;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(rotations, 0);
+        Arrays.fill(depthHistogram, 0);
+        operations = 0;
+        comparisons = 0;
+        allocated = 0;
+        freed = 0;
+    }
+
+    // Point-in-time copy of all counters
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    // Registering with the platform MBean server as edu.cn5005.bst:type=TreeMetrics,name=<name>
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("edu.cn5005.bst:type=TreeMetrics,name=" + ObjectName.quote(name));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.registerMBean(this, objectName);
+        return objectName;
+    }
+
+    public static void unregister(ObjectName objectName) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    }
+
+    /*
+     Shape of a tree. Depth counts nodes from the root (the root has depth 1), so height is the
+     depth of the deepest node. optimalHeight = floor(log2(nodes)) + 1 is the height of a
+     perfectly balanced tree with the same number of nodes; heightGap = height - optimalHeight
+     stays within about 0.44 * log2(nodes) for an AVL tree and grows towards nodes for a
+     degenerate BST.
+     */
+    public static final class Shape {
+        public final long nodes;
+        public final int height;
+        public final double averageDepth;
+        public final int optimalHeight;
+        public final int heightGap;
+
+        Shape(long nodes, int height, double averageDepth) {
+            this.nodes = nodes;
+            this.height = height;
+            this.averageDepth = averageDepth;
+            this.optimalHeight = (nodes == 0) ? 0 : 64 - Long.numberOfLeadingZeros(nodes);
+            this.heightGap = height - optimalHeight;
+        }
+
+        // Iterative walk (a degenerate BST can be as deep as it has nodes)
+        static Shape of(Node root) {
+            if (root == null) {
+                return new Shape(0, 0, 0.0);
+            }
+            Node[] stack = new Node[64];
+            int[] depths = new int[64];
+            int top = 0;
+            stack[top] = root;
+            depths[top++] = 1;
+            long nodes = 0;
+            long depthSum = 0;
+            int height = 0;
+            while (top > 0) {
+                Node node = stack[--top];
+                int depth = depths[top];
+                nodes++;
+                depthSum += depth;
+                height = Math.max(height, depth);
+                if (top + 2 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                    depths = Arrays.copyOf(depths, depths.length * 2);
+                }
+                if (node.getRight() != null) {
+                    stack[top] = node.getRight();
+                    depths[top++] = depth + 1;
+                }
+                if (node.getLeft() != null) {
+                    stack[top] = node.getLeft();
+                    depths[top++] = depth + 1;
+                }
+            }
+            return new Shape(nodes, height, (double) depthSum / nodes);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("nodes=%d height=%d optimal=%d gap=%d averageDepth=%.2f",
+                    nodes, height, optimalHeight, heightGap, averageDepth);
+        }
+    }
+
+    // Immutable copy of the counters (and of the last shape, if any)
+    public static final class Snapshot {
+        public final long operations;
+        public final long comparisons;
+        public final long nodesAllocated;
+        public final long nodesFreed;
+        public final long rotationsLL;
+        public final long rotationsRR;
+        public final long rotationsLR;
+        public final long rotationsRL;
+        private final long[] depthHistogram;
+        public final Shape shape;
+
+        private Snapshot(TreeMetrics metrics) {
+            operations = metrics.operations;
+            comparisons = metrics.comparisons;
+            nodesAllocated = metrics.allocated;
+            nodesFreed = metrics.freed;
+            rotationsLL = metrics.getRotationsLL();
+            rotationsRR = metrics.getRotationsRR();
+            rotationsLR = metrics.getRotationsLR();
+            rotationsRL = metrics.getRotationsRL();
+            depthHistogram = metrics.getDepthHistogram();
+            shape = metrics.lastShape;
+        }
+
+        public double comparisonsPerOperation() {
+            return (operations == 0) ? 0.0 : (double) comparisons / operations;
+        }
+
+        // Number of operations that visited exactly depth nodes (the last bucket: at least that many)
+        public long operationsAtDepth(int depth) {
+            return depthHistogram[Math.min(depth, DEPTH_BUCKETS - 1)];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("operations=%d comparisons/op=%.2f allocated=%d freed=%d"
+                            + " rotations LL=%d RR=%d LR=%d RL=%d%s",
+                    operations, comparisonsPerOperation(), nodesAllocated, nodesFreed,
+                    rotationsLL, rotationsRR, rotationsLR, rotationsRL,
+                    (shape == null) ? "" : " shape: " + shape);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package edu.cn5005.bst;
+
+// JMX view of TreeMetrics (registered with TreeMetrics.register)
+public interface TreeMetricsMXBean {
+
+    long getOperations();
+
+    long getComparisons();
+
+    double getComparisonsPerOperation();
+
+    long getNodesAllocated();
+
+    long getNodesFreed();
+
+    long getRotationsLL();
+
+    long getRotationsRR();
+
+    long getRotationsLR();
+
+    long getRotationsRL();
+
+    long getSingleRotations();
+
+    long[] getDepthHistogram();
+
+    // Shape of the tree the last time BST.shape() was called (-1 before that)
+    int getHeight();
+
+    double getAverageDepth();
+
+    int getHeightGap();
+
+    void reset();
+}
@@ -0,0 +1,314 @@
+package edu.cn5005.bst;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+ Binary snapshot of a BST/AVL (used by BST.save, PersistentAVL.save, BST.load and AVL.load).
+
+ Nodes are written in postorder (left subtree, right subtree, node). With the children
+ always written before their parent, both directions are single streaming passes:
+ - save keeps a stack with the node count of every finished subtree (in Writer, which
+   PersistentAVL.save feeds from its own nodes)
+ - load keeps a stack of finished subtrees; a record pops its children (right, then left),
+   links them and pushes itself, so the exact shape comes back without a single key
+   comparison or rotation, and the weight of each node is summed right there
+ The last record is the root.
+
+ Header (little-endian, HEADER_BYTES):
+   int magic, byte version, byte format, byte flags, long nodeCount, long size
+ flags: BALANCED if the tree was an AVL (AVL.load refuses anything else)
+
+ FIXED format, RECORD_BYTES per node, what MappedTreeView reads in place:
+   int key, int count, int nodes (node count of the subtree), byte height, byte children
+ The right child of record i is record i-1, its left child is record i-1-nodes(right child).
+
+ COMPACT format (smaller file, load only): per node
+   varint zigzag(key - previous key), varint count, varint height, byte children
+ Postorder neighbours are usually close keys, so the key delta mostly fits in 1-3 bytes.
+ */
+final class TreeSnapshot {
+
+    static final int MAGIC = 0x53544E43; // "CNTS"
+    static final byte VERSION = 1;
+    static final byte FIXED = 0;
+    static final byte COMPACT = 1;
+    static final byte BALANCED = 1;
+
+    static final int HEADER_BYTES = 4 + 1 + 1 + 1 + 8 + 8;
+    static final int RECORD_BYTES = 4 + 4 + 4 + 1 + 1;
+
+    // children byte
+    static final byte HAS_LEFT = 1;
+    static final byte HAS_RIGHT = 2;
+
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final int MAX_RECORD_BYTES = 10 + 5 + 5 + 1; // worst case compact record
+
+    private TreeSnapshot() {
+    }
+
+    static void save(BST tree, Path file, boolean compact) throws IOException {
+        try (Writer writer = new Writer(file, compact)) {
+            // Iterative postorder (same walk as forEachPostorder)
+            Node[] stack = new Node[64];
+            int top = 0;
+            Node node = tree.root;
+            Node lastVisited = null;
+            while (node != null || top > 0) {
+                while (node != null) {
+                    if (top == stack.length) {
+                        stack = Arrays.copyOf(stack, top * 2);
+                    }
+                    stack[top++] = node;
+                    node = node.getLeft();
+                }
+                Node peek = stack[top - 1];
+                if (peek.getRight() != null && peek.getRight() != lastVisited) {
+                    node = peek.getRight();
+                    continue;
+                }
+                writer.record(peek.getKey(), peek.getCount(), peek.getHeight(),
+                        peek.getLeft() != null, peek.getRight() != null);
+                lastVisited = stack[--top];
+            }
+            writer.finish((tree instanceof AVL) ? BALANCED : 0, tree.size);
+        }
+    }
+
+    /*
+     Streaming writer of the records, fed in postorder by whoever walks the tree (save above,
+     PersistentAVL.save). It keeps the stack of subtree node counts and writes the header
+     last, once nodeCount is known; a file closed without finish() has no valid header.
+     */
+    static final class Writer implements AutoCloseable {
+        private final FileChannel channel;
+        private final boolean compact;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private int[] nodes = new int[64];
+        private int nodesTop;
+        private long nodeCount;
+        private int previousKey;
+
+        Writer(Path file, boolean compact) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            this.compact = compact;
+            buffer.position(HEADER_BYTES);
+        }
+
+        // One node, after all the nodes of its subtrees
+        void record(int key, int count, int height, boolean hasLeft, boolean hasRight) throws IOException {
+            int subtree = 1;
+            byte children = 0;
+            if (hasRight) {
+                subtree += nodes[--nodesTop];
+                children |= HAS_RIGHT;
+            }
+            if (hasLeft) {
+                subtree += nodes[--nodesTop];
+                children |= HAS_LEFT;
+            }
+            if (nodesTop == nodes.length) {
+                nodes = Arrays.copyOf(nodes, nodesTop * 2);
+            }
+            nodes[nodesTop++] = subtree;
+
+            if (buffer.remaining() < MAX_RECORD_BYTES) {
+                flush(channel, buffer);
+            }
+            if (compact) {
+                putVarLong(buffer, zigzag((long) key - previousKey));
+                putVarLong(buffer, count);
+                putVarLong(buffer, height);
+                buffer.put(children);
+                previousKey = key;
+            } else {
+                buffer.putInt(key);
+                buffer.putInt(count);
+                buffer.putInt(subtree);
+                buffer.put((byte) height);
+                buffer.put(children);
+            }
+            nodeCount++;
+        }
+
+        void finish(byte flags, long size) throws IOException {
+            flush(channel, buffer);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.put(VERSION);
+            header.put(compact ? COMPACT : FIXED);
+            header.put(flags);
+            header.putLong(nodeCount);
+            header.putLong(size);
+            header.flip();
+            while (header.hasRemaining()) { // positional write at offset 0
+                channel.write(header, header.position());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    // Rebuilding the saved shape into tree (which must be empty)
+    static void load(BST tree, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.limit(0); // nothing read yet
+            fill(channel, buffer, HEADER_BYTES);
+            Header header = readHeader(buffer, file);
+            if (tree instanceof AVL && (header.flags & BALANCED) == 0) {
+                throw new IOException("snapshot was not saved from an AVL tree: " + file);
+            }
+
+            Node[] stack = new Node[64];
+            int top = 0;
+            int previousKey = 0;
+            try {
+                for (long i = 0; i < header.nodeCount; i++) {
+                    if (buffer.remaining() < MAX_RECORD_BYTES) {
+                        fill(channel, buffer, header.format == FIXED ? RECORD_BYTES : 1);
+                    }
+                    Node node;
+                    byte children;
+                    if (header.format == FIXED) {
+                        node = new Node(buffer.getInt());
+                        node.setCount(buffer.getInt());
+                        buffer.getInt(); // subtree node count, only needed by MappedTreeView
+                        node.setHeight(buffer.get() & 0xFF);
+                        children = buffer.get();
+                    } else {
+                        previousKey = (int) (previousKey + unzigzag(getVarLong(buffer)));
+                        node = new Node(previousKey);
+                        node.setCount((int) getVarLong(buffer));
+                        node.setHeight((int) getVarLong(buffer));
+                        children = buffer.get();
+                    }
+
+                    long weight = node.getCount();
+                    if ((children & HAS_RIGHT) != 0) {
+                        checkChild(top, file);
+                        node.setRight(stack[--top]);
+                        weight += node.getRight().getWeight();
+                    }
+                    if ((children & HAS_LEFT) != 0) {
+                        checkChild(top, file);
+                        node.setLeft(stack[--top]);
+                        weight += node.getLeft().getWeight();
+                    }
+                    node.setWeight(weight);
+
+                    if (top == stack.length) {
+                        stack = Arrays.copyOf(stack, top * 2);
+                    }
+                    stack[top++] = node;
+                }
+            } catch (BufferUnderflowException e) {
+                throw new IOException("truncated tree snapshot: " + file, e);
+            }
+
+            if (top > 1) {
+                throw new IOException("corrupt tree snapshot (" + top + " unlinked subtrees): " + file);
+            }
+            tree.root = (top == 0) ? null : stack[0];
+            tree.size = header.size;
+        }
+    }
+
+    static final class Header {
+        final byte format;
+        final byte flags;
+        final long nodeCount;
+        final long size;
+
+        Header(byte format, byte flags, long nodeCount, long size) {
+            this.format = format;
+            this.flags = flags;
+            this.nodeCount = nodeCount;
+            this.size = size;
+        }
+    }
+
+    static Header readHeader(ByteBuffer buffer, Path file) throws IOException {
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+            throw new IOException("not a tree snapshot: " + file);
+        }
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IOException("unsupported tree snapshot version " + version + ": " + file);
+        }
+        byte format = buffer.get();
+        if (format != FIXED && format != COMPACT) {
+            throw new IOException("unknown tree snapshot format " + format + ": " + file);
+        }
+        return new Header(format, buffer.get(), buffer.getLong(), buffer.getLong());
+    }
+
+    private static void checkChild(int top, Path file) throws IOException {
+        if (top == 0) {
+            throw new IOException("corrupt tree snapshot (missing child): " + file);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Moving the unread bytes to the front and reading more; fails if fewer than needed are left
+    private static void fill(FileChannel channel, ByteBuffer buffer, int needed) throws IOException {
+        buffer.compact();
+        int read;
+        do {
+            read = channel.read(buffer);
+        } while (read > 0 && buffer.hasRemaining());
+        buffer.flip();
+        if (buffer.remaining() < needed) {
+            throw new IOException("truncated tree snapshot");
+        }
+    }
+
+    // Varints: 7 bits per byte, high bit set on every byte but the last
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    // Mapping small negative deltas to small positive numbers: 0, -1, 1, -2, 2 -> 0, 1, 2, 3, 4
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
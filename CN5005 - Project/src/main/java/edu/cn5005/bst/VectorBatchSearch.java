@@ -0,0 +1,65 @@
+package edu.cn5005.bst;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ SIMD batch lookups over a FrozenIndex with the incubating Vector API (jdk.incubator.vector).
+
+ One vector holds as many independent searches as the CPU has int lanes (8 with AVX2, 16
+ with AVX-512, 4 with NEON). All lanes descend the Eytzinger array together: a masked gather
+ loads keys[i] for every lane at once, one vector compare decides left/right, and
+ i = 2i + right is one shift and one masked add. The gathers of the different lanes miss the
+ cache independently, so their memory latency overlaps instead of adding up.
+
+ A lane that has left the array (i > n) is masked out and keeps its i, so every lane runs
+ the same number of levels (the depth of the index) and the final lower bound is recovered
+ with the same bit trick as the scalar search. Gather indexes are clamped to n rather than
+ masked: an unmasked gather is a single instruction, a masked one may not be.
+
+ Only FrozenIndex.countAll loads this class, and only when the module is present at run time
+ (--add-modules jdk.incubator.vector); otherwise it uses the scalar interleaved search.
+ */
+final class VectorBatchSearch {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    private VectorBatchSearch() {
+    }
+
+    // Filling out[j] with the count of keys[j] for every full vector of keys; returns how many were done
+    static int countAll(int[] tree, int[] counts, int n, int[] keys, int[] out) {
+        int lanes = SPECIES.length();
+        int levels = 32 - Integer.numberOfLeadingZeros(n);
+        int[] index = new int[lanes];
+        IntVector ones = IntVector.broadcast(SPECIES, 1);
+        IntVector zeros = IntVector.zero(SPECIES);
+
+        int done = 0;
+        for (; done + lanes <= keys.length; done += lanes) {
+            IntVector key = IntVector.fromArray(SPECIES, keys, done);
+            IntVector i = ones;
+            for (int level = 0; level < levels; level++) {
+                VectorMask<Integer> live = i.compare(VectorOperators.LE, n);
+                i.min(n).intoArray(index, 0);
+                IntVector node = IntVector.fromArray(SPECIES, tree, 0, index, 0);
+                VectorMask<Integer> right = node.compare(VectorOperators.LT, key).and(live);
+                IntVector next = i.lanewise(VectorOperators.LSHL, 1).add(ones, right);
+                i = i.blend(next, live);
+            }
+
+            // Lower bound: i >> (numberOfTrailingZeros(~i) + 1), 0 when every key is smaller
+            IntVector shift = i.not().lanewise(VectorOperators.TRAILING_ZEROS_COUNT).add(1);
+            IntVector found = i.lanewise(VectorOperators.LSHR, shift);
+            VectorMask<Integer> exists = found.compare(VectorOperators.NE, 0);
+            found.intoArray(index, 0);
+            IntVector foundKey = IntVector.fromArray(SPECIES, tree, 0, index, 0);
+            IntVector foundCount = IntVector.fromArray(SPECIES, counts, 0, index, 0);
+            VectorMask<Integer> hit = foundKey.compare(VectorOperators.EQ, key).and(exists);
+            zeros.blend(foundCount, hit).intoArray(out, done);
+        }
+        return done;
+    }
+}
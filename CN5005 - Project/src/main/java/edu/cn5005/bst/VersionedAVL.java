@@ -0,0 +1,63 @@
+package edu.cn5005.bst;
+
+import java.util.List;
+
+/*
+ Mutable facade over PersistentAVL.
+
+ Writers replace the current version with the new one returned by the persistent tree
+ (writes are synchronized, so concurrent writers do not lose each other's updates).
+ snapshot() just returns the current version: it is O(1), and the snapshot never changes
+ afterwards, so a report or a traversal can run on it for as long as it needs while
+ ingestion keeps writing new versions.
+ */
+public class VersionedAVL {
+
+    private volatile PersistentAVL current = PersistentAVL.empty();
+
+    public synchronized void insert(int key) {
+        current = current.insert(key);
+    }
+
+    public synchronized void delete(int key) {
+        current = current.delete(key);
+    }
+
+    public synchronized void add(int key, int n) {
+        current = current.add(key, n);
+    }
+
+    public synchronized void remove(int key, int n) {
+        current = current.remove(key, n);
+    }
+
+    // Changing all occurrences of oldKey to newKey, false if oldKey was not in the tree
+    public synchronized boolean changeKey(int oldKey, int newKey) {
+        if (!current.contains(oldKey)) {
+            return false;
+        }
+        current = current.changeKey(oldKey, newKey);
+        return true;
+    }
+
+    // Point-in-time, immutable view of the tree (O(1))
+    public PersistentAVL snapshot() {
+        return current;
+    }
+
+    public int count(int key) {
+        return current.count(key);
+    }
+
+    public boolean contains(int key) {
+        return current.contains(key);
+    }
+
+    public long size() {
+        return current.size();
+    }
+
+    public List<String> inorder() {
+        return current.inorder();
+    }
+}
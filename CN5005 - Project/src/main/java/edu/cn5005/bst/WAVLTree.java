@@ -0,0 +1,222 @@
+package edu.cn5005.bst;
+
+/*
+ Weak AVL (WAVL) tree extension of BST (Haeupler, Sen and Tarjan, "Rank-balanced trees").
+
+ Every node has a rank, kept in the height field of Node (a missing child has rank 0, a
+ leaf rank 1, the same convention as the AVL height). The rank difference of a child is
+ rank(parent) - rank(child), and the rules are:
+ - every rank difference is 1 or 2
+ - a leaf has rank 1 (both of its missing children are 1-children)
+ An AVL tree is a WAVL tree with rank = height, and a tree built by insertions only stays
+ exactly an AVL tree. The difference is on deletion: instead of restoring height balance
+ at every level, a deletion only demotes ranks on the way up and does at most one single
+ or double rotation, so delete-heavy workloads rotate far less than with AVL. The height
+ stays below 2 log2(n), and 1.44 log2(n) without deletions.
+
+ Insertion (a new leaf may be a 0-child): promote the parent while it is a 0,1 node, then
+ at most one single or double rotation.
+ Deletion (a node may become a 3-child): demote the parent (and the sibling when it is a
+ 2,2 node) while the sibling allows it, then at most one single or double rotation.
+ */
+public class WAVLTree extends BalancedBST {
+
+    private static int rank(Node node) {
+        return (node == null) ? 0 : node.getHeight();
+    }
+
+    private static void promote(Node node, int by) {
+        node.setHeight(node.getHeight() + by);
+    }
+
+    @Override
+    public void add(int key, int n) {
+        checkCount(n);
+        if (n == 0) {
+            return;
+        }
+        insertWAVL(key, n);
+        size += n;
+    }
+
+    @Override
+    public int remove(int key, int n) {
+        checkCount(n);
+        if (n == 0 || filteredOut(key)) {
+            return 0;
+        }
+        int removed = deleteWAVL(key, n);
+        if (removed == 0) {
+            filterMissed();
+        }
+        size -= removed;
+        return removed;
+    }
+
+    private void insertWAVL(int key, int n) {
+        Node node = descend(key);
+        if (node != null) {
+            node.setCount(Math.addExact(node.getCount(), n)); // Duplicate key: no structural change
+            return;
+        }
+
+        Node x = newNode(key, n);
+        x.setHeight(1);
+        if (depth == 0) {
+            root = x;
+            return;
+        }
+        Node parent = path[depth - 1];
+        if (key < parent.getKey()) {
+            parent.setLeft(x);
+        } else {
+            parent.setRight(x);
+        }
+
+        int i = depth - 1;
+        while (i >= 0 && rank(path[i]) == rank(x)) { // x is a 0-child of p
+            Node p = path[i];
+            Node sibling = (p.getLeft() == x) ? p.getRight() : p.getLeft();
+
+            // 0,1 node: promoting p fixes it, but p may now be a 0-child itself
+            if (rank(p) - rank(sibling) == 1) {
+                promote(p, 1);
+                x = p;
+                i--;
+                continue;
+            }
+
+            // 0,2 node: x has come up by a promotion, so it is a 1,2 node; y is its inner child
+            Node top;
+            if (p.getLeft() == x) {
+                Node y = x.getRight();
+                if (rank(x) - rank(y) == 2) {
+                    recordRotation(TreeMetrics.Rotation.LL);
+                    top = rotateRight(p);
+                    promote(p, -1);
+                } else {
+                    recordRotation(TreeMetrics.Rotation.LR);
+                    p.setLeft(rotateLeft(x));
+                    top = rotateRight(p);
+                    promote(y, 1);
+                    promote(x, -1);
+                    promote(p, -1);
+                }
+            } else {
+                Node y = x.getLeft();
+                if (rank(x) - rank(y) == 2) {
+                    recordRotation(TreeMetrics.Rotation.RR);
+                    top = rotateLeft(p);
+                    promote(p, -1);
+                } else {
+                    recordRotation(TreeMetrics.Rotation.RL);
+                    p.setRight(rotateRight(x));
+                    top = rotateLeft(p);
+                    promote(y, 1);
+                    promote(x, -1);
+                    promote(p, -1);
+                }
+            }
+            relink((i > 0) ? path[i - 1] : null, p, top);
+            break;
+        }
+    }
+
+    private int deleteWAVL(int key, int n) {
+        Node node = descend(key);
+        if (node == null) {
+            return 0; // Key not found
+        }
+        int count = node.getCount();
+        if (count > n) {
+            node.setCount(count - n); // No structural change
+            return n;
+        }
+
+        // Node with two children: replacing with inorder successor, which is unlinked instead
+        Node removed = node;
+        if (node.getLeft() != null && node.getRight() != null) {
+            push(node);
+            Node successor = node.getRight();
+            while (successor.getLeft() != null) {
+                push(successor);
+                successor = successor.getLeft();
+            }
+            node.setKey(successor.getKey());
+            node.setCount(successor.getCount());
+            removed = successor;
+        }
+
+        Node x = (removed.getLeft() != null) ? removed.getLeft() : removed.getRight();
+        int i = depth - 1;
+        relink((i >= 0) ? path[i] : null, removed, x);
+        release(removed);
+        keyRemoved(key);
+        if (i < 0) {
+            return count;
+        }
+
+        // A parent left without children is a 2,2 leaf, which must become a 1,1 leaf
+        Node p = path[i];
+        if (p.getLeft() == null && p.getRight() == null && rank(p) == 2) {
+            promote(p, -1);
+            x = p;
+            i--;
+        }
+        rebalanceDelete(x, i);
+        return count;
+    }
+
+    // Fixing x (possibly missing) under path[i] while it is a 3-child
+    private void rebalanceDelete(Node x, int i) {
+        while (i >= 0 && rank(path[i]) - rank(x) == 3) {
+            Node p = path[i];
+            boolean left = p.getLeft() == x;
+            Node y = left ? p.getRight() : p.getLeft(); // never missing: p has rank 3 or more
+
+            // The sibling is a 2-child, or a 2,2 node: demoting moves the problem up to p
+            if (rank(p) - rank(y) == 2) {
+                promote(p, -1);
+                x = p;
+                i--;
+                continue;
+            }
+            if (rank(y) - rank(y.getLeft()) == 2 && rank(y) - rank(y.getRight()) == 2) {
+                promote(p, -1);
+                promote(y, -1);
+                x = p;
+                i--;
+                continue;
+            }
+
+            // Otherwise one single or double rotation ends the deletion
+            Node top;
+            Node outer = left ? y.getRight() : y.getLeft();
+            if (rank(y) - rank(outer) == 1) {
+                recordRotation(left ? TreeMetrics.Rotation.RR : TreeMetrics.Rotation.LL);
+                top = left ? rotateLeft(p) : rotateRight(p);
+                promote(y, 1);
+                promote(p, -1);
+                if (p.getLeft() == null && p.getRight() == null) {
+                    promote(p, -1); // a leaf must have rank 1
+                }
+            } else {
+                Node v = left ? y.getLeft() : y.getRight(); // the inner child, a 1-child of y
+                if (left) {
+                    recordRotation(TreeMetrics.Rotation.RL);
+                    p.setRight(rotateRight(y));
+                    top = rotateLeft(p);
+                } else {
+                    recordRotation(TreeMetrics.Rotation.LR);
+                    p.setLeft(rotateLeft(y));
+                    top = rotateRight(p);
+                }
+                promote(v, 2);
+                promote(y, -1);
+                promote(p, -2);
+            }
+            relink((i > 0) ? path[i - 1] : null, p, top);
+            return;
+        }
+    }
+}
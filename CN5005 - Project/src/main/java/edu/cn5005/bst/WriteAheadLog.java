@@ -0,0 +1,97 @@
+package edu.cn5005.bst;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/*
+ Record format of the DurableAVL write-ahead log.
+
+ Every mutation is one fixed-size record (little-endian, RECORD_BYTES):
+   byte op, int a, int b, int crc
+ - ADD a=key, b=n
+ - REMOVE a=key, b=number of occurrences actually removed
+ - CHANGE_KEY a=oldKey, b=newKey (only logged when oldKey was present)
+ crc is the CRC32C of the first 9 bytes, so a record that was only partly written when the
+ process died (a torn tail) is recognised and dropped during replay.
+ */
+final class WriteAheadLog {
+
+    static final byte ADD = 1;
+    static final byte REMOVE = 2;
+    static final byte CHANGE_KEY = 3;
+
+    static final int RECORD_BYTES = 1 + 4 + 4 + 4;
+    private static final int PAYLOAD_BYTES = RECORD_BYTES - 4;
+    private static final int BUFFER_RECORDS = 1 << 16;
+
+    // Receives the records of a log in order
+    @FunctionalInterface
+    interface Replayer {
+        void apply(byte op, int a, int b);
+    }
+
+    private final CRC32C crc = new CRC32C();
+
+    // Appending one record to buffer (the caller guarantees RECORD_BYTES of space)
+    void encode(ByteBuffer buffer, byte op, int a, int b) {
+        int start = buffer.position();
+        buffer.put(op);
+        buffer.putInt(a);
+        buffer.putInt(b);
+        crc.reset();
+        crc.update(buffer.duplicate().position(start).limit(start + PAYLOAD_BYTES));
+        buffer.putInt((int) crc.getValue());
+    }
+
+    /*
+     Replaying a log file; returns the length of its valid prefix.
+     Reading stops at the first incomplete record or bad checksum. For the newest log that is
+     a torn write from a crash and the file is truncated there; in an older log (which was
+     fully synced before the next one was started) it means corruption and fails.
+     */
+    static long replay(Path file, Replayer replayer, boolean newest) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_RECORDS * RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            long valid = 0;
+            while (channel.read(buffer) > 0 || buffer.position() > 0) {
+                buffer.flip();
+                if (buffer.remaining() < RECORD_BYTES && channel.position() == channel.size()) {
+                    break; // incomplete record at the end of the file
+                }
+                while (buffer.remaining() >= RECORD_BYTES) {
+                    int start = buffer.position();
+                    crc.reset();
+                    crc.update(buffer.duplicate().limit(start + PAYLOAD_BYTES));
+                    byte op = buffer.get();
+                    int a = buffer.getInt();
+                    int b = buffer.getInt();
+                    if (buffer.getInt() != (int) crc.getValue() || op < ADD || op > CHANGE_KEY) {
+                        return torn(channel, file, valid, newest);
+                    }
+                    replayer.apply(op, a, b);
+                    valid += RECORD_BYTES;
+                }
+                buffer.compact();
+            }
+            if (valid != channel.size()) {
+                return torn(channel, file, valid, newest);
+            }
+            return valid;
+        }
+    }
+
+    private static long torn(FileChannel channel, Path file, long valid, boolean newest) throws IOException {
+        if (!newest) {
+            throw new IOException("corrupt write-ahead log at byte " + valid + ": " + file);
+        }
+        channel.truncate(valid);
+        channel.force(true);
+        return valid;
+    }
+}
@@ -1,85 +1,115 @@
-package edu.cn5005.cli;
-
-import edu.cn5005.persons.PersonParser;
-import edu.cn5005.relations.RelationEngine;
-
-import java.io.IOException;
-
-public class MainCLI {
-    public static void main(String[] args) throws IOException {
-
-        // Print usage instructions
-        if (args.length < 1) {
-            System.out.println("Usage:");
-            System.out.println(" relation \"Name1\" \"Name2\"");
-            System.out.println(" insert <id> <name> <gender>");
-            System.out.println(" delete <id>");
-            System.out.println(" changeKey <oldId> to <newId>");
-            return;
-        }
-
-        // First argument defines the command
-        String cmd = args[0];
-
-        // Insert
-        if (cmd.equalsIgnoreCase("insert")) {
-            if (args.length < 4) {
-                System.out.println("Usage: insert <id> <name> <gender>");
-                return;
-            }
-            System.out.println("Inserted person:");
-            System.out.println("ID = " + args[1] + "\nName = " + args[2] + "\nGender = " + args[3]);
-            return;
-        }
-
-        // Delete
-        if (cmd.equalsIgnoreCase("delete")) {
-            if (args.length < 2) {
-                System.out.println("Usage: delete <id>");
-                return;
-            }
-            System.out.println("Deleted person with ID = " + args[1]);
-            return;
-        }
-
-        // Change key
-        if (cmd.equalsIgnoreCase("changeKey")) {
-            if (args.length < 3) {
-                System.out.println("Usage: changeKey <oldId> to <newId>");
-                return;
-            }
-            System.out.println("Changed key from " + args[1] + " to " + args[2]);
-            return;
-        }
-
-        // Relation
-        if (!cmd.equalsIgnoreCase("relation")) {
-            System.out.println("Unknown command");
-            return;
-        }
-
-        // Relation requires two names
-        if (args.length < 3) {
-            System.out.println("Usage: relation \"Name1\" \"Name2\"\n");
-            return;
-        }
-
-        String nameA = args[1];
-        String nameB = args[2];
-
-        // Load persons data from CSV
-        PersonParser p = new PersonParser();
-        p.loadCsv("persons.csv");
-
-        // Initialize relation engine with lookup maps
-        RelationEngine engine = new RelationEngine(
-                p.getPersonsToId(),
-                p.getIdToName()
-        );
-
-        System.out.println(engine.relation(nameA, nameB));
-    }
-}
-
-
-
+package edu.cn5005.cli;
+
+import edu.cn5005.persons.GenealogySnapshot;
+import edu.cn5005.persons.GenealogyStore;
+import edu.cn5005.relations.RelationEngine;
+import edu.cn5005.server.RelationClient;
+import edu.cn5005.server.RelationServer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+public class MainCLI {
+    public static void main(String[] args) throws IOException {
+
+        // Print usage instructions
+        if (args.length < 1) {
+            System.out.println("Usage:");
+            System.out.println(" relation \"Name1\" \"Name2\"");
+            System.out.println(" insert <id> <name> <gender>");
+            System.out.println(" delete <id>");
+            System.out.println(" changeKey <oldId> to <newId>");
+            System.out.println(" serve [port]");
+            System.out.println(" client [port]   (then one query per line, e.g. isSibling 3 4)");
+            return;
+        }
+
+        // First argument defines the command
+        String cmd = args[0];
+
+        // Insert
+        if (cmd.equalsIgnoreCase("insert")) {
+            if (args.length < 4) {
+                System.out.println("Usage: insert <id> <name> <gender>");
+                return;
+            }
+            System.out.println("Inserted person:");
+            System.out.println("ID = " + args[1] + "\nName = " + args[2] + "\nGender = " + args[3]);
+            return;
+        }
+
+        // Delete
+        if (cmd.equalsIgnoreCase("delete")) {
+            if (args.length < 2) {
+                System.out.println("Usage: delete <id>");
+                return;
+            }
+            System.out.println("Deleted person with ID = " + args[1]);
+            return;
+        }
+
+        // Change key
+        if (cmd.equalsIgnoreCase("changeKey")) {
+            if (args.length < 3) {
+                System.out.println("Usage: changeKey <oldId> to <newId>");
+                return;
+            }
+            System.out.println("Changed key from " + args[1] + " to " + args[2]);
+            return;
+        }
+
+        // Server: loads persons.csv once and answers queries until stopped
+        if (cmd.equalsIgnoreCase("serve")) {
+            int port = (args.length > 1) ? Integer.parseInt(args[1]) : RelationServer.DEFAULT_PORT;
+            GenealogyStore store = GenealogySnapshot.openOrBuild(Path.of("persons.csv"));
+            RelationServer server = new RelationServer(new RelationEngine(store));
+            port = server.start(port);
+            System.out.println("Serving " + store.size() + " persons on 127.0.0.1:" + port);
+            try {
+                server.join();
+            } catch (InterruptedException e) {
+                server.close();
+            }
+            return;
+        }
+
+        // Client: forwards query lines from stdin to a running server and prints the answers
+        if (cmd.equalsIgnoreCase("client")) {
+            int port = (args.length > 1) ? Integer.parseInt(args[1]) : RelationServer.DEFAULT_PORT;
+            try (RelationClient client = new RelationClient(port)) {
+                client.forward(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)), System.out);
+            }
+            return;
+        }
+
+        // Relation
+        if (!cmd.equalsIgnoreCase("relation")) {
+            System.out.println("Unknown command");
+            return;
+        }
+
+        // Relation requires two names
+        if (args.length < 3) {
+            System.out.println("Usage: relation \"Name1\" \"Name2\"\n");
+            return;
+        }
+
+        String nameA = args[1];
+        String nameB = args[2];
+
+        // Load persons data: from persons.csv.snapshot when it is up to date, otherwise
+        // from the CSV (fast loader, bad lines are only counted), writing a new snapshot
+        GenealogyStore store = GenealogySnapshot.openOrBuild(Path.of("persons.csv"));
+
+        // Initialize relation engine with the columnar store
+        RelationEngine engine = new RelationEngine(store);
+
+        System.out.println(engine.relation(nameA, nameB));
+    }
+}
+
+
+
@@ -0,0 +1,474 @@
+package edu.cn5005.persons;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/*
+ Binary snapshot of a GenealogyStore, so that a run can skip parsing the CSV.
+
+ The file holds the store exactly as it sits in memory: the int columns, the CSR children
+ index and the name dictionary. open() maps the file section by section with FileChannel.map
+ and bulk-copies the columns into int arrays (a memory copy, no parsing). The names stay in
+ the mapping and are decoded only when a lookup reaches them.
+
+ Layout (little-endian, every section starts on a multiple of 8):
+   header (HEADER_BYTES):
+     int magic, byte version, 3 bytes zero, long csvSize, long csvModified (ms),
+     int persons, int names, int genders, int childCount, long nameBytes, int dangling, int crc
+   int ids[persons], danglingIds[dangling]
+   int fathers[persons], mothers[persons], spouses[persons], nameCodes[persons]
+   byte genders[persons]
+   int personOfName[names], childStart[persons + 1], children[childCount]
+   gender names: per gender int length + UTF-8 bytes
+   name area (nameBytes): per name, in dictionary order, int length + UTF-8 bytes; a name
+     never crosses a NAME_SEGMENT_BYTES boundary (the rest of the segment is zero padding),
+     so every segment can be mapped on its own (a mapping is limited to 2 GB)
+   long nameOffsets[names] (offset of each name in the name area)
+
+ crc is the CRC32C of everything after the header followed by the header bytes before crc.
+ csvSize and csvModified describe the CSV the snapshot was built from; isFresh compares them
+ with the CSV on disk, so editing the CSV makes the snapshot stale.
+ */
+public final class GenealogySnapshot {
+
+    static final int MAGIC = 0x53474E43; // "CNGS"
+    static final byte VERSION = 2;
+    static final int HEADER_BYTES = 4 + 1 + 3 + 8 + 8 + 4 + 4 + 4 + 4 + 8 + 4 + 4;
+    private static final int CRC_OFFSET = 52;
+
+    private static final int NAME_SEGMENT_SHIFT = 30;
+    private static final long NAME_SEGMENT_BYTES = 1L << NAME_SEGMENT_SHIFT;
+
+    // Sections are read through mappings of this size; equal to the name segment size, so that
+    // every mapping of the name area is exactly one segment
+    private static final long MAP_BYTES = NAME_SEGMENT_BYTES;
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private GenealogySnapshot() {
+    }
+
+    // Where the snapshot of a CSV file lives: next to it, named <csv name>.snapshot
+    public static Path pathFor(Path csv) {
+        return csv.resolveSibling(csv.getFileName() + ".snapshot");
+    }
+
+    /*
+     The store of a CSV: opened from its snapshot when that is fresh, otherwise parsed from the
+     CSV (malformed lines are reported on stderr) and written to a new snapshot for next time.
+     A snapshot that fails to open (corrupt, old version) is rebuilt the same way.
+     */
+    public static GenealogyStore openOrBuild(Path csv) throws IOException {
+        Path snapshot = pathFor(csv);
+        if (isFresh(snapshot, csv)) {
+            try {
+                return open(snapshot);
+            } catch (IOException e) {
+                System.err.println("Rebuilding " + snapshot + ": " + e.getMessage());
+            }
+        }
+
+        // The CSV's size and time are taken before parsing, so an edit during the load makes the snapshot stale
+        long csvSize = Files.size(csv);
+        long csvModified = Files.getLastModifiedTime(csv).toMillis();
+        PersonColumns columns = PersonCsvLoader.load(csv, true);
+        if (columns.malformedLines() > 0) {
+            System.err.println("Skipped " + columns.malformedLines() + " malformed lines in " + csv);
+        }
+        GenealogyStore store = GenealogyStore.of(columns);
+        try {
+            write(store, snapshot, csvSize, csvModified);
+        } catch (IOException e) {
+            System.err.println("Could not write " + snapshot + ": " + e.getMessage());
+        }
+        return store;
+    }
+
+    // Whether snapshot exists and was built from the current version of csv (reads only the header)
+    public static boolean isFresh(Path snapshot, Path csv) throws IOException {
+        if (!Files.isRegularFile(snapshot) || !Files.isRegularFile(csv)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            ByteBuffer header = readHeader(channel);
+            if (header == null) {
+                return false;
+            }
+            long csvSize = header.getLong(8);
+            long csvModified = header.getLong(16);
+            return csvSize == Files.size(csv) && csvModified == Files.getLastModifiedTime(csv).toMillis();
+        }
+    }
+
+    // Writing store as the snapshot of csv (in its current version)
+    public static void write(GenealogyStore store, Path snapshot, Path csv) throws IOException {
+        write(store, snapshot, Files.size(csv), Files.getLastModifiedTime(csv).toMillis());
+    }
+
+    /*
+     Written to a temporary file first and moved into place, so a crash never leaves half a
+     snapshot. Every writer gets its own temporary file, so two runs rebuilding the same
+     snapshot at once do not write into each other's file (the last move wins).
+     */
+    static void write(GenealogyStore store, Path snapshot, long csvSize, long csvModified) throws IOException {
+        Path temporary = Files.createTempFile(snapshot.toAbsolutePath().getParent(),
+                snapshot.getFileName() + ".", ".tmp");
+        try {
+            writeFile(store, temporary, csvSize, csvModified);
+            Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary); // only still there if writing or moving failed
+        }
+    }
+
+    private static void writeFile(GenealogyStore store, Path temporary, long csvSize, long csvModified)
+            throws IOException {
+        int n = store.size();
+        int names = store.names.length;
+        CRC32C crc = new CRC32C();
+        long nameBytes;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            Writer out = new Writer(channel, crc);
+            out.skipHeader();
+            out.ints(store.ids);
+            out.ints(store.danglingIds);
+            out.ints(store.fathers);
+            out.ints(store.mothers);
+            out.ints(store.spouses);
+            out.ints(store.nameCodes);
+            out.bytes(store.genders, store.genders.length);
+            out.align();
+            out.ints(store.personOfName);
+            out.ints(store.childStart);
+            out.ints(store.children);
+            for (String gender : store.genderNames) {
+                byte[] bytes = gender.getBytes(StandardCharsets.UTF_8);
+                out.putInt(bytes.length);
+                out.bytes(bytes, bytes.length);
+            }
+            out.align();
+
+            long[] nameOffsets = new long[names];
+            long start = out.position();
+            for (int code = 0; code < names; code++) {
+                byte[] bytes = store.dictionaryName(code).getBytes(StandardCharsets.UTF_8);
+                long offset = out.position() - start;
+                long room = NAME_SEGMENT_BYTES - (offset & (NAME_SEGMENT_BYTES - 1));
+                if (4 + bytes.length > room) {
+                    if (4 + bytes.length > NAME_SEGMENT_BYTES) {
+                        throw new IOException("name too long for a snapshot: " + bytes.length + " bytes");
+                    }
+                    out.zeros(room);
+                    offset += room;
+                }
+                nameOffsets[code] = offset;
+                out.putInt(bytes.length);
+                out.bytes(bytes, bytes.length);
+            }
+            out.align();
+            nameBytes = out.position() - start;
+            for (long offset : nameOffsets) {
+                out.putLong(offset);
+            }
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.put(VERSION);
+            header.put(new byte[3]);
+            header.putLong(csvSize);
+            header.putLong(csvModified);
+            header.putInt(n);
+            header.putInt(names);
+            header.putInt(store.genderNames.length);
+            header.putInt(store.children.length);
+            header.putLong(nameBytes);
+            header.putInt(store.danglingIds.length);
+            crc.update(header.array(), 0, CRC_OFFSET);
+            header.putInt((int) crc.getValue());
+            header.flip();
+            while (header.hasRemaining()) { // positional write at offset 0
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+    }
+
+    // Opening a snapshot; fails on a bad magic number, version, size or checksum
+    public static GenealogyStore open(Path snapshot) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            ByteBuffer header = readHeader(channel);
+            if (header == null) {
+                throw new IOException("not a genealogy snapshot (or an unsupported version): " + snapshot);
+            }
+            int n = header.getInt(24);
+            int names = header.getInt(28);
+            int genderCount = header.getInt(32);
+            int childCount = header.getInt(36);
+            long nameBytes = header.getLong(40);
+            int dangling = header.getInt(48);
+            int expectedCrc = header.getInt(CRC_OFFSET);
+            if (n < 0 || names < 0 || names > n || genderCount < 0 || genderCount > Byte.MAX_VALUE + 1
+                    || childCount < 0 || nameBytes < 0 || dangling < 0 || dangling > 3L * n) {
+                throw new IOException("corrupt genealogy snapshot header: " + snapshot);
+            }
+
+            CRC32C crc = new CRC32C();
+            Reader in = new Reader(channel, crc, HEADER_BYTES);
+            int[] ids = in.ints(n);
+            int[] danglingIds = in.ints(dangling);
+            int[] fathers = in.ints(n);
+            int[] mothers = in.ints(n);
+            int[] spouses = in.ints(n);
+            int[] nameCodes = in.ints(n);
+            byte[] genders = in.bytes(n);
+            in.align();
+            int[] personOfName = in.ints(names);
+            int[] childStart = in.ints(n + 1);
+            int[] children = in.ints(childCount);
+            String[] genderNames = new String[genderCount];
+            for (int g = 0; g < genderCount; g++) {
+                genderNames[g] = new String(in.bytes(in.intValue()), StandardCharsets.UTF_8);
+            }
+            in.align();
+            ByteBuffer[] nameSegments = in.segments(nameBytes);
+            long[] nameOffsets = in.longs(names);
+            if (in.position() != channel.size()) {
+                throw new IOException("genealogy snapshot has the wrong size: " + snapshot);
+            }
+            crc.update(header.array(), 0, CRC_OFFSET);
+            if ((int) crc.getValue() != expectedCrc) {
+                throw new IOException("genealogy snapshot checksum mismatch: " + snapshot);
+            }
+            check(ids, danglingIds, fathers, mothers, spouses, nameCodes, genders, personOfName, childStart,
+                    children, genderCount, names, snapshot);
+
+            return new GenealogyStore(ids, danglingIds, fathers, mothers, spouses, genders, genderNames, nameCodes,
+                    new String[names], personOfName, childStart, children, nameSegments, nameOffsets);
+        }
+    }
+
+    // Every index must be in range, so a bad snapshot fails here and not in the middle of a query
+    private static void check(int[] ids, int[] danglingIds, int[] fathers, int[] mothers, int[] spouses,
+                              int[] nameCodes, byte[] genders, int[] personOfName, int[] childStart,
+                              int[] children, int genderCount, int names, Path snapshot) throws IOException {
+        int n = ids.length;
+        int lowest = -1 - danglingIds.length; // link of the last dangling id
+        boolean valid = childStart[0] == 0 && childStart[n] == children.length;
+        for (int i = 1; i < danglingIds.length && valid; i++) {
+            valid = danglingIds[i - 1] < danglingIds[i];
+        }
+        for (int i = 0; i < n && valid; i++) {
+            valid = (i == 0 || ids[i - 1] < ids[i])
+                    && fathers[i] >= lowest && fathers[i] < n && mothers[i] >= lowest && mothers[i] < n
+                    && spouses[i] >= lowest && spouses[i] < n
+                    && nameCodes[i] >= 0 && nameCodes[i] < names
+                    && genders[i] >= 0 && genders[i] < genderCount
+                    && childStart[i] <= childStart[i + 1];
+        }
+        for (int i = 0; i < names && valid; i++) {
+            valid = personOfName[i] >= -1 && personOfName[i] < n;
+        }
+        for (int i = 0; i < children.length && valid; i++) {
+            valid = children[i] >= 0 && children[i] < n;
+        }
+        if (!valid) {
+            throw new IOException("corrupt genealogy snapshot: " + snapshot);
+        }
+    }
+
+    // The header, or null if the file is too short or has the wrong magic number or version
+    private static ByteBuffer readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                return null;
+            }
+        }
+        if (header.getInt(0) != MAGIC || header.get(4) != VERSION) {
+            return null;
+        }
+        return header;
+    }
+
+    // Decoding the name at offset of the name area
+    static String readName(ByteBuffer[] segments, long offset) {
+        ByteBuffer segment = segments[(int) (offset >>> NAME_SEGMENT_SHIFT)];
+        int position = (int) (offset & (NAME_SEGMENT_BYTES - 1));
+        byte[] bytes = new byte[segment.getInt(position)];
+        segment.get(position + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long aligned(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    // Buffered sequential writes; the CRC covers every byte after the header
+    private static final class Writer {
+        private final FileChannel channel;
+        private final CRC32C crc;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private long flushed;
+
+        Writer(FileChannel channel, CRC32C crc) {
+            this.channel = channel;
+            this.crc = crc;
+        }
+
+        // The header is written last, once the checksum is known
+        void skipHeader() throws IOException {
+            channel.position(HEADER_BYTES);
+            flushed = HEADER_BYTES;
+        }
+
+        long position() {
+            return flushed + buffer.position();
+        }
+
+        void ints(int[] values) throws IOException {
+            for (int i = 0; i < values.length; ) {
+                room(4);
+                int count = Math.min(values.length - i, buffer.remaining() / 4);
+                buffer.asIntBuffer().put(values, i, count);
+                buffer.position(buffer.position() + 4 * count);
+                i += count;
+            }
+            align();
+        }
+
+        void bytes(byte[] values, int length) throws IOException {
+            for (int i = 0; i < length; ) {
+                room(1);
+                int count = Math.min(length - i, buffer.remaining());
+                buffer.put(values, i, count);
+                i += count;
+            }
+        }
+
+        void putInt(int value) throws IOException {
+            room(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            room(8);
+            buffer.putLong(value);
+        }
+
+        void zeros(long count) throws IOException {
+            for (long i = 0; i < count; i++) {
+                room(1);
+                buffer.put((byte) 0);
+            }
+        }
+
+        void align() throws IOException {
+            zeros(aligned(position()) - position());
+        }
+
+        private void room(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                flushed += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    // Sequential reads through read-only mappings; the CRC covers every byte after the header
+    private static final class Reader {
+        private final FileChannel channel;
+        private final CRC32C crc;
+        private long position;
+
+        Reader(FileChannel channel, CRC32C crc, long position) {
+            this.channel = channel;
+            this.crc = crc;
+            this.position = position;
+        }
+
+        long position() {
+            return position;
+        }
+
+        // Mapping the next length bytes in pieces of at most MAP_BYTES, each piece passed to copy
+        private void map(long length, Copy copy) throws IOException {
+            if (position + length > channel.size()) {
+                throw new IOException("truncated genealogy snapshot");
+            }
+            for (long done = 0; done < length; ) {
+                long piece = Math.min(MAP_BYTES, length - done);
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position + done, piece);
+                mapped.order(ByteOrder.LITTLE_ENDIAN);
+                crc.update(mapped.duplicate());
+                copy.from(mapped, done);
+                done += piece;
+            }
+            position += length;
+        }
+
+        int[] ints(int count) throws IOException {
+            int[] values = new int[count];
+            map(4L * count, (mapped, done) -> mapped.asIntBuffer().get(values, (int) (done / 4), mapped.capacity() / 4));
+            align();
+            return values;
+        }
+
+        // One int, without the alignment that follows a section
+        int intValue() throws IOException {
+            int[] value = new int[1];
+            map(4, (mapped, done) -> value[0] = mapped.getInt(0));
+            return value[0];
+        }
+
+        long[] longs(int count) throws IOException {
+            long[] values = new long[count];
+            map(8L * count, (mapped, done) -> mapped.asLongBuffer().get(values, (int) (done / 8), mapped.capacity() / 8));
+            return values;
+        }
+
+        byte[] bytes(int count) throws IOException {
+            if (count < 0) {
+                throw new IOException("corrupt genealogy snapshot");
+            }
+            byte[] values = new byte[count];
+            map(count, (mapped, done) -> mapped.get(values, (int) done, mapped.capacity()));
+            return values;
+        }
+
+        // The name area, one mapping per NAME_SEGMENT_BYTES (kept for lazy decoding)
+        ByteBuffer[] segments(long length) throws IOException {
+            ByteBuffer[] segments = new ByteBuffer[(int) ((length + NAME_SEGMENT_BYTES - 1) >>> NAME_SEGMENT_SHIFT)];
+            map(length, (mapped, done) -> segments[(int) (done >>> NAME_SEGMENT_SHIFT)] = mapped);
+            return segments;
+        }
+
+        void align() throws IOException {
+            long padding = aligned(position) - position;
+            if (padding > 0) {
+                map(padding, (mapped, done) -> { });
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Copy {
+        void from(MappedByteBuffer mapped, long done);
+    }
+}
@@ -0,0 +1,429 @@
+package edu.cn5005.persons;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ Columnar, read-only store of a family tree: one slot per person in parallel primitive arrays
+ instead of a HashMap of Person objects.
+
+ Persons get dense indexes 0..size()-1 in ascending id order, so indexOf(id) is a binary
+ search over ids and needs no hash table. Links are stored as indexes:
+ - father / mother / spouse: int columns, NONE (-1) when the field is empty. An id that is
+   not in the file (a dangling reference) gets a placeholder link below NONE, the same one
+   wherever that id appears, so two persons with the same missing father still share a
+   father, exactly as with the ids of the CSV; linkedId gives the id back
+ - gender: byte codes into a small dictionary of the gender texts
+ - name: int codes into a sorted dictionary of the distinct names, so a repeated name is
+   stored once; indexOfName is a binary search of that dictionary
+ - children: the reverse of the parent links in CSR (compressed sparse row) form, the
+   children of index i are childAt(childrenStart(i) .. childrenEnd(i) - 1), ascending
+
+ A store opened from a GenealogySnapshot decodes dictionary names only when they are first
+ used (a name lookup touches about log2(distinct names) of them).
+
+ A person costs 4 (id) + 12 (links) + 1 (gender) + 4 (name code) bytes plus its share of the
+ name dictionary (and 4 bytes per distinct dangling id), against several hundred bytes for a
+ Person with boxed Integer fields in a HashMap entry.
+
+ When an id appears on several lines, the last line wins, and a name belongs to the last
+ person loaded with it, as in PersonParser.
+ */
+public final class GenealogyStore {
+
+    // Link of an empty father / mother / spouse field
+    public static final int NONE = -1;
+
+    // Package-private so GenealogySnapshot can write and restore them
+    final int[] ids;       // external id of every index, ascending
+    final int[] danglingIds; // ids linked to but not in the file, ascending; link -2 - k is danglingIds[k]
+    final int[] fathers;   // link to the father: index, NONE, or a dangling id
+    final int[] mothers;
+    final int[] spouses;
+    final byte[] genders;  // code into genderNames
+    final String[] genderNames;
+    final int[] nameCodes; // code into names
+    final String[] names;  // distinct names, sorted (null entries are not decoded yet)
+    final int[] personOfName; // index of the person a name looks up, by name code
+    final int[] childStart; // CSR offsets into children, one per person plus one
+    final int[] children;   // children indexes, grouped by parent
+
+    // Undecoded names of a snapshot (null when every name is in names)
+    private final ByteBuffer[] nameSegments;
+    private final long[] nameOffsets;
+
+    private final boolean[] male;  // by gender code
+    private final boolean[] female;
+
+    GenealogyStore(int[] ids, int[] danglingIds, int[] fathers, int[] mothers, int[] spouses, byte[] genders,
+                   String[] genderNames, int[] nameCodes, String[] names, int[] personOfName) {
+        this(ids, danglingIds, fathers, mothers, spouses, genders, genderNames, nameCodes, names, personOfName,
+                null, null, null, null);
+    }
+
+    // childStart/children are built when null
+    GenealogyStore(int[] ids, int[] danglingIds, int[] fathers, int[] mothers, int[] spouses, byte[] genders,
+                   String[] genderNames, int[] nameCodes, String[] names, int[] personOfName,
+                   int[] childStart, int[] children, ByteBuffer[] nameSegments, long[] nameOffsets) {
+        this.ids = ids;
+        this.danglingIds = danglingIds;
+        this.fathers = fathers;
+        this.mothers = mothers;
+        this.spouses = spouses;
+        this.genders = genders;
+        this.genderNames = genderNames;
+        this.nameCodes = nameCodes;
+        this.names = names;
+        this.personOfName = personOfName;
+        this.nameSegments = nameSegments;
+        this.nameOffsets = nameOffsets;
+        this.male = new boolean[genderNames.length];
+        this.female = new boolean[genderNames.length];
+        for (int g = 0; g < genderNames.length; g++) {
+            male[g] = genderNames[g].equalsIgnoreCase("male");
+            female[g] = genderNames[g].equalsIgnoreCase("female");
+        }
+        if (childStart == null) {
+            childStart = new int[ids.length + 1];
+            children = buildChildren(fathers, mothers, childStart);
+        }
+        this.childStart = childStart;
+        this.children = children;
+    }
+
+    // Filling childStart and returning the children, each list in ascending index (= id) order
+    private static int[] buildChildren(int[] fathers, int[] mothers, int[] childStart) {
+        int n = fathers.length;
+
+        // Counting the children of every person, then turning the counts into start offsets
+        for (int i = 0; i < n; i++) {
+            if (fathers[i] >= 0) {
+                childStart[fathers[i] + 1]++;
+            }
+            if (mothers[i] >= 0 && mothers[i] != fathers[i]) {
+                childStart[mothers[i] + 1]++;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            childStart[i + 1] += childStart[i];
+        }
+
+        int[] children = new int[childStart[n]];
+        int[] fill = Arrays.copyOf(childStart, n);
+        for (int i = 0; i < n; i++) {
+            if (fathers[i] >= 0) {
+                children[fill[fathers[i]]++] = i;
+            }
+            if (mothers[i] >= 0 && mothers[i] != fathers[i]) {
+                children[fill[mothers[i]]++] = i;
+            }
+        }
+        return children;
+    }
+
+    // Building the store from the rows of PersonCsvLoader
+    public static GenealogyStore of(PersonColumns columns) {
+        int rows = columns.size();
+
+        // Sorting the rows by id (then by row, so the last row of an id comes last)
+        long[] keyed = new long[rows];
+        for (int row = 0; row < rows; row++) {
+            keyed[row] = ((long) columns.id(row) << 32) | row;
+        }
+        Arrays.parallelSort(keyed);
+        int n = 0;
+        for (int i = 0; i < rows; i++) {
+            if (i + 1 == rows || (int) (keyed[i + 1] >> 32) != (int) (keyed[i] >> 32)) {
+                keyed[n++] = keyed[i];
+            }
+        }
+
+        int[] ids = new int[n];
+        int[] rowOf = new int[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = (int) (keyed[i] >> 32);
+            rowOf[i] = (int) keyed[i];
+        }
+
+        int[] fathers = new int[n];
+        int[] mothers = new int[n];
+        int[] spouses = new int[n];
+        byte[] genders = new byte[n];
+        String[] personNames = new String[n];
+        for (int i = 0; i < n; i++) {
+            int row = rowOf[i];
+            fathers[i] = columns.fatherId(row);
+            mothers[i] = columns.motherId(row);
+            spouses[i] = columns.spouseId(row);
+            genders[i] = columns.genderCode(row);
+            personNames[i] = columns.name(row);
+        }
+
+        // Name dictionary; a name looks up the person with the latest row
+        String[] names = distinct(personNames);
+        int[] nameCodes = new int[n];
+        int[] personOfName = new int[names.length];
+        Arrays.fill(personOfName, -1);
+        for (int i = 0; i < n; i++) {
+            int code = Arrays.binarySearch(names, personNames[i]);
+            nameCodes[i] = code;
+            if (personOfName[code] < 0 || rowOf[personOfName[code]] < rowOf[i]) {
+                personOfName[code] = i;
+            }
+        }
+        int[] danglingIds = toLinks(ids, fathers, mothers, spouses);
+        return new GenealogyStore(ids, danglingIds, fathers, mothers, spouses, genders, columns.genderNames(),
+                nameCodes, names, personOfName);
+    }
+
+    // Building the store from the maps of PersonParser
+    public static GenealogyStore of(Map<Integer, Person> personsById, Map<String, Integer> idByName) {
+        int n = personsById.size();
+        int[] ids = new int[n];
+        int next = 0;
+        for (int id : personsById.keySet()) {
+            ids[next++] = id;
+        }
+        Arrays.sort(ids);
+
+        int[] fathers = new int[n];
+        int[] mothers = new int[n];
+        int[] spouses = new int[n];
+        byte[] genders = new byte[n];
+        String[] personNames = new String[n];
+        Map<String, Integer> genderCodes = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            Person p = personsById.get(ids[i]);
+            fathers[i] = idOrNone(p.getFatherId());
+            mothers[i] = idOrNone(p.getMotherId());
+            spouses[i] = idOrNone(p.getSpouseId());
+            String gender = (p.getGender() == null) ? "" : p.getGender();
+            Integer code = genderCodes.get(gender);
+            if (code == null) {
+                if (genderCodes.size() == Byte.MAX_VALUE + 1) {
+                    throw new IllegalArgumentException("more than " + (Byte.MAX_VALUE + 1) + " distinct genders");
+                }
+                code = genderCodes.size();
+                genderCodes.put(gender, code);
+            }
+            genders[i] = (byte) (int) code;
+            personNames[i] = p.getName();
+        }
+        String[] genderNames = new String[genderCodes.size()];
+        for (Map.Entry<String, Integer> e : genderCodes.entrySet()) {
+            genderNames[e.getValue()] = e.getKey();
+        }
+
+        // Name dictionary; a name looks up the person idByName gives for it
+        String[] names = distinct(personNames);
+        int[] nameCodes = new int[n];
+        for (int i = 0; i < n; i++) {
+            nameCodes[i] = Arrays.binarySearch(names, personNames[i]);
+        }
+        int[] personOfName = new int[names.length];
+        Arrays.fill(personOfName, -1);
+        for (Map.Entry<String, Integer> e : idByName.entrySet()) {
+            int code = Arrays.binarySearch(names, e.getKey());
+            if (code >= 0) {
+                Integer id = e.getValue();
+                personOfName[code] = (id == null) ? NONE : indexOf(ids, (int) id);
+            }
+        }
+        int[] danglingIds = toLinks(ids, fathers, mothers, spouses);
+        return new GenealogyStore(ids, danglingIds, fathers, mothers, spouses, genders, genderNames,
+                nameCodes, names, personOfName);
+    }
+
+    // Sorted distinct values
+    private static String[] distinct(String[] values) {
+        String[] sorted = values.clone();
+        Arrays.parallelSort(sorted);
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (n == 0 || !sorted[i].equals(sorted[n - 1])) {
+                sorted[n++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, n);
+    }
+
+    private static int idOrNone(Integer id) {
+        return (id == null) ? PersonColumns.NO_ID : id;
+    }
+
+    private static int indexOf(int[] ids, int id) {
+        int index = Arrays.binarySearch(ids, id);
+        return (index < 0) ? NONE : index;
+    }
+
+    /*
+     Replacing the external ids in the link columns (NO_ID for an empty field) by links:
+     the index of the person, NONE, or -2 - k for the k-th id that is not in ids.
+     Returns those dangling ids, ascending.
+     */
+    private static int[] toLinks(int[] ids, int[]... columns) {
+        int[] dangling = new int[16];
+        int count = 0;
+        for (int[] column : columns) {
+            for (int id : column) {
+                if (id != PersonColumns.NO_ID && Arrays.binarySearch(ids, id) < 0) {
+                    if (count == dangling.length) {
+                        dangling = Arrays.copyOf(dangling, count * 2);
+                    }
+                    dangling[count++] = id;
+                }
+            }
+        }
+        Arrays.sort(dangling, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || dangling[i] != dangling[distinct - 1]) {
+                dangling[distinct++] = dangling[i];
+            }
+        }
+        dangling = Arrays.copyOf(dangling, distinct);
+
+        for (int[] column : columns) {
+            for (int i = 0; i < column.length; i++) {
+                int id = column[i];
+                if (id == PersonColumns.NO_ID) {
+                    column[i] = NONE;
+                } else {
+                    int index = Arrays.binarySearch(ids, id);
+                    column[i] = (index >= 0) ? index : -2 - Arrays.binarySearch(dangling, id);
+                }
+            }
+        }
+        return dangling;
+    }
+
+    // Number of persons
+    public int size() {
+        return ids.length;
+    }
+
+    // Index of a person id, -1 if there is no such person
+    public int indexOf(int id) {
+        int index = Arrays.binarySearch(ids, id);
+        return (index < 0) ? -1 : index;
+    }
+
+    // Index of the person a name refers to, -1 for an unknown name
+    public int indexOfName(String name) {
+        int low = 0;
+        int high = names.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = dictionaryName(mid).compareTo(name);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return personOfName[mid];
+            }
+        }
+        return -1;
+    }
+
+    // Name with dictionary code code, decoded from the snapshot on first use
+    String dictionaryName(int code) {
+        String name = names[code];
+        if (name == null) {
+            name = GenealogySnapshot.readName(nameSegments, nameOffsets[code]);
+            names[code] = name; // a String is immutable, so a racing thread at worst decodes it twice
+        }
+        return name;
+    }
+
+    public int id(int index) {
+        return ids[index];
+    }
+
+    public String name(int index) {
+        return dictionaryName(nameCodes[index]);
+    }
+
+    public String gender(int index) {
+        return genderNames[genders[index]];
+    }
+
+    public byte genderCode(int index) {
+        return genders[index];
+    }
+
+    public boolean isMale(int index) {
+        return male[genders[index]];
+    }
+
+    public boolean isFemale(int index) {
+        return female[genders[index]];
+    }
+
+    /*
+     Link to the father: his index, NONE if the field is empty, or a placeholder below NONE
+     for an id that is not in the file (equal placeholders mean the same id, see linkedId)
+     */
+    public int father(int index) {
+        return fathers[index];
+    }
+
+    public int mother(int index) {
+        return mothers[index];
+    }
+
+    public int spouse(int index) {
+        return spouses[index];
+    }
+
+    // The id a link (from father, mother or spouse) refers to, also for a person not in the file
+    public int linkedId(int link) {
+        if (link >= 0) {
+            return ids[link];
+        }
+        if (link == NONE) {
+            throw new IllegalArgumentException("empty link");
+        }
+        return danglingIds[-2 - link];
+    }
+
+    // Number of distinct ids that are linked to but not in the file
+    public int danglingIds() {
+        return danglingIds.length;
+    }
+
+    // Children of index are childAt(childrenStart(index)) .. childAt(childrenEnd(index) - 1)
+    public int childrenStart(int index) {
+        return childStart[index];
+    }
+
+    public int childrenEnd(int index) {
+        return childStart[index + 1];
+    }
+
+    public int childAt(int position) {
+        return children[position];
+    }
+
+    // Number of distinct names
+    public int distinctNames() {
+        return names.length;
+    }
+
+    // Approximate heap size of the columns and dictionaries
+    public long memoryBytes() {
+        long bytes = 4L * ids.length * 6 + 4L * children.length + genders.length + 4L * personOfName.length
+                + 4L * danglingIds.length;
+        if (nameOffsets != null) {
+            bytes += 8L * nameOffsets.length;
+        }
+        for (String name : names) {
+            if (name != null) {
+                bytes += 40 + 2L * name.length(); // object, array header, at most 2 bytes per char
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,102 @@
+package edu.cn5005.persons;
+
+import java.util.Map;
+
+/*
+ The rows of a persons CSV as parallel columns, one entry per well-formed line in file order
+ (made by PersonCsvLoader). Ids are plain ints; an empty father/mother/spouse field is NO_ID.
+ The gender column holds small codes into genderNames, so a gender is not a String per row.
+ */
+public final class PersonColumns {
+
+    // Value of an empty id field
+    public static final int NO_ID = Integer.MIN_VALUE;
+
+    private final int size;
+    private final int[] ids;
+    private final String[] names;
+    private final byte[] genders;
+    private final String[] genderNames;
+    private final int[] fatherIds;
+    private final int[] motherIds;
+    private final int[] spouseIds;
+    private final long malformedLines;
+    private final long bytes;
+
+    PersonColumns(int size, int[] ids, String[] names, byte[] genders, String[] genderNames,
+                  int[] fatherIds, int[] motherIds, int[] spouseIds, long malformedLines, long bytes) {
+        this.size = size;
+        this.ids = ids;
+        this.names = names;
+        this.genders = genders;
+        this.genderNames = genderNames;
+        this.fatherIds = fatherIds;
+        this.motherIds = motherIds;
+        this.spouseIds = spouseIds;
+        this.malformedLines = malformedLines;
+        this.bytes = bytes;
+    }
+
+    // Number of rows loaded
+    public int size() {
+        return size;
+    }
+
+    public int id(int row) {
+        return ids[row];
+    }
+
+    public String name(int row) {
+        return names[row];
+    }
+
+    public String gender(int row) {
+        return genderNames[genders[row]];
+    }
+
+    // Gender code of a row, an index into genderNames()
+    public byte genderCode(int row) {
+        return genders[row];
+    }
+
+    // Distinct gender values, in order of first appearance
+    public String[] genderNames() {
+        return genderNames.clone();
+    }
+
+    public int fatherId(int row) {
+        return fatherIds[row];
+    }
+
+    public int motherId(int row) {
+        return motherIds[row];
+    }
+
+    public int spouseId(int row) {
+        return spouseIds[row];
+    }
+
+    // Lines that were skipped because they could not be parsed (blank lines are not counted)
+    public long malformedLines() {
+        return malformedLines;
+    }
+
+    // Size of the file that was read
+    public long bytes() {
+        return bytes;
+    }
+
+    // Adding every row as a Person to the maps of PersonParser (a later row with the same id wins)
+    public void addTo(Map<Integer, Person> personsById, Map<String, Integer> idByName) {
+        for (int row = 0; row < size; row++) {
+            Person p = new Person(ids[row], names[row], gender(row),
+                    boxed(fatherIds[row]), boxed(motherIds[row]), boxed(spouseIds[row]));
+            personsById.put(p.getId(), p);
+            idByName.put(p.getName(), p.getId());
+        }
+    }
+
+    private static Integer boxed(int id) {
+        return (id == NO_ID) ? null : id;
+    }
+}
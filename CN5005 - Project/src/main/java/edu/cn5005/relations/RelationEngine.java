@@ -1,286 +1,291 @@
-package edu.cn5005.relations;
-
-import edu.cn5005.persons.Person;
-
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
-
-// This class implements the code for Part D and E
-
-public class RelationEngine {
-    private final Map<Integer, Person> personsById; // id → Person mapping
-    private final Map<String, Integer> idByName; // name → id mapping for quick lookup
-
-    public RelationEngine(Map<Integer, Person> personsById,
-                          Map<String, Integer> idByName) {
-        this.personsById = personsById;
-        this.idByName = idByName;
-    }
-
-    // Helper Methods
-
-    // Retrieving a Person object by id
-    private Person getPersonById(int id) {
-        return personsById.get(id);
-    }
-
-    // Retrieving a Person object by name using name -> id mapping
-    private Person getPersonByName(String name) {
-        Integer id = idByName.get(name);
-        if (id == null) {
-            System.err.println("Unknown name: " + name);
-            return null;
-        }
-        return getPersonById(id);
-    }
-
-    // Getting all parent IDs (father and mother) of a person
-    private Set<Integer> getParentIds(Person p) {
-        Set<Integer> parents = new HashSet<>();
-        if (p.getFatherId() != null) {
-            parents.add(p.getFatherId());
-        }
-        if (p.getMotherId() != null) {
-            parents.add(p.getMotherId());
-        }
-        return parents;
-    }
-
-    // Getting all children IDs of a person
-    private Set<Integer> getChildrenIds(Person p) {
-        Set<Integer> children = new HashSet<>();
-        int parentId = p.getId();
-
-        for (Person candidate : personsById.values()) {
-            Integer fatherId = candidate.getFatherId();
-            Integer motherId = candidate.getMotherId();
-
-            if ((fatherId != null && fatherId == parentId) ||
-                    (motherId != null && motherId == parentId)) {
-                children.add(candidate.getId());
-            }
-        }
-        return children;
-    }
-
-    // Getting all grandparent IDs of a person
-    private Set<Integer> getGrandparentIds(Person p) {
-        Set<Integer> grandparents = new HashSet<>();
-        for (Integer parentId : getParentIds(p)) {
-            Person parent = getPersonById(parentId);
-            if (parent != null) {
-                grandparents.addAll(getParentIds(parent)); // Add parents of the parent
-            }
-        }
-        return grandparents;
-    }
-
-    // Getting all grandchild IDs of a person
-    private Set<Integer> getGrandchildIds(Person p) {
-        Set<Integer> grandChildren = new HashSet<>();
-        for (Integer childId : getChildrenIds(p)) {
-            Person child = getPersonById(childId);
-            if (child != null) {
-                grandChildren.addAll(getChildrenIds(child)); // Add children of the child
-            }
-        }
-        return grandChildren;
-    }
-
-    // D.1 – Father / Mother
-
-    public boolean isFather(int idA, int idB) {
-        Person a = getPersonById(idA);
-        Person b = getPersonById(idB);
-
-        // If either person is missing, return false
-        if (a == null || b == null) {
-            System.err.println("isFather: unknown id " + idA + " or " + idB);
-            return false;
-        }
-
-        // Check gender before checking parent link
-        String gender = a.getGender();
-        if (gender == null || !gender.equalsIgnoreCase("male")) {
-            return false;
-        }
-
-        Integer fatherIdOfB = b.getFatherId();
-        return fatherIdOfB != null && fatherIdOfB == a.getId();
-    }
-
-    public boolean isMother(int idA, int idB) {
-        Person a = getPersonById(idA);
-        Person b = getPersonById(idB);
-
-        if (a == null || b == null) {
-            System.err.println("isMother: unknown id " + idA + " or " + idB);
-            return false;
-        }
-
-        String gender = a.getGender();
-        if (gender == null || !gender.equalsIgnoreCase("female")) {
-            return false;
-        }
-
-        Integer motherIdOfB = b.getMotherId();
-        return motherIdOfB != null && motherIdOfB == a.getId();
-    }
-
-    // D.2 – Child / Sibling
-
-    public boolean isChild(int idA, int idB) {
-        // A is child of B if B is father or mother of A
-        return isFather(idB, idA) || isMother(idB, idA);
-    }
-
-    public boolean isSibling(int idA, int idB) {
-        if (idA == idB) {
-            return false; // A person is not their own sibling
-        }
-
-        Person a = getPersonById(idA);
-        Person b = getPersonById(idB);
-
-        if (a == null || b == null) {
-            System.err.println("isSibling: unknown id " + idA + " or " + idB);
-            return false;
-        }
-
-        Integer aFather = a.getFatherId();
-        Integer aMother = a.getMotherId();
-        Integer bFather = b.getFatherId();
-        Integer bMother = b.getMotherId();
-
-        // Checking if they share at least one parent
-        boolean shareFather = (aFather != null && aFather.equals(bFather));
-        boolean shareMother = (aMother != null && aMother.equals(bMother));
-
-        return shareFather || shareMother;
-    }
-
-
-    // D.3 – Grandparent / Grandchild
-
-    public boolean isGrandparent(int idA, int idB) {
-        Person a = getPersonById(idA);
-        Person b = getPersonById(idB);
-
-        if (a == null || b == null) {
-            System.err.println("isGrandparent: unknown id " + idA + " or " + idB);
-            return false;
-        }
-
-        Set<Integer> grandparentsOfB = getGrandparentIds(b);
-        // Checking if A is in B's grandparents
-        return grandparentsOfB.contains(a.getId());
-    }
-
-    public boolean isGrandchild(int idA, int idB) {
-        return isGrandparent(idB, idA);
-    }
-
-
-    // D.4 – First Cousins
-
-    public boolean isFirstCousin(int idA, int idB) {
-        if (idA == idB) {
-            return false;
-        }
-        if (isSibling(idA, idB)) {
-            return false;
-        }
-
-        Person a = getPersonById(idA);
-        Person b = getPersonById(idB);
-
-        if (a == null || b == null) {
-            System.err.println("isFirstCousin: unknown id " + idA + " or " + idB);
-            return false;
-        }
-
-        // They are first cousins if they share at least one grandparent
-        Set<Integer> grandparentsA = getGrandparentIds(a);
-        Set<Integer> grandparentsB = getGrandparentIds(b);
-
-        for (Integer ga : grandparentsA) {
-            if (grandparentsB.contains(ga)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    // D.5 – relation(nameA, nameB)
-
-    public String relation(String nameA, String nameB) {
-        Person a = getPersonByName(nameA);
-        Person b = getPersonByName(nameB);
-
-        if (a == null || b == null) {
-            return "Κάποιο από τα ονόματα δεν βρέθηκε στο οικογενειακό δέντρο.";
-        }
-
-        int idA = a.getId();
-        int idB = b.getId();
-
-        if (idA == idB) {
-            return nameA + " και " + nameB + " είναι το ίδιο άτομο.";
-        }
-
-        if (isFather(idA, idB)) {
-            return nameA + " είναι πατέρας του/της " + nameB + ".";
-        }
-        if (isMother(idA, idB)) {
-            return nameA + " είναι μητέρα του/της " + nameB + ".";
-        }
-        if (isChild(idA, idB)) {
-            return nameA + " είναι παιδί του/της " + nameB + ".";
-        }
-        if (isSibling(idA, idB)) {
-            return nameA + " και " + nameB + " είναι αδέλφια.";
-        }
-        if (isGrandparent(idA, idB)) {
-            return nameA + " είναι παππούς/γιαγιά του/της " + nameB + ".";
-        }
-        if (isGrandchild(idA, idB)) {
-            return nameA + " είναι εγγόνι του/της " + nameB + ".";
-        }
-        if (isFirstCousin(idA, idB)) {
-            return nameA + " και " + nameB + " είναι πρώτα ξαδέλφια.";
-        }
-        if (isHalfSibling(idA, idB)) {
-            return nameA + " και " + nameB + " είναι ετεροθαλή αδέλφια.";
-        }
-        if (isSpouse(idA, idB)) {
-            return nameA + " και " + nameB + " είναι σύζυγοι.";
-        }
-
-        return "Δεν υπάρχει άμεση σχέση μεταξύ " + nameA + " και " + nameB + " στο οικογενειακό αυτό δέντρο.";
-    }
-
-
-    // Part E
-
-    // Half-siblings: share exactly one parent
-    public boolean isHalfSibling(int idA, int idB) {
-        if (idA == idB) return false;
-        Person a = getPersonById(idA);
-        Person b = getPersonById(idB);
-        if (a == null || b == null) return false;
-        boolean shareFather = a.fatherId != null && a.fatherId.equals(b.fatherId);
-        boolean shareMother = a.motherId != null && a.motherId.equals(b.motherId);
-
-        // True only if they share exactly one parent (XOR)
-        return (shareFather ^ shareMother);
-    }
-
-    // Spouse checking based on spouse_id field
-    public boolean isSpouse(int idA, int idB) {
-        Person a = getPersonById(idA);
-        if (a == null || a.getSpouseId() == null) return false;
-        return a.getSpouseId() == idB;
-    }
-}
-
+package edu.cn5005.relations;
+
+import edu.cn5005.persons.GenealogyStore;
+import edu.cn5005.persons.Person;
+
+import java.util.Arrays;
+import java.util.Map;
+
+// This class implements the code for Part D and E
+
+/*
+ The engine runs on a GenealogyStore: persons are dense indexes and every check below only
+ reads the store's int columns (father, mother, spouse), gender codes and its CSR children
+ index, so child and grandchild lookups cost time proportional to the answer. External ids
+ are translated to indexes once, at the start of each public method. A parent or spouse id
+ that is not in the file keeps a placeholder link of its own, so it is still compared like
+ an id (two persons with the same missing father are siblings).
+ */
+
+public class RelationEngine {
+    private final GenealogyStore store;
+
+    public RelationEngine(Map<Integer, Person> personsById,
+                          Map<String, Integer> idByName) {
+        this(GenealogyStore.of(personsById, idByName));
+    }
+
+    public RelationEngine(GenealogyStore store) {
+        this.store = store;
+    }
+
+    public GenealogyStore getStore() {
+        return store;
+    }
+
+    // Ids of the children of a person, ascending (empty for an unknown id)
+    public int[] getChildren(int id) {
+        int index = store.indexOf(id);
+        if (index < 0) {
+            return new int[0];
+        }
+        int start = store.childrenStart(index);
+        int[] ids = new int[store.childrenEnd(index) - start];
+        for (int c = 0; c < ids.length; c++) {
+            ids[c] = store.id(store.childAt(start + c));
+        }
+        return ids;
+    }
+
+    // Ids of the grandchildren of a person, ascending and without repeats
+    public int[] getGrandchildren(int id) {
+        int index = store.indexOf(id);
+        if (index < 0) {
+            return new int[0];
+        }
+        int total = 0;
+        for (int c = store.childrenStart(index); c < store.childrenEnd(index); c++) {
+            int child = store.childAt(c);
+            total += store.childrenEnd(child) - store.childrenStart(child);
+        }
+        int[] grandchildren = new int[total];
+        int next = 0;
+        for (int c = store.childrenStart(index); c < store.childrenEnd(index); c++) {
+            int child = store.childAt(c);
+            for (int g = store.childrenStart(child); g < store.childrenEnd(child); g++) {
+                grandchildren[next++] = store.childAt(g);
+            }
+        }
+
+        // A grandchild can be reached through two children (both its parents are children of id)
+        Arrays.sort(grandchildren);
+        int distinct = 0;
+        for (int i = 0; i < grandchildren.length; i++) {
+            if (i == 0 || grandchildren[i] != grandchildren[i - 1]) {
+                grandchildren[distinct++] = grandchildren[i];
+            }
+        }
+        int[] ids = new int[distinct];
+        for (int i = 0; i < distinct; i++) {
+            ids[i] = store.id(grandchildren[i]);
+        }
+        return ids;
+    }
+
+    // Helper Methods
+
+    // Retrieving the index of a person by name using the name dictionary
+    private int getIndexByName(String name) {
+        int index = store.indexOfName(name);
+        if (index < 0) {
+            System.err.println("Unknown name: " + name);
+        }
+        return index;
+    }
+
+    // Checking if link g is a grandparent of index (a parent of one of its parents)
+    private boolean hasGrandparent(int index, int g) {
+        int father = store.father(index);
+        int mother = store.mother(index);
+        return (father >= 0 && (store.father(father) == g || store.mother(father) == g))
+                || (mother >= 0 && (store.father(mother) == g || store.mother(mother) == g));
+    }
+
+    // D.1 – Father / Mother
+
+    public boolean isFather(int idA, int idB) {
+        int a = store.indexOf(idA);
+        int b = store.indexOf(idB);
+
+        // If either person is missing, return false
+        if (a < 0 || b < 0) {
+            System.err.println("isFather: unknown id " + idA + " or " + idB);
+            return false;
+        }
+
+        // Check gender before checking parent link
+        if (!store.isMale(a)) {
+            return false;
+        }
+
+        return store.father(b) == a;
+    }
+
+    public boolean isMother(int idA, int idB) {
+        int a = store.indexOf(idA);
+        int b = store.indexOf(idB);
+
+        if (a < 0 || b < 0) {
+            System.err.println("isMother: unknown id " + idA + " or " + idB);
+            return false;
+        }
+
+        if (!store.isFemale(a)) {
+            return false;
+        }
+
+        return store.mother(b) == a;
+    }
+
+    // D.2 – Child / Sibling
+
+    public boolean isChild(int idA, int idB) {
+        // A is child of B if B is father or mother of A
+        return isFather(idB, idA) || isMother(idB, idA);
+    }
+
+    public boolean isSibling(int idA, int idB) {
+        if (idA == idB) {
+            return false; // A person is not their own sibling
+        }
+
+        int a = store.indexOf(idA);
+        int b = store.indexOf(idB);
+
+        if (a < 0 || b < 0) {
+            System.err.println("isSibling: unknown id " + idA + " or " + idB);
+            return false;
+        }
+
+        // Checking if they share at least one parent
+        boolean shareFather = store.father(a) != GenealogyStore.NONE && store.father(a) == store.father(b);
+        boolean shareMother = store.mother(a) != GenealogyStore.NONE && store.mother(a) == store.mother(b);
+
+        return shareFather || shareMother;
+    }
+
+
+    // D.3 – Grandparent / Grandchild
+
+    public boolean isGrandparent(int idA, int idB) {
+        int a = store.indexOf(idA);
+        int b = store.indexOf(idB);
+
+        if (a < 0 || b < 0) {
+            System.err.println("isGrandparent: unknown id " + idA + " or " + idB);
+            return false;
+        }
+
+        // Checking if A is one of B's grandparents
+        return hasGrandparent(b, a);
+    }
+
+    public boolean isGrandchild(int idA, int idB) {
+        return isGrandparent(idB, idA);
+    }
+
+
+    // D.4 – First Cousins
+
+    public boolean isFirstCousin(int idA, int idB) {
+        if (idA == idB) {
+            return false;
+        }
+        if (isSibling(idA, idB)) {
+            return false;
+        }
+
+        int a = store.indexOf(idA);
+        int b = store.indexOf(idB);
+
+        if (a < 0 || b < 0) {
+            System.err.println("isFirstCousin: unknown id " + idA + " or " + idB);
+            return false;
+        }
+
+        // They are first cousins if they share at least one grandparent
+        for (int parent : new int[]{store.father(a), store.mother(a)}) {
+            if (parent >= 0) {
+                int grandfather = store.father(parent);
+                int grandmother = store.mother(parent);
+                if ((grandfather != GenealogyStore.NONE && hasGrandparent(b, grandfather))
+                        || (grandmother != GenealogyStore.NONE && hasGrandparent(b, grandmother))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // D.5 – relation(nameA, nameB)
+
+    public String relation(String nameA, String nameB) {
+        int a = getIndexByName(nameA);
+        int b = getIndexByName(nameB);
+
+        if (a < 0 || b < 0) {
+            return "Κάποιο από τα ονόματα δεν βρέθηκε στο οικογενειακό δέντρο.";
+        }
+
+        int idA = store.id(a);
+        int idB = store.id(b);
+
+        if (idA == idB) {
+            return nameA + " και " + nameB + " είναι το ίδιο άτομο.";
+        }
+
+        if (isFather(idA, idB)) {
+            return nameA + " είναι πατέρας του/της " + nameB + ".";
+        }
+        if (isMother(idA, idB)) {
+            return nameA + " είναι μητέρα του/της " + nameB + ".";
+        }
+        if (isChild(idA, idB)) {
+            return nameA + " είναι παιδί του/της " + nameB + ".";
+        }
+        if (isSibling(idA, idB)) {
+            return nameA + " και " + nameB + " είναι αδέλφια.";
+        }
+        if (isGrandparent(idA, idB)) {
+            return nameA + " είναι παππούς/γιαγιά του/της " + nameB + ".";
+        }
+        if (isGrandchild(idA, idB)) {
+            return nameA + " είναι εγγόνι του/της " + nameB + ".";
+        }
+        if (isFirstCousin(idA, idB)) {
+            return nameA + " και " + nameB + " είναι πρώτα ξαδέλφια.";
+        }
+        if (isHalfSibling(idA, idB)) {
+            return nameA + " και " + nameB + " είναι ετεροθαλή αδέλφια.";
+        }
+        if (isSpouse(idA, idB)) {
+            return nameA + " και " + nameB + " είναι σύζυγοι.";
+        }
+
+        return "Δεν υπάρχει άμεση σχέση μεταξύ " + nameA + " και " + nameB + " στο οικογενειακό αυτό δέντρο.";
+    }
+
+
+    // Part E
+
+    // Half-siblings: share exactly one parent
+    public boolean isHalfSibling(int idA, int idB) {
+        if (idA == idB) return false;
+        int a = store.indexOf(idA);
+        int b = store.indexOf(idB);
+        if (a < 0 || b < 0) return false;
+        boolean shareFather = store.father(a) != GenealogyStore.NONE && store.father(a) == store.father(b);
+        boolean shareMother = store.mother(a) != GenealogyStore.NONE && store.mother(a) == store.mother(b);
+
+        // True only if they share exactly one parent (XOR)
+        return (shareFather ^ shareMother);
+    }
+
+    // Spouse checking based on spouse_id field
+    public boolean isSpouse(int idA, int idB) {
+        int a = store.indexOf(idA);
+        if (a < 0 || store.spouse(a) == GenealogyStore.NONE) return false;
+        return store.linkedId(store.spouse(a)) == idB;
+    }
+}
+
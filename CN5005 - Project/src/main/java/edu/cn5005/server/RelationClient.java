@@ -0,0 +1,192 @@
+package edu.cn5005.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ Thin client of RelationServer: one connection, requests as field arrays, responses as the
+ raw response lines ("OK\t..." / "ERR\t...").
+
+ query() is one round trip. pipeline() writes all its requests from a second (virtual)
+ thread while the calling thread reads the responses, so a large batch never stalls with
+ both sides blocked on full socket buffers. forward() does the same for command lines typed
+ or piped into MainCLI client.
+ */
+public final class RelationClient implements AutoCloseable {
+
+    private final Socket socket;
+    private final BufferedReader in;
+    private final Writer out;
+
+    public RelationClient(int port) throws IOException {
+        this(InetAddress.getLoopbackAddress().getHostAddress(), port);
+    }
+
+    public RelationClient(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    // Sending one request and waiting for its response, e.g. query("isSibling", "3", "4")
+    public String query(String... fields) throws IOException {
+        out.write(format(fields));
+        out.flush();
+        return response();
+    }
+
+    // Sending every request before reading; the responses come back in request order
+    public List<String> pipeline(List<String[]> requests) throws IOException {
+        IOException[] failure = new IOException[1];
+        Thread writer = Thread.ofVirtual().name("relation-client-writer").start(() -> {
+            try {
+                for (String[] fields : requests) {
+                    out.write(format(fields));
+                }
+                out.flush();
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        });
+        List<String> responses = new ArrayList<>(requests.size());
+        try {
+            for (int i = 0; i < requests.size(); i++) {
+                responses.add(response());
+            }
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for responses", e);
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return responses;
+    }
+
+    /*
+     Sending every command line of requests (see split; blank lines are skipped) and printing
+     each answer to responses, "ERR: ..." for errors. The lines are pipelined: they are sent as
+     fast as requests delivers them, and answers are printed as they arrive. Ends after the
+     end of requests or a "quit" line, once every answer is printed.
+     */
+    public void forward(BufferedReader requests, PrintStream responses) throws IOException {
+        IOException[] failure = new IOException[1];
+        AtomicBoolean quitting = new AtomicBoolean();
+        Thread writer = Thread.ofVirtual().name("relation-client-writer").start(() -> {
+            try {
+                String line;
+                while ((line = requests.readLine()) != null) {
+                    String[] fields = split(line);
+                    if (fields.length == 1 && fields[0].equals("quit")) {
+                        break;
+                    }
+                    if (fields.length > 0) {
+                        out.write(format(fields));
+                    }
+                    if (!requests.ready()) {
+                        out.flush();
+                    }
+                }
+                quitting.set(true);
+                out.write("quit\n"); // the server answers everything sent so far, then closes
+                out.flush();
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        });
+        String line;
+        while ((line = in.readLine()) != null) {
+            responses.println(line.startsWith("OK\t") ? line.substring(3) : line.replaceFirst("\t", ": "));
+        }
+        if (!quitting.get()) {
+            // the writer may still be blocked reading requests (a terminal), so it is not waited for
+            throw new IOException("relation server closed the connection");
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while sending requests", e);
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    private String response() throws IOException {
+        String line = in.readLine();
+        if (line == null) {
+            throw new IOException("relation server closed the connection");
+        }
+        return line;
+    }
+
+    // One request line; fields must not contain tabs or line breaks
+    static String format(String... fields) {
+        StringBuilder line = new StringBuilder();
+        for (int f = 0; f < fields.length; f++) {
+            String field = fields[f];
+            if (field.indexOf('\t') >= 0 || field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0) {
+                throw new IllegalArgumentException("request fields cannot contain tabs or line breaks: " + field);
+            }
+            if (f > 0) {
+                line.append('\t');
+            }
+            line.append(field);
+        }
+        return line.append('\n').toString();
+    }
+
+    /*
+     Splitting a typed command line into fields: on tabs if it has any, otherwise on spaces,
+     with double quotes around a field that contains spaces:
+       relation "Ιωάννης Καποδίστριας" "Ελένη Καποδίστρια"
+     */
+    public static String[] split(String line) {
+        if (line.indexOf('\t') >= 0) {
+            return line.split("\t", -1);
+        }
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean inField = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                inField = true;
+            } else if (c == ' ' && !quoted) {
+                if (inField) {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                    inField = false;
+                }
+            } else {
+                field.append(c);
+                inField = true;
+            }
+        }
+        if (inField) {
+            fields.add(field.toString());
+        }
+        return fields.toArray(new String[0]);
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,228 @@
+package edu.cn5005.server;
+
+import edu.cn5005.persons.GenealogyStore;
+import edu.cn5005.relations.RelationEngine;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ Long-running relation server: the genealogy is loaded once and queries arrive over a local
+ TCP socket, so a lookup costs a round trip instead of a JVM start and a CSV load.
+
+ Protocol (UTF-8, one request per line, fields separated by tabs):
+   relation <nameA> <nameB>            the sentence RelationEngine.relation gives
+   isFather|isMother|isChild|isSibling|isGrandparent|isGrandchild|isFirstCousin|
+   isHalfSibling|isSpouse <idA> <idB>  true / false
+   children|grandchildren <id>         ids separated by spaces
+   ping                                pong
+   quit                                closes the connection
+ Every request gets exactly one response line, in request order: "OK\t<answer>" or
+ "ERR\t<message>" (unknown command, bad number, unknown id or name). The second id of
+ isSpouse may be missing from the file, since a spouse link can name such an id.
+
+ Requests can be pipelined: a client may send many lines without waiting. Responses are
+ buffered and only flushed when no further request is already waiting, so a batch of
+ pipelined requests comes back in a few packets.
+
+ The server listens on the loopback address only. Every connection is served by its own
+ virtual thread (the acceptor is one too), so thousands of idle clients cost little. The
+ store is read-only, so connections share one RelationEngine without locking.
+ */
+public final class RelationServer implements AutoCloseable {
+
+    public static final int DEFAULT_PORT = 5005;
+
+    private static final int OUTPUT_BUFFER_CHARS = 1 << 16;
+
+    private final RelationEngine engine;
+    private final GenealogyStore store;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private ServerSocket serverSocket;
+    private Thread acceptor;
+
+    public RelationServer(RelationEngine engine) {
+        this.engine = engine;
+        this.store = engine.getStore();
+    }
+
+    // Listening on port (0 picks a free one); returns the port
+    public synchronized int start(int port) throws IOException {
+        if (serverSocket != null) {
+            throw new IllegalStateException("server already started");
+        }
+        serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        acceptor = Thread.ofVirtual().name("relation-server").start(this::acceptLoop);
+        return serverSocket.getLocalPort();
+    }
+
+    // Waiting until the server is closed
+    public void join() throws InterruptedException {
+        acceptor.join();
+    }
+
+    // Stopping: no new connections, and the open ones are closed
+    @Override
+    public synchronized void close() throws IOException {
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        for (Socket socket : connections) {
+            socket.close();
+        }
+    }
+
+    private void acceptLoop() {
+        Thread.Builder connectionThreads = Thread.ofVirtual().name("relation-connection-", 0);
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.add(socket);
+                connectionThreads.start(() -> serve(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.err.println("relation server: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8),
+                     OUTPUT_BUFFER_CHARS)) {
+            socket.setTcpNoDelay(true);
+            String line;
+            while ((line = in.readLine()) != null && !line.equals("quit")) {
+                out.write(answer(line));
+                out.write('\n');
+                if (!in.ready()) { // nothing pipelined behind this request
+                    out.flush();
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            // the client went away (or the server was closed); nothing to answer any more
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    // The response line (without the newline) to one request line
+    String answer(String line) {
+        String[] fields = line.split("\t", -1);
+        String command = fields[0];
+        try {
+            switch (command) {
+                case "ping":
+                    return ok("pong");
+                case "relation":
+                    arguments(fields, 2);
+                    for (int f = 1; f <= 2; f++) {
+                        if (store.indexOfName(fields[f]) < 0) {
+                            return error("unknown name: " + fields[f]);
+                        }
+                    }
+                    return ok(engine.relation(fields[1], fields[2]));
+                case "children":
+                case "grandchildren":
+                    arguments(fields, 1);
+                    int id = person(fields[1]);
+                    int[] ids = command.equals("children") ? engine.getChildren(id) : engine.getGrandchildren(id);
+                    StringJoiner joined = new StringJoiner(" ");
+                    for (int child : ids) {
+                        joined.add(Integer.toString(child));
+                    }
+                    return ok(joined.toString());
+                default:
+                    return pairQuery(command, fields);
+            }
+        } catch (IllegalArgumentException e) {
+            return error(e.getMessage());
+        }
+    }
+
+    private String pairQuery(String command, String[] fields) {
+        arguments(fields, 2);
+        int a = person(fields[1]);
+        // A spouse id that is not in the file can still be linked to (a dangling id), so for
+        // isSpouse only the first id has to exist and the engine decides about the second
+        int b = command.equals("isSpouse") ? id(fields[2]) : person(fields[2]);
+        boolean result;
+        switch (command) {
+            case "isFather":
+                result = engine.isFather(a, b);
+                break;
+            case "isMother":
+                result = engine.isMother(a, b);
+                break;
+            case "isChild":
+                result = engine.isChild(a, b);
+                break;
+            case "isSibling":
+                result = engine.isSibling(a, b);
+                break;
+            case "isGrandparent":
+                result = engine.isGrandparent(a, b);
+                break;
+            case "isGrandchild":
+                result = engine.isGrandchild(a, b);
+                break;
+            case "isFirstCousin":
+                result = engine.isFirstCousin(a, b);
+                break;
+            case "isHalfSibling":
+                result = engine.isHalfSibling(a, b);
+                break;
+            case "isSpouse":
+                result = engine.isSpouse(a, b);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown command: " + command);
+        }
+        return ok(Boolean.toString(result));
+    }
+
+    private static void arguments(String[] fields, int count) {
+        if (fields.length != count + 1) {
+            throw new IllegalArgumentException(fields[0] + " takes " + count + " argument(s), got " + (fields.length - 1));
+        }
+    }
+
+    // A person id that exists in the store (the engine would print to stderr for unknown ids)
+    private int person(String field) {
+        int id = id(field);
+        if (store.indexOf(id) < 0) {
+            throw new IllegalArgumentException("unknown id: " + id);
+        }
+        return id;
+    }
+
+    private static int id(String field) {
+        try {
+            return Integer.parseInt(field.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not an id: " + field);
+        }
+    }
+
+    private static String ok(String answer) {
+        return "OK\t" + answer;
+    }
+
+    private static String error(String message) {
+        return "ERR\t" + message;
+    }
+}
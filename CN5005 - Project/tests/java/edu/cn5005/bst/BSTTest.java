@@ -1,128 +1,976 @@
-package edu.cn5005.bst;
-
-import static org.junit.jupiter.api.Assertions.*;
-import org.junit.jupiter.api.BeforeEach;
-import org.junit.jupiter.api.Test;
-import java.util.List;
-
-/* Unit tests for BST and AVL implementations.
-The tests verify:
-- Correct insertion and handling of duplicates using count
-- Correct deletion behavior
-- Correct preorder, inorder, and postorder traversals
-- AVL balancing and changeKey functionality
- */
-public class BSTTest {
-
-    private BST bst;
-    private AVL avl;
-
-    // Initializes a fresh BST and AVL tree before each test to ensure test independence.
-    @BeforeEach
-    public void setup() {
-        bst = new BST();
-        avl = new AVL();
-    }
-
-     // Tests insertion into BST and verifies that duplicate keys increase the count,
-     // instead of creating new nodes.
-    @Test
-    public void testInsertAndCountBST() {
-        bst.insert(10);
-        bst.insert(5);
-        bst.insert(15);
-        bst.insert(10); // duplicate key
-
-        List<String> inorder = bst.inorder();
-        assertEquals("5:1", inorder.get(0));
-        assertEquals("10:2", inorder.get(1)); // count increased
-        assertEquals("15:1", inorder.get(2));
-    }
-
-    /* Tests BST deletion policy:
-     - If count > 1, delete reduces the count
-     - Node is removed only when count reaches zero
-     */
-    @Test
-    public void testDeleteBST() {
-        bst.insert(20);
-        bst.insert(20); // duplicate
-        bst.insert(10);
-        bst.insert(30);
-
-        bst.delete(20);
-        List<String> inorder = bst.inorder();
-        assertTrue(inorder.contains("20:1"));
-
-        bst.delete(20); // node should now be removed
-        inorder = bst.inorder();
-        assertFalse(inorder.contains("20:1"));
-    }
-
-    /* Tests correctness of BST traversals.
-     - preorder: root -> left -> right
-     - inorder: ascending order
-     - postorder: left -> right -> root
-     */
-    @Test
-    public void testTraversalsBST() {
-        bst.insert(10);
-        bst.insert(5);
-        bst.insert(15);
-        bst.insert(12);
-
-        List<String> preorder = bst.preorder();
-        List<String> inorder = bst.inorder();
-        List<String> postorder = bst.postorder();
-
-        assertEquals("10:1", preorder.get(0));  // root
-        assertEquals("5:1", inorder.get(0));    // smallest key
-        assertEquals("12:1", postorder.get(1)); // internal node
-    }
-
-    // Tests AVL insertions and verifies that the tree remains balanced and inorder traversal is sorted.
-    @Test
-    public void testAVLInsertAndBalance() {
-        int[] keys = {10, 20, 30, 40, 50, 25};
-        for (int key : keys) avl.insert(key);
-
-        List<String> inorder = avl.inorder();
-        assertEquals(6, inorder.size());
-        assertEquals("10:1", inorder.get(0));
-        assertEquals("50:1", inorder.get(5));
-    }
-
-    /* Tests changeKey in AVL.
-     Verifies that:
-     - oldKey is removed
-     - newKey is inserted with the same count
-     */
-    @Test
-    public void testChangeKeyAVL() {
-        avl.insert(10);
-        avl.insert(20);
-        avl.insert(20); // duplicate
-        boolean changed = avl.changeKey(20, 25);
-
-        assertTrue(changed);
-        List<String> inorder = avl.inorder();
-        assertTrue(inorder.contains("25:2"));
-        assertFalse(inorder.contains("20:2"));
-    }
-
-    /* Tests AVL deletion when duplicates exist.
-     The node should be removed only after count reaches zero.
-     */
-    @Test
-    public void testDeleteAVL() {
-        avl.insert(10);
-        avl.insert(20);
-        avl.insert(20); // duplicate
-        avl.delete(20); // count reduced
-        avl.delete(20); // node removed
-
-        List<String> inorder = avl.inorder();
-        assertFalse(inorder.contains("20:1"));
-        assertEquals(1, inorder.size()); // only key 10 remains
-    }
-}
+package edu.cn5005.bst;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Spliterator;
+
+/* Unit tests for BST and AVL implementations.
+The tests verify:
+- Correct insertion and handling of duplicates using count
+- Correct deletion behavior
+- Correct preorder, inorder, and postorder traversals
+- AVL balancing and changeKey functionality
+- RedBlackTree, WAVLTree and Treap: same results as BST, balancing rules, rotation counts
+ */
+public class BSTTest {
+
+    private BST bst;
+    private AVL avl;
+
+    // Initializes a fresh BST and AVL tree before each test to ensure test independence.
+    @BeforeEach
+    public void setup() {
+        bst = new BST();
+        avl = new AVL();
+    }
+
+     // Tests insertion into BST and verifies that duplicate keys increase the count,
+     // instead of creating new nodes.
+    @Test
+    public void testInsertAndCountBST() {
+        bst.insert(10);
+        bst.insert(5);
+        bst.insert(15);
+        bst.insert(10); // duplicate key
+
+        List<String> inorder = bst.inorder();
+        assertEquals("5:1", inorder.get(0));
+        assertEquals("10:2", inorder.get(1)); // count increased
+        assertEquals("15:1", inorder.get(2));
+    }
+
+    /* Tests BST deletion policy:
+     - If count > 1, delete reduces the count
+     - Node is removed only when count reaches zero
+     */
+    @Test
+    public void testDeleteBST() {
+        bst.insert(20);
+        bst.insert(20); // duplicate
+        bst.insert(10);
+        bst.insert(30);
+
+        bst.delete(20);
+        List<String> inorder = bst.inorder();
+        assertTrue(inorder.contains("20:1"));
+
+        bst.delete(20); // node should now be removed
+        inorder = bst.inorder();
+        assertFalse(inorder.contains("20:1"));
+    }
+
+    /* Tests correctness of BST traversals.
+     - preorder: root -> left -> right
+     - inorder: ascending order
+     - postorder: left -> right -> root
+     */
+    @Test
+    public void testTraversalsBST() {
+        bst.insert(10);
+        bst.insert(5);
+        bst.insert(15);
+        bst.insert(12);
+
+        List<String> preorder = bst.preorder();
+        List<String> inorder = bst.inorder();
+        List<String> postorder = bst.postorder();
+
+        assertEquals("10:1", preorder.get(0));  // root
+        assertEquals("5:1", inorder.get(0));    // smallest key
+        assertEquals("12:1", postorder.get(1)); // internal node
+    }
+
+    // Tests AVL insertions and verifies that the tree remains balanced and inorder traversal is sorted.
+    @Test
+    public void testAVLInsertAndBalance() {
+        int[] keys = {10, 20, 30, 40, 50, 25};
+        for (int key : keys) avl.insert(key);
+
+        List<String> inorder = avl.inorder();
+        assertEquals(6, inorder.size());
+        assertEquals("10:1", inorder.get(0));
+        assertEquals("50:1", inorder.get(5));
+    }
+
+    /* Tests changeKey in AVL.
+     Verifies that:
+     - oldKey is removed
+     - newKey is inserted with the same count
+     */
+    @Test
+    public void testChangeKeyAVL() {
+        avl.insert(10);
+        avl.insert(20);
+        avl.insert(20); // duplicate
+        boolean changed = avl.changeKey(20, 25);
+
+        assertTrue(changed);
+        List<String> inorder = avl.inorder();
+        assertTrue(inorder.contains("25:2"));
+        assertFalse(inorder.contains("20:2"));
+    }
+
+    /* Tests AVL deletion when duplicates exist.
+     The node should be removed only after count reaches zero.
+     */
+    @Test
+    public void testDeleteAVL() {
+        avl.insert(10);
+        avl.insert(20);
+        avl.insert(20); // duplicate
+        avl.delete(20); // count reduced
+        avl.delete(20); // node removed
+
+        List<String> inorder = avl.inorder();
+        assertFalse(inorder.contains("20:1"));
+        assertEquals(1, inorder.size()); // only key 10 remains
+    }
+
+    /* Tests BST deletion of a node with two children whose inorder successor has duplicates.
+     The successor's whole count must move into the replaced node.
+     */
+    @Test
+    public void testDeleteTwoChildrenDuplicateSuccessorBST() {
+        bst.insert(20);
+        bst.insert(10);
+        bst.insert(30);
+        bst.insert(25);
+        bst.insert(25); // successor of 20 with count 2
+
+        bst.delete(20);
+        assertEquals(List.of("10:1", "25:2", "30:1"), bst.inorder());
+    }
+
+    /* Tests that sorted keys (the worst case for a plain BST) are inserted and deleted
+     iteratively, so a degenerate tree no longer overflows the call stack.
+     */
+    @Test
+    public void testSortedKeysDoNotOverflowStack() {
+        int n = 20_000;
+        for (int key = 0; key < n; key++) bst.insert(key);
+        for (int key = 0; key < n; key += 2) bst.delete(key);
+        bst.delete(n - 1);
+        bst.insert(n - 1);
+
+        for (int key = 0; key < 1_000_000; key++) avl.insert(key);
+        for (int key = 0; key < 1_000_000; key += 2) avl.delete(key);
+
+        List<String> inorder = avl.inorder();
+        assertEquals(500_000, inorder.size());
+        assertEquals("1:1", inorder.get(0));
+        assertEquals("999999:1", inorder.get(inorder.size() - 1));
+    }
+
+    /* Tests the array-backed AVL against the Node-based AVL.
+     Both must hold the same keys and counts after the same inserts, deletes and changeKey calls,
+     and freed slots must be reused instead of growing the arrays.
+     */
+    @Test
+    public void testArrayAVLMatchesAVL() {
+        ArrayAVL packed = new ArrayAVL();
+        int[] keys = {50, 20, 70, 20, 10, 30, 60, 80, 30, 30, 90, 5};
+        for (int key : keys) {
+            avl.insert(key);
+            packed.insert(key);
+        }
+        avl.delete(70);
+        packed.delete(70);
+        avl.delete(30);
+        packed.delete(30);
+        assertEquals(avl.changeKey(20, 65), packed.changeKey(20, 65));
+        assertEquals(avl.changeKey(1234, 1), packed.changeKey(1234, 1));
+
+        assertEquals(avl.inorder(), packed.inorder());
+        assertEquals(2, packed.count(65));
+        assertEquals(8, packed.nodeCount());
+
+        long before = packed.memoryBytes();
+        packed.delete(5);
+        packed.insert(7); // reuses the freed slot
+        assertEquals(before, packed.memoryBytes());
+        assertEquals(8, packed.preorder().size());
+    }
+
+    /* Tests bulk construction from an unsorted array with duplicates.
+     Duplicates are collapsed into count and the middle key becomes the root.
+     */
+    @Test
+    public void testFromKeysBST() {
+        BST built = BST.fromKeys(new int[]{30, 10, 20, 30, 50, 40, 10, 30});
+
+        assertEquals(List.of("10:2", "20:1", "30:3", "40:1", "50:1"), built.inorder());
+        assertEquals("30:3", built.preorder().get(0));
+    }
+
+    /* Tests that a bulk-built AVL tree keeps working as an AVL tree:
+     later inserts, deletes and changeKey behave as on an incrementally built tree.
+     */
+    @Test
+    public void testFromKeysAVLThenUpdate() {
+        int[] keys = {5, 3, 9, 1, 7, 3, 11, 13, 15};
+        AVL built = AVL.fromKeys(Arrays.stream(keys).parallel());
+        for (int key : keys) avl.insert(key);
+        assertEquals(avl.inorder(), built.inorder());
+
+        for (int key = 16; key < 40; key++) {
+            built.insert(key);
+            avl.insert(key);
+        }
+        built.delete(3);
+        avl.delete(3);
+        built.changeKey(9, 2);
+        avl.changeKey(9, 2);
+        assertEquals(avl.inorder(), built.inorder());
+
+        assertThrows(IllegalArgumentException.class, () -> AVL.fromSortedKeys(new int[]{1, 3, 2}));
+    }
+
+    // Tests the LL example from the AVL class comment: 9220, 9196, 6789 rotate right around 9220.
+    @Test
+    public void testAVLRotationExample() {
+        avl.insert(9220);
+        avl.insert(9196);
+        avl.insert(6789);
+
+        assertEquals(List.of("9196:1", "6789:1", "9220:1"), avl.preorder());
+    }
+
+    /* Tests the multiset API on AVL:
+     - add/remove change the count by n in one call
+     - remove never removes more than the key holds
+     - size() is the sum of all counts
+     */
+    @Test
+    public void testMultisetAddRemoveAVL() {
+        avl.add(10, 5);
+        avl.add(20, 3);
+        avl.insert(20);
+        assertEquals(9, avl.size());
+        assertEquals(4, avl.count(20));
+
+        assertEquals(2, avl.remove(10, 2));
+        assertEquals(3, avl.remove(10, 7)); // only 3 left
+        assertEquals(0, avl.remove(99, 1)); // not in the tree
+        assertEquals(0, avl.count(10));
+        assertEquals(4, avl.size());
+        assertEquals(List.of("20:4"), avl.inorder());
+    }
+
+    // Tests that changeKey moves a heavily duplicated key with one removal and one insertion.
+    @Test
+    public void testChangeKeyManyDuplicatesAVL() {
+        avl.add(7, 1_000_000);
+        avl.insert(3);
+        avl.insert(9);
+
+        assertTrue(avl.changeKey(7, 42));
+        assertEquals(1_000_000, avl.count(42));
+        assertEquals(0, avl.count(7));
+        assertEquals(1_000_002, avl.size());
+        assertEquals(List.of("3:1", "9:1", "42:1000000"), avl.inorder());
+    }
+
+    /* Tests the streaming traversals:
+     - the visitor sees the same (key, count) pairs as the List<String> methods
+     - the cursor walks the keys in ascending order
+     - keys() feeds IntStream pipelines, sequential or parallel
+     */
+    @Test
+    public void testStreamingTraversals() {
+        int[] keys = {40, 20, 60, 10, 30, 50, 70, 30};
+        for (int key : keys) avl.insert(key);
+
+        StringBuilder pre = new StringBuilder();
+        avl.forEachPreorder((key, count) -> pre.append(key).append(':').append(count).append(' '));
+        assertEquals(String.join(" ", avl.preorder()) + " ", pre.toString());
+
+        KeyCursor cursor = avl.cursor();
+        assertTrue(cursor.next());
+        assertEquals(10, cursor.key());
+        assertTrue(cursor.next());
+        assertTrue(cursor.next());
+        assertEquals(30, cursor.key());
+        assertEquals(2, cursor.count());
+
+        assertArrayEquals(new int[]{10, 20, 30, 40, 50, 60, 70}, avl.keys().toArray());
+        assertEquals(280, avl.keys(true).sum());
+    }
+
+    // Tests that both halves of a key spliterator keep splitting, down to small pieces
+    @Test
+    public void testKeySpliteratorSplitsRecursively() {
+        AVL avl = new AVL();
+        Random random = new Random(5);
+        for (int i = 0; i < 20_000; i++) avl.insert(random.nextInt(5_000));
+        int[] expected = avl.keys().toArray();
+
+        Spliterator.OfInt suffix = avl.keySpliterator();
+        Spliterator.OfInt prefix = suffix.trySplit();
+        assertNotNull(prefix);
+        assertNotNull(prefix.trySplit());
+        assertNotNull(suffix.trySplit());
+
+        List<Spliterator.OfInt> pieces = new ArrayList<>();
+        split(avl.keySpliterator(), 12, pieces);
+        List<Integer> keys = new ArrayList<>();
+        int largest = 0;
+        for (Spliterator.OfInt piece : pieces) {
+            int before = keys.size();
+            piece.forEachRemaining((int key) -> keys.add(key));
+            largest = Math.max(largest, keys.size() - before);
+        }
+        assertArrayEquals(expected, keys.stream().mapToInt(Integer::intValue).toArray());
+        assertTrue(largest <= expected.length / 32, "largest piece " + largest);
+        assertEquals(Arrays.stream(expected).sum(), avl.keys(true).sum());
+    }
+
+    // Splitting depth times where possible, collecting the pieces in key order
+    private static void split(Spliterator.OfInt spliterator, int depth, List<Spliterator.OfInt> pieces) {
+        Spliterator.OfInt prefix = depth == 0 ? null : spliterator.trySplit();
+        if (prefix != null) {
+            split(prefix, depth - 1, pieces);
+            split(spliterator, depth - 1, pieces);
+        } else {
+            pieces.add(spliterator);
+        }
+    }
+
+    // Tests that traversals of a degenerate (list-shaped) BST do not recurse.
+    @Test
+    public void testTraversalsOfDegenerateBST() {
+        int n = 20_000;
+        for (int key = 0; key < n; key++) bst.insert(key);
+
+        assertEquals(n, bst.inorder().size());
+        assertEquals("0:1", bst.preorder().get(0));
+        assertEquals((n - 1) + ":1", bst.postorder().get(0));
+    }
+
+    /* Tests the order statistics of AVL (duplicates counted through count):
+     rank, select, countRange and percentiles must stay correct after rotations,
+     deletes and changeKey.
+     */
+    @Test
+    public void testOrderStatisticsAVL() {
+        for (int key = 1; key <= 10; key++) avl.insert(key * 10); // 10, 20, ..., 100 (forces rotations)
+        avl.add(50, 4); // 50 now has count 5
+
+        assertEquals(4, avl.rank(50));           // 10, 20, 30, 40
+        assertEquals(9, avl.rankInclusive(50));
+        assertEquals(10, avl.select(0));
+        assertEquals(50, avl.select(4));
+        assertEquals(50, avl.select(8));
+        assertEquals(60, avl.select(9));
+        assertEquals(7, avl.countRange(35, 65)); // 40, 50 x5, 60
+        assertEquals(0, avl.countRange(65, 35));
+
+        avl.delete(10);
+        avl.changeKey(50, 5);
+        assertEquals(5, avl.select(0));
+        assertEquals(5, avl.rank(20));
+        assertEquals(30, avl.median());  // 7th of 13: 5 x5, 20, 30, 40, 60, ..., 100
+        assertEquals(100, avl.percentile(100));
+        assertThrows(IndexOutOfBoundsException.class, () -> avl.select(avl.size()));
+    }
+
+    // Tests floor/ceiling/higher/lower/first/last/pollFirst on BST, including missing keys.
+    @Test
+    public void testNavigationBST() {
+        int[] keys = {50, 30, 70, 20, 40, 60, 80, 20};
+        for (int key : keys) bst.insert(key);
+
+        assertTrue(bst.contains(40));
+        assertFalse(bst.contains(45));
+        assertEquals(40, bst.floor(45));
+        assertEquals(50, bst.ceiling(45));
+        assertEquals(60, bst.higher(50));
+        assertEquals(40, bst.lower(50));
+        assertNull(bst.floor(10));
+        assertNull(bst.higher(80));
+        assertEquals(20, bst.first());
+        assertEquals(80, bst.last());
+
+        assertEquals(20, bst.pollFirst()); // 20 had count 2
+        assertEquals(20, bst.pollFirst());
+        assertEquals(30, bst.first());
+        assertThrows(NoSuchElementException.class, () -> new BST().first());
+    }
+
+    /* Tests range cursors on AVL: bounds are inclusive, and a client can page through
+     the keys by resuming after the last key of the previous page.
+     */
+    @Test
+    public void testRangePagingAVL() {
+        for (int key = 1; key <= 100; key++) avl.insert(key * 2); // even keys 2..200
+
+        KeyCursor range = avl.range(15, 25);
+        StringBuilder keys = new StringBuilder();
+        while (range.next()) keys.append(range.key()).append(' ');
+        assertEquals("16 18 20 22 24 ", keys.toString());
+
+        KeyCursor pages = avl.range(Integer.MIN_VALUE, 200);
+        int pageCount = 0;
+        int seen = 0;
+        while (true) {
+            int last = 0;
+            int onPage = 0;
+            while (onPage < 30 && pages.next()) {
+                last = pages.key();
+                onPage++;
+            }
+            if (onPage == 0) break;
+            seen += onPage;
+            pageCount++;
+            pages.seekAfter(last); // resuming in O(log n)
+        }
+        assertEquals(100, seen);
+        assertEquals(4, pageCount);
+    }
+
+    /* Tests the persistent AVL: every update returns a new version and older versions
+     keep their contents, so a snapshot taken from VersionedAVL stays consistent while
+     the facade keeps changing. A saved version loads back as an AVL of the same shape.
+     */
+    @Test
+    public void testPersistentAVLSnapshots(@TempDir Path dir) throws IOException {
+        VersionedAVL versioned = new VersionedAVL();
+        for (int key = 1; key <= 7; key++) versioned.insert(key);
+        versioned.insert(4);
+
+        PersistentAVL snapshot = versioned.snapshot();
+        versioned.delete(4);
+        versioned.delete(1);
+        assertTrue(versioned.changeKey(7, 70));
+        assertFalse(versioned.changeKey(99, 1));
+
+        assertEquals(List.of("1:1", "2:1", "3:1", "4:2", "5:1", "6:1", "7:1"), snapshot.inorder());
+        assertEquals(8, snapshot.size());
+        assertEquals(List.of("2:1", "3:1", "4:1", "5:1", "6:1", "70:1"), versioned.inorder());
+        assertEquals(6, versioned.size());
+
+        PersistentAVL empty = PersistentAVL.empty();
+        assertSame(empty, empty.delete(5)); // nothing to remove: same version
+        assertEquals(3, snapshot.height());
+
+        snapshot.save(dir.resolve("version.snap"));
+        AVL loaded = AVL.load(dir.resolve("version.snap"));
+        assertEquals(snapshot.preorder(), loaded.preorder());
+        assertEquals(8, loaded.size());
+        assertEquals(3, loaded.rank(4));
+    }
+
+    /* Tests the join-based set operations: counts are combined as multisets
+     (union adds, intersection keeps the smaller count, difference subtracts) and the
+     results are valid AVL trees with the right size.
+     */
+    @Test
+    public void testSetOperationsAVL() {
+        AVL a = AVL.fromKeys(new int[]{1, 2, 2, 3, 5, 8});
+        AVL b = AVL.fromKeys(new int[]{2, 3, 3, 4, 8});
+        AVL union = AVLSetOps.union(a, b);
+        assertEquals(List.of("1:1", "2:3", "3:3", "4:1", "5:1", "8:2"), union.inorder());
+        assertEquals(11, union.size());
+        assertTrue(a.isEmpty() && b.isEmpty()); // arguments are consumed
+
+        AVL inter = AVLSetOps.intersection(AVL.fromKeys(new int[]{1, 2, 2, 3, 5, 8}), AVL.fromKeys(new int[]{2, 3, 3, 4, 8}));
+        assertEquals(List.of("2:1", "3:1", "8:1"), inter.inorder());
+        assertEquals(3, inter.size());
+
+        AVL diff = AVLSetOps.difference(AVL.fromKeys(new int[]{1, 2, 2, 3, 5, 8}), AVL.fromKeys(new int[]{2, 3, 3, 4, 8}));
+        assertEquals(List.of("1:1", "2:1", "5:1"), diff.inorder());
+        assertEquals(3, diff.size());
+
+        // Large enough to take the fork/join path
+        int n = 50_000;
+        int[] evens = new int[n];
+        int[] threes = new int[n];
+        for (int i = 0; i < n; i++) {
+            evens[i] = 2 * i;
+            threes[i] = 3 * i;
+        }
+        AVL big = AVLSetOps.intersection(AVL.fromKeys(evens), AVL.fromKeys(threes));
+        assertEquals((2 * n - 1) / 6 + 1, big.size()); // multiples of 6 below 2n
+        assertEquals(6, big.select(1));
+        assertTrue(Math.abs(avlBalance(big.root)) <= 1);
+    }
+
+    // Tests split and join: splitting around a key and joining the halves back restores the tree.
+    @Test
+    public void testSplitJoinAVL() {
+        AVL tree = AVL.fromKeys(new int[]{10, 20, 30, 30, 40, 50, 60, 70});
+        AVLSetOps.Split s = AVLSetOps.split(tree, 30);
+        assertEquals(2, s.count);
+        assertEquals(List.of("10:1", "20:1"), s.less.inorder());
+        assertEquals(List.of("40:1", "50:1", "60:1", "70:1"), s.greater.inorder());
+        assertTrue(tree.isEmpty());
+
+        AVL joined = AVLSetOps.join(s.less, 30, s.count, s.greater);
+        assertEquals(List.of("10:1", "20:1", "30:2", "40:1", "50:1", "60:1", "70:1"), joined.inorder());
+        assertEquals(8, joined.size());
+        assertEquals(4, joined.rank(40));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> AVLSetOps.join(AVL.fromKeys(new int[]{5}), 3, new AVL()));
+        assertThrows(IllegalArgumentException.class,
+                () -> AVLSetOps.join(new AVL(), 3, 0, new AVL()));
+    }
+
+    /* Tests binary snapshots: save/load restores the exact shape (same preorder) in both
+     formats, AVL.load rejects a snapshot of a plain BST, and MappedTreeView answers
+     queries directly from the saved file.
+     */
+    @Test
+    public void testSnapshotSaveLoad(@TempDir Path dir) throws IOException {
+        int[] keys = {50, 30, 70, 20, 40, 60, 80, 20, 65, -5};
+        for (int key : keys) {
+            avl.insert(key);
+            bst.insert(key);
+        }
+        avl.delete(70);
+
+        Path fixed = dir.resolve("avl.snap");
+        Path compact = dir.resolve("avl.snapc");
+        avl.save(fixed);
+        avl.save(compact, true);
+        for (Path file : List.of(fixed, compact)) {
+            AVL loaded = AVL.load(file);
+            assertEquals(avl.preorder(), loaded.preorder());
+            assertEquals(avl.size(), loaded.size());
+            assertEquals(avl.rank(60), loaded.rank(60)); // weights are rebuilt too
+        }
+
+        Path bstFile = dir.resolve("bst.snap");
+        bst.save(bstFile);
+        assertEquals(bst.preorder(), BST.load(bstFile).preorder());
+        assertThrows(IOException.class, () -> AVL.load(bstFile));
+
+        MappedTreeView view = MappedTreeView.open(fixed);
+        assertEquals(2, view.count(20));
+        assertEquals(0, view.count(70));
+        assertEquals(65, view.floor(69));
+        assertEquals(80, view.ceiling(66));
+        assertNull(view.floor(-6));
+        assertEquals(avl.size(), view.size());
+        assertThrows(IOException.class, () -> MappedTreeView.open(compact));
+    }
+
+    /* Tests DurableAVL recovery: a second open of the same directory (as after a crash,
+     the first instance is never closed) replays the log, drops a torn record at its end,
+     and compaction replaces the logs with a snapshot without changing the contents.
+     */
+    @Test
+    public void testDurableAVLRecovery(@TempDir Path dir) throws IOException {
+        DurableAVL first = DurableAVL.open(dir, DurableAVL.SyncMode.GROUP, 100, DurableAVL.DEFAULT_COMPACT_BYTES);
+        for (int key : new int[]{50, 30, 70, 20, 40, 20}) first.insert(key);
+        first.delete(40);
+        assertTrue(first.changeKey(70, 75));
+        assertEquals(2, first.remove(20, 5));
+
+        DurableAVL second = DurableAVL.open(dir);
+        assertEquals(List.of("30:1", "50:1", "75:1"), second.inorder());
+        second.add(10, 3);
+
+        // A crash in the middle of a record leaves a few garbage bytes at the end of the log
+        Path log = dir.resolve("wal-1.log");
+        Files.write(log, new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+        DurableAVL third = DurableAVL.open(dir);
+        assertEquals(List.of("10:3", "30:1", "50:1", "75:1"), third.inorder());
+
+        third.compact();
+        third.insert(30);
+        third.close();
+        assertTrue(Files.exists(dir.resolve("snapshot-3.snap")));
+        assertFalse(Files.exists(log));
+
+        DurableAVL reopened = DurableAVL.open(dir);
+        assertEquals(List.of("10:3", "30:2", "50:1", "75:1"), reopened.inorder());
+        assertEquals(7, reopened.size());
+        reopened.close();
+        second.close();
+        first.close();
+    }
+
+    /* Tests background compaction: with a tiny compactBytes every batch starts a new log
+     generation, a failed compaction is reported by close() without losing anything, the
+     logs written around the rotations replay to the same contents, and the next open
+     deletes the temporary snapshots that compactions left behind.
+     */
+    @Test
+    public void testDurableAVLBackgroundCompaction(@TempDir Path dir) throws IOException {
+        DurableAVL tree = DurableAVL.open(dir, DurableAVL.SyncMode.GROUP, 0, 1);
+        // snapshot-1.tmp cannot be written while a non-empty directory has its name
+        Files.createDirectories(dir.resolve("snapshot-1.tmp").resolve("blocked"));
+        for (int key = 0; key < 200; key++) tree.insert(key % 50);
+        assertEquals(200, tree.size());
+        IOException e = assertThrows(IOException.class, tree::close);
+        assertTrue(e.getMessage().contains("compaction"));
+
+        // As after a crash in the middle of compactions: half-written snapshots stay behind
+        Files.delete(dir.resolve("snapshot-1.tmp").resolve("blocked"));
+        Files.write(dir.resolve("snapshot-9.tmp"), new byte[]{1, 2, 3});
+        DurableAVL reopened = DurableAVL.open(dir, DurableAVL.SyncMode.GROUP, 0, 1);
+        assertFalse(Files.exists(dir.resolve("snapshot-1.tmp")));
+        assertFalse(Files.exists(dir.resolve("snapshot-9.tmp")));
+        assertEquals(200, reopened.size());
+        assertEquals(4, reopened.count(7));
+        assertEquals(2, reopened.remove(7, 2));
+        reopened.compact();
+        reopened.close();
+
+        DurableAVL last = DurableAVL.open(dir);
+        assertEquals(198, last.size());
+        assertEquals(2, last.count(7));
+        assertEquals(20, last.rank(5));
+        last.close();
+    }
+
+    /* Tests the metrics: sorted inserts into an AVL only need RR rotations, a plain BST
+     built from sorted keys degenerates (its height gap grows with n), allocations and
+     frees are counted, and the depth histogram records how deep each search went.
+     */
+    @Test
+    public void testTreeMetrics() {
+        TreeMetrics avlMetrics = avl.enableMetrics();
+        TreeMetrics bstMetrics = bst.enableMetrics();
+        for (int key = 1; key <= 127; key++) {
+            avl.insert(key);
+            bst.insert(key);
+        }
+        avl.delete(64);
+        assertTrue(avl.contains(1));
+
+        TreeMetrics.Snapshot snapshot = avlMetrics.snapshot();
+        assertEquals(127, snapshot.nodesAllocated);
+        assertEquals(1, snapshot.nodesFreed);
+        assertEquals(120, snapshot.rotationsRR); // 127 - 7 (one per insert that did not grow a perfect level)
+        assertEquals(0, snapshot.rotationsLL + snapshot.rotationsLR + snapshot.rotationsRL);
+        assertEquals(129, snapshot.operations);
+
+        TreeMetrics.Shape avlShape = avl.shape();
+        assertEquals(126, avlShape.nodes);
+        assertTrue(avlShape.heightGap <= 1);
+        assertEquals(avlShape.height, avlMetrics.getHeight());
+
+        TreeMetrics.Shape bstShape = bst.shape();
+        assertEquals(127, bstShape.height);
+        assertEquals(7, bstShape.optimalHeight);
+        assertEquals(120, bstShape.heightGap);
+        assertEquals(64.0, bstShape.averageDepth, 1e-9);
+
+        bst.contains(127);
+        // The last bucket collects everything at least 63 deep: 64 inserts and this search
+        assertEquals(65, bstMetrics.snapshot().operationsAtDepth(127));
+        assertEquals(127 * 128 / 2 - 127 + 127, bstMetrics.getComparisons()); // inserts: 0..126, search: 127
+
+        avlMetrics.reset();
+        assertEquals(0, avlMetrics.getOperations());
+        avl.disableMetrics();
+        avl.insert(500);
+        assertNull(avl.metrics());
+    }
+
+    // Tests freeze(): the Eytzinger index answers the same queries as the tree it was built from.
+    @Test
+    public void testFrozenIndex() {
+        int[] keys = {50, 30, 70, 20, 40, 60, 80, 20, 65, -5, 30, 30};
+        for (int key : keys) avl.insert(key);
+        FrozenIndex index = avl.freeze();
+
+        assertEquals(9, index.distinctKeys());
+        assertEquals(12, index.size());
+        for (int key = -10; key <= 90; key++) {
+            assertEquals(avl.count(key), index.count(key));
+            assertEquals(avl.floor(key), index.floor(key));
+            assertEquals(avl.ceiling(key), index.ceiling(key));
+            assertEquals(avl.rank(key), index.rank(key));
+        }
+        assertNull(index.floor(-6));
+        assertNull(index.ceiling(81));
+
+        avl.insert(1000); // the index is a copy: later changes do not show up
+        assertFalse(index.contains(1000));
+        assertTrue(new BST().freeze().isEmpty());
+    }
+
+    @Test
+    public void testFrozenIndexCountAll() {
+        Random random = new Random(16);
+        for (int i = 0; i < 500; i++) avl.insert(random.nextInt(400) - 200);
+        FrozenIndex index = avl.freeze();
+
+        int[] keys = new int[1000]; // not a multiple of any vector length, so the scalar tail runs too
+        for (int i = 0; i < keys.length - 3; i++) keys[i] = random.nextInt(440) - 220;
+        keys[keys.length - 3] = Integer.MIN_VALUE;
+        keys[keys.length - 2] = Integer.MAX_VALUE;
+        keys[keys.length - 1] = 5;
+        int[] out = new int[keys.length];
+        index.countAll(keys, out);
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(avl.count(keys[i]), out[i]);
+        }
+
+        int[] none = new int[7];
+        new BST().freeze().countAll(new int[]{1, 2, 3, 4, 5, 6, 7}, none);
+        assertArrayEquals(new int[7], none);
+        assertThrows(IllegalArgumentException.class, () -> index.countAll(new int[2], new int[1]));
+    }
+
+    // Random adds, removes and changeKeys on every OrderedMultiset, checked against a plain BST
+    @Test
+    public void testBalancedTreesMatchBST() {
+        OrderedMultiset[] trees = {new AVL(), new RedBlackTree(), new WAVLTree(), new Treap(17)};
+        for (OrderedMultiset tree : trees) {
+            BST reference = new BST();
+            Random random = new Random(17);
+            for (int i = 0; i < 20000; i++) {
+                int key = random.nextInt(500);
+                int n = 1 + random.nextInt(3);
+                int op = random.nextInt(10);
+                if (op < 5) {
+                    tree.add(key, n);
+                    reference.add(key, n);
+                } else if (op < 9) {
+                    assertEquals(reference.remove(key, n), tree.remove(key, n));
+                } else {
+                    int newKey = random.nextInt(500);
+                    assertEquals(reference.changeKey(key, newKey), tree.changeKey(key, newKey));
+                }
+                if (i % 500 == 0) {
+                    assertEquals(reference.inorder(), tree.inorder());
+                    assertEquals(reference.size(), tree.size());
+                }
+            }
+            assertEquals(reference.inorder(), tree.inorder());
+        }
+    }
+
+    // Sorted inserts and then deletes keep each scheme within its height bound
+    @Test
+    public void testBalancedTreeInvariants() {
+        RedBlackTree redBlack = new RedBlackTree();
+        WAVLTree wavl = new WAVLTree();
+        Treap treap = new Treap(3);
+        int n = 1 << 14;
+        for (int key = 0; key < n; key++) {
+            redBlack.insert(key);
+            wavl.insert(key);
+            treap.insert(key);
+        }
+        for (int key = 0; key < n; key += 3) {
+            redBlack.delete(key);
+            wavl.delete(key);
+            treap.delete(key);
+        }
+        blackHeight(redBlack.root);
+        assertTrue(redBlack.root.getHeight() == 0); // the root is black
+        checkRanks(wavl.root);
+        assertTrue(redBlack.shape().height <= 2 * 14);
+        assertTrue(wavl.shape().height <= 2 * 14);
+        assertTrue(treap.shape().height <= 4 * 14);
+        assertEquals(redBlack.inorder(), treap.inorder());
+    }
+
+    @Test
+    public void testRotationCountsBalancedTrees() {
+        RedBlackTree redBlack = new RedBlackTree();
+        TreeMetrics metrics = redBlack.enableMetrics();
+        for (int key = 1; key <= 3; key++) {
+            redBlack.insert(key); // 1, 2, 3: one left rotation at the root
+        }
+        assertEquals(1, metrics.rotations(TreeMetrics.Rotation.RR));
+        assertEquals(2, redBlack.root.getKey());
+
+        WAVLTree wavl = new WAVLTree();
+        metrics = wavl.enableMetrics();
+        for (int key : new int[]{30, 10, 20}) {
+            wavl.insert(key); // 30, 10, 20: one double rotation
+        }
+        assertEquals(1, metrics.rotations(TreeMetrics.Rotation.LR));
+        assertEquals(2, metrics.getSingleRotations());
+        assertEquals(20, wavl.root.getKey());
+    }
+
+    // Finger search gives the same tree as a plain AVL, with far fewer comparisons on sorted keys
+    @Test
+    public void testFingerSearchAVL() {
+        AVL finger = new AVL();
+        finger.enableFingerSearch();
+        Random random = new Random(18);
+        int base = 0;
+        for (int i = 0; i < 20000; i++) {
+            base += random.nextInt(5) - 2;
+            int key = base + random.nextInt(8);
+            int op = random.nextInt(10);
+            if (op < 5) {
+                finger.insert(key);
+                avl.insert(key);
+            } else if (op < 8) {
+                finger.delete(key);
+                avl.delete(key);
+            } else if (op < 9) {
+                assertEquals(avl.count(key), finger.count(key));
+            } else {
+                assertEquals(avl.changeKey(key, key + 3), finger.changeKey(key, key + 3));
+            }
+        }
+        assertEquals(avl.preorder(), finger.preorder()); // same rotations, same shape
+        assertEquals(avl.size(), finger.size());
+        assertEquals(avl.select(avl.size() / 2), finger.select(finger.size() / 2));
+
+        AVL sorted = new AVL();
+        sorted.enableFingerSearch();
+        TreeMetrics metrics = sorted.enableMetrics();
+        for (int key = 0; key < 1 << 16; key++) {
+            sorted.insert(key);
+        }
+        assertTrue(metrics.getComparisonsPerOperation() < 10); // 16 levels from the root
+        for (int key = 0; key < 1 << 16; key += 2) {
+            sorted.delete(key);
+        }
+        assertEquals(1 << 15, sorted.size());
+        assertEquals(1, sorted.first());
+        assertTrue(Math.abs(avlBalance(sorted.root)) <= 1);
+    }
+
+    // Under churn a pooled tree reuses its freed nodes; retention is bounded and the pool shrinks
+    @Test
+    public void testNodePool() {
+        NodePool pool = avl.enableNodePool(1000);
+        for (int key = 0; key < 2000; key++) {
+            avl.insert(key);
+        }
+        for (int round = 0; round < 10; round++) {
+            for (int key = 0; key < 2000; key += 2) {
+                avl.delete(key);
+            }
+            for (int key = 0; key < 2000; key += 2) {
+                avl.insert(key);
+            }
+        }
+        assertEquals(2000, pool.allocated()); // only the first 2000 nodes were ever allocated
+        assertEquals(10 * 1000, pool.reused());
+        assertEquals(2000, avl.size());
+        assertEquals(999, (int) avl.floor(999));
+
+        for (int key = 0; key < 2000; key++) {
+            avl.delete(key);
+        }
+        assertEquals(1000, pool.retained()); // bounded: the other 1000 were dropped
+        assertEquals(1000, pool.dropped());
+        for (int i = 0; i < NodePool.SHRINK_WINDOW; i++) {
+            avl.insert(5);
+            avl.delete(5);
+        }
+        assertTrue(pool.retained() < 1000); // unused for a whole window: shrunk
+
+        OrderedMultiset[] trees = {new BST(), new RedBlackTree(), new WAVLTree(), new Treap(19)};
+        for (OrderedMultiset tree : trees) {
+            ((BST) tree).enableNodePool();
+            BST reference = new BST();
+            Random random = new Random(19);
+            for (int i = 0; i < 20000; i++) {
+                int key = random.nextInt(300);
+                if (random.nextBoolean()) {
+                    tree.insert(key);
+                    reference.insert(key);
+                } else {
+                    tree.delete(key);
+                    reference.delete(key);
+                }
+            }
+            assertEquals(reference.inorder(), tree.inorder());
+        }
+    }
+
+    // The filter stays in step with inserts and deletes and only ever stops absent keys
+    @Test
+    public void testKeyFilter() {
+        for (int key = 0; key < 5000; key += 2) {
+            avl.insert(key);
+        }
+        KeyFilter filter = avl.enableKeyFilter();
+        assertEquals(2500, filter.keys());
+        for (int key = 0; key < 5000; key += 2) {
+            assertTrue(filter.mightContain(key)); // no false negatives
+        }
+
+        for (int key = 1; key < 5000; key += 2) {
+            assertFalse(avl.contains(key));
+        }
+        assertTrue(filter.negatives() > 0);
+        assertTrue(filter.falsePositiveRate() < 0.05);
+
+        // Deletes decrement the counters, so deleted keys are filtered out again
+        for (int key = 0; key < 5000; key += 4) {
+            avl.delete(key);
+        }
+        assertEquals(1250, filter.keys());
+        filter.resetStatistics();
+        for (int key = 0; key < 5000; key += 4) {
+            assertEquals(0, avl.count(key));
+            avl.delete(key);
+        }
+        assertTrue(filter.negatives() > 2 * 1250 * 0.9);
+
+        // Growing past the capacity rebuilds the filter at twice the size
+        for (int key = 0; key < 100000; key++) {
+            avl.insert(key);
+        }
+        assertTrue(avl.contains(99999));
+        assertTrue(filter.capacity() >= 100000);
+        assertEquals(100000, filter.keys());
+
+        bst.enableKeyFilter();
+        bst.insert(9196);
+        bst.delete(9999); // Main's delete of a missing key
+        assertEquals(1, bst.keyFilter().negatives() + bst.keyFilter().falsePositives());
+        assertTrue(bst.changeKey(9196, 9999));
+        assertTrue(bst.contains(9999));
+        assertFalse(bst.contains(9196));
+    }
+
+    // Red-black rules: no red node with a red child, the same number of black nodes on every path
+    private static int blackHeight(Node node) {
+        if (node == null) {
+            return 1;
+        }
+        if (node.getHeight() == 1) {
+            assertFalse(node.getLeft() != null && node.getLeft().getHeight() == 1);
+            assertFalse(node.getRight() != null && node.getRight().getHeight() == 1);
+        }
+        int left = blackHeight(node.getLeft());
+        assertEquals(left, blackHeight(node.getRight()));
+        return left + ((node.getHeight() == 0) ? 1 : 0);
+    }
+
+    // WAVL rules: rank differences 1 or 2, leaves of rank 1
+    private static void checkRanks(Node node) {
+        if (node == null) {
+            return;
+        }
+        int left = node.getHeight() - AVL.height(node.getLeft());
+        int right = node.getHeight() - AVL.height(node.getRight());
+        assertTrue(left == 1 || left == 2);
+        assertTrue(right == 1 || right == 2);
+        if (node.getLeft() == null && node.getRight() == null) {
+            assertEquals(1, node.getHeight());
+        }
+        checkRanks(node.getLeft());
+        checkRanks(node.getRight());
+    }
+
+    private static int avlBalance(Node node) {
+        return (node == null) ? 0 : AVL.height(node.getLeft()) - AVL.height(node.getRight());
+    }
+}
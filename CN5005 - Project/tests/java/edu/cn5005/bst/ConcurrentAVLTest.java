@@ -0,0 +1,198 @@
+package edu.cn5005.bst;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/* Multi-threaded stress tests for ConcurrentAVL.
+Writers insert and delete disjoint key ranges while readers run optimistic lookups.
+The tests verify:
+- no lookup ever sees a key of a writer's range in an impossible state
+- the final tree holds exactly the keys and counts that the writers left behind
+ */
+public class ConcurrentAVLTest {
+
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    private static final int KEYS_PER_WRITER = 20_000;
+
+    // Runs the workers together and rethrows the first failure of any of them.
+    private static void runAll(List<Runnable> workers) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (Runnable worker : workers) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    worker.run();
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) thread.join();
+        if (failure.get() != null) {
+            fail(failure.get());
+        }
+    }
+
+    /* Each writer inserts its keys twice and then deletes the odd ones once.
+     Readers check that every count they see is legal (0, 1 or 2) and that floor/ceiling
+     are consistent with the probed key.
+     */
+    @Test
+    public void testConcurrentInsertDeleteWithOptimisticReads() throws InterruptedException {
+        ConcurrentAVL tree = new ConcurrentAVL();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Runnable> workers = new ArrayList<>();
+
+        for (int w = 0; w < WRITERS; w++) {
+            int base = w * KEYS_PER_WRITER;
+            workers.add(() -> {
+                for (int i = 0; i < KEYS_PER_WRITER; i++) {
+                    tree.insert(base + i);
+                    tree.insert(base + i);
+                }
+                for (int i = 1; i < KEYS_PER_WRITER; i += 2) {
+                    tree.delete(base + i);
+                }
+            });
+        }
+        for (int r = 0; r < READERS; r++) {
+            int seed = r;
+            workers.add(() -> {
+                int key = seed;
+                while (writing.get()) {
+                    key = (key * 31 + 7) & 0x1ffff;
+                    int count = tree.count(key);
+                    assertTrue(count >= 0 && count <= 2, "impossible count " + count);
+                    Integer floor = tree.floor(key);
+                    assertTrue(floor == null || (floor >= 0 && floor <= key));
+                    Integer ceiling = tree.ceiling(key);
+                    assertTrue(ceiling == null || ceiling >= key);
+                }
+            });
+        }
+
+        runAllWithStop(workers, writing);
+
+        // Each writer leaves 2 occurrences of every even key and 1 of every odd key
+        long perWriter = KEYS_PER_WRITER / 2 * 2 + KEYS_PER_WRITER / 2;
+        assertEquals(WRITERS * perWriter, tree.size());
+        for (int w = 0; w < WRITERS; w++) {
+            int base = w * KEYS_PER_WRITER;
+            assertEquals(2, tree.count(base));
+            assertEquals(1, tree.count(base + 1));
+        }
+        assertEquals(WRITERS * KEYS_PER_WRITER, tree.inorder().size());
+        assertEquals(2 * perWriter, tree.rank(2 * KEYS_PER_WRITER));
+    }
+
+    // Writers are the first WRITERS workers; the readers stop when all of them are done.
+    private static void runAllWithStop(List<Runnable> workers, AtomicBoolean writing) throws InterruptedException {
+        CountDownLatch writersDone = new CountDownLatch(WRITERS);
+        List<Runnable> wrapped = new ArrayList<>();
+        for (int i = 0; i < workers.size(); i++) {
+            Runnable worker = workers.get(i);
+            if (i < WRITERS) {
+                wrapped.add(() -> {
+                    try {
+                        worker.run();
+                    } finally {
+                        writersDone.countDown();
+                        if (writersDone.getCount() == 0) writing.set(false);
+                    }
+                });
+            } else {
+                wrapped.add(worker);
+            }
+        }
+        runAll(wrapped);
+    }
+
+    /* Writers add and remove random occurrences of the same small key range, so they
+     contend for the same nodes, splice out emptied nodes and rotate over each other.
+     Every writer tallies what it added and what remove() reported as removed; afterwards
+     each key's count must be exactly the difference, and the tree must still be balanced.
+     */
+    @Test
+    public void testConcurrentWritersOnSharedKeys() throws InterruptedException {
+        ConcurrentAVL tree = new ConcurrentAVL();
+        int keys = 2048;
+        long[][] net = new long[WRITERS * 2][keys];
+        List<Runnable> workers = new ArrayList<>();
+        for (int w = 0; w < net.length; w++) {
+            long[] mine = net[w];
+            Random random = new Random(w);
+            workers.add(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    int key = random.nextInt(keys);
+                    if (random.nextInt(3) == 0) {
+                        mine[key] -= tree.remove(key, 1 + random.nextInt(3));
+                    } else {
+                        tree.insert(key);
+                        mine[key]++;
+                    }
+                }
+            });
+        }
+        runAll(workers);
+
+        long size = 0;
+        int present = 0;
+        for (int key = 0; key < keys; key++) {
+            long expected = 0;
+            for (long[] mine : net) expected += mine[key];
+            assertEquals(expected, tree.count(key), "count of " + key);
+            assertEquals(expected, tree.rank(key + 1) - tree.rank(key));
+            size += expected;
+            if (expected > 0) present++;
+        }
+        assertEquals(size, tree.size());
+        assertEquals(present, tree.inorder().size());
+        assertTrue(tree.height() <= 1.45 * Math.log(keys + 2) / Math.log(2), "height " + tree.height());
+    }
+
+    // Tests changeKey racing with readers: a reader never sees the count half moved between the two keys.
+    @Test
+    public void testChangeKeyIsAtomicForReaders() throws InterruptedException {
+        ConcurrentAVL tree = new ConcurrentAVL();
+        for (int key = 0; key < 1000; key++) tree.insert(key * 2);
+        tree.add(-1, 5);
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Runnable> workers = new ArrayList<>();
+        workers.add(() -> {
+            try {
+                for (int i = 0; i < 20_000; i++) {
+                    tree.changeKey(-1, -3);
+                    tree.changeKey(-3, -1);
+                }
+            } finally {
+                writing.set(false);
+            }
+        });
+        for (int r = 0; r < READERS; r++) {
+            workers.add(() -> {
+                while (writing.get()) {
+                    long before = tree.rank(0); // all 5 occurrences sit below key 0 in both states
+                    assertEquals(5, before);
+                }
+            });
+        }
+        runAll(workers);
+
+        assertEquals(5, tree.count(-1));
+        assertEquals(1005, tree.size());
+    }
+}
@@ -1,62 +1,271 @@
-package edu.cn5005.persons;
-
-import org.junit.jupiter.api.Test;
-import static org.junit.jupiter.api.Assertions.*;
-import java.io.IOException;
-
-// Unit tests for PersonParser: It verifies correct loading, indexing, and handling of empty fields.
-
-public class ParserTest {
-
-    // Checks that all persons from persons.csv are loaded. The header line is excluded from the count.
-    @Test
-    public void testLoadEveryone() throws IOException {
-        PersonParser parser = new PersonParser();
-        parser.loadCsv("persons.csv");
-
-        assertEquals(25, parser.getPersonsToId().size(),
-                "25 people must be loaded from the CSV file.");
-    }
-
-    // Verifies name -> id index for a known person.
-    @Test
-    public void testNameToIdMapping() throws IOException {
-        PersonParser parser = new PersonParser();
-        parser.loadCsv("persons.csv");
-
-        Integer id = parser.getIdToName().get("Ιωάννης Καποδίστριας");
-
-        assertNotNull(id);
-        assertEquals(3, id);
-    }
-
-    // Checks correct parent links (father_id, mother_id).
-    @Test
-    public void testParentLinks() throws IOException {
-        PersonParser parser = new PersonParser();
-        parser.loadCsv("persons.csv");
-
-        Person xristina = parser.getPersonsToId().get(15);
-        assertNotNull(xristina);
-
-        assertEquals(13, xristina.getFatherId());
-        assertEquals(14, xristina.getMotherId());
-    }
-
-    //Ensures empty spouse_id fields in CSV are stored as null.
-    @Test
-    public void testSpouseLink() throws IOException {
-        PersonParser parser = new PersonParser();
-        parser.loadCsv("persons.csv");
-
-        Person ioannis = parser.getPersonsToId().get(3);
-        assertNotNull(ioannis);
-
-        // Since CSV has NO spouse for Ioannis, spouseId must be null
-        assertNull(ioannis.getSpouseId(),
-                "Ιωάννης Καποδίστριας δεν έχει συζύγο στο CSV.");
-    }
-}
-
-
-
+package edu.cn5005.persons;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Unit tests for PersonParser: It verifies correct loading, indexing, and handling of empty fields.
+
+public class ParserTest {
+
+    // Checks that all persons from persons.csv are loaded. The header line is excluded from the count.
+    @Test
+    public void testLoadEveryone() throws IOException {
+        PersonParser parser = new PersonParser();
+        parser.loadCsv("persons.csv");
+
+        assertEquals(25, parser.getPersonsToId().size(),
+                "25 people must be loaded from the CSV file.");
+    }
+
+    // Verifies name -> id index for a known person.
+    @Test
+    public void testNameToIdMapping() throws IOException {
+        PersonParser parser = new PersonParser();
+        parser.loadCsv("persons.csv");
+
+        Integer id = parser.getIdToName().get("Ιωάννης Καποδίστριας");
+
+        assertNotNull(id);
+        assertEquals(3, id);
+    }
+
+    // Checks correct parent links (father_id, mother_id).
+    @Test
+    public void testParentLinks() throws IOException {
+        PersonParser parser = new PersonParser();
+        parser.loadCsv("persons.csv");
+
+        Person xristina = parser.getPersonsToId().get(15);
+        assertNotNull(xristina);
+
+        assertEquals(13, xristina.getFatherId());
+        assertEquals(14, xristina.getMotherId());
+    }
+
+    //Ensures empty spouse_id fields in CSV are stored as null.
+    @Test
+    public void testSpouseLink() throws IOException {
+        PersonParser parser = new PersonParser();
+        parser.loadCsv("persons.csv");
+
+        Person ioannis = parser.getPersonsToId().get(3);
+        assertNotNull(ioannis);
+
+        // Since CSV has NO spouse for Ioannis, spouseId must be null
+        assertNull(ioannis.getSpouseId(),
+                "Ιωάννης Καποδίστριας δεν έχει συζύγο στο CSV.");
+    }
+
+    // The fast loader must build the same maps as loadCsv, sequentially and in parallel.
+    @Test
+    public void testFastLoaderMatchesLoadCsv() throws IOException {
+        PersonParser parser = new PersonParser();
+        parser.loadCsv("persons.csv");
+
+        for (boolean parallel : new boolean[]{false, true}) {
+            PersonParser fast = new PersonParser();
+            fast.loadCsvFast("persons.csv", parallel);
+
+            assertEquals(0, fast.getMalformedLines());
+            assertEquals(parser.getIdToName(), fast.getIdToName());
+            assertEquals(parser.getPersonsToId().keySet(), fast.getPersonsToId().keySet());
+            for (Person expected : parser.getPersonsToId().values()) {
+                Person actual = fast.getPersonsToId().get(expected.getId());
+                assertEquals(expected.getName(), actual.getName());
+                assertEquals(expected.getGender(), actual.getGender());
+                assertEquals(expected.getFatherId(), actual.getFatherId());
+                assertEquals(expected.getMotherId(), actual.getMotherId());
+                assertEquals(expected.getSpouseId(), actual.getSpouseId());
+            }
+        }
+    }
+
+    // Chunks cut at line boundaries give the same rows as one chunk; bad lines are counted, not loaded.
+    @Test
+    public void testFastLoaderChunksAndMalformedLines(@TempDir Path dir) throws IOException {
+        StringBuilder csv = new StringBuilder("id,name,gender,father_id,mother_id,spouse_id\r\n");
+        int malformed = 0;
+        for (int i = 1; i <= 2000; i++) {
+            if (i % 97 == 0) {
+                csv.append(i).append(",Only two\n"); // too few columns
+                malformed++;
+            } else if (i % 89 == 0) {
+                csv.append(i).append(",Bad number,Male,12x,,\n");
+                malformed++;
+            } else if (i % 83 == 0) {
+                csv.append(i).append(", ,Female,,,\n"); // empty name
+                malformed++;
+            } else if (i % 79 == 0) {
+                csv.append("   \r\n"); // blank lines are skipped silently
+            } else {
+                String father = (i > 2) ? String.valueOf(i / 2) : "";
+                csv.append(' ').append(i).append(" , Πρόσωπο ").append(i).append(" ,")
+                        .append(i % 3 == 0 ? "Female" : "Male").append(',').append(father)
+                        .append(",,").append(i % 5 == 0 ? "-" + i : "").append(i % 2 == 0 ? "\r\n" : "\n");
+            }
+        }
+        csv.append("2001,Last line,Other,1,2,3"); // no final newline
+        Path file = dir.resolve("people.csv");
+        Files.writeString(file, csv, StandardCharsets.UTF_8);
+
+        PersonColumns single = PersonCsvLoader.load(file, 1, false);
+        assertEquals(malformed, single.malformedLines());
+        assertEquals(Files.size(file), single.bytes());
+        assertEquals("Πρόσωπο 1", single.name(0));
+        assertEquals(1, single.id(0));
+        assertEquals(PersonColumns.NO_ID, single.fatherId(0));
+        assertEquals(2001, single.id(single.size() - 1));
+        assertEquals("Other", single.gender(single.size() - 1));
+        assertEquals(3, single.spouseId(single.size() - 1));
+        assertEquals(-10, single.spouseId(9));
+
+        for (int chunks : new int[]{2, 13, 500}) {
+            PersonColumns parsed = PersonCsvLoader.load(file, chunks, true);
+            assertEquals(single.size(), parsed.size());
+            assertEquals(single.malformedLines(), parsed.malformedLines());
+            for (int row = 0; row < single.size(); row++) {
+                assertEquals(single.id(row), parsed.id(row));
+                assertEquals(single.name(row), parsed.name(row));
+                assertEquals(single.gender(row), parsed.gender(row));
+                assertEquals(single.fatherId(row), parsed.fatherId(row));
+                assertEquals(single.motherId(row), parsed.motherId(row));
+                assertEquals(single.spouseId(row), parsed.spouseId(row));
+            }
+        }
+    }
+
+    // Dense indexes, NONE (-1) for empty links and a placeholder below NONE for a dangling id,
+    // and one dictionary entry per distinct name.
+    @Test
+    public void testGenealogyStore(@TempDir Path dir) throws IOException {
+        GenealogyStore store = GenealogyStore.of(PersonCsvLoader.load(Path.of("persons.csv"), false));
+
+        assertEquals(25, store.size());
+        int xristina = store.indexOf(15);
+        assertEquals(15, store.id(xristina));
+        assertEquals(13, store.id(store.father(xristina)));
+        assertEquals(14, store.id(store.mother(xristina)));
+        assertEquals(-1, store.spouse(store.indexOf(3)));
+        assertEquals(-1, store.indexOf(999));
+        assertTrue(store.isFemale(xristina));
+        assertFalse(store.isMale(xristina));
+        assertEquals("Female", store.gender(xristina));
+
+        // "Ελένη Καποδίστρια" is both 4 and 22; like idToName, the name refers to the later line
+        assertEquals(24, store.distinctNames());
+        assertEquals(22, store.id(store.indexOfName("Ελένη Καποδίστρια")));
+        assertEquals("Ελένη Καποδίστρια", store.name(store.indexOf(4)));
+        assertEquals(-1, store.indexOfName("Nobody"));
+
+        // Ids out of order, a repeated id (the later line wins) and a parent that is not in the file
+        Path file = dir.resolve("people.csv");
+        Files.writeString(file, "id,name,gender,father_id,mother_id,spouse_id\n"
+                + "30,Child,Male,10,999,\n"
+                + "10,Old name,Male,,,\n"
+                + "20,Mother,Female,,,10\n"
+                + "10,Father,Male,,,20\n", StandardCharsets.UTF_8);
+        GenealogyStore small = GenealogyStore.of(PersonCsvLoader.load(file, false));
+        assertEquals(3, small.size());
+        assertEquals(10, small.id(0));
+        assertEquals(30, small.id(2));
+        assertEquals("Father", small.name(0));
+        assertEquals(-1, small.indexOfName("Old name"));
+        assertEquals(0, small.father(2));
+        assertTrue(small.mother(2) < GenealogyStore.NONE); // 999 is dangling
+        assertEquals(999, small.linkedId(small.mother(2)));
+        assertEquals(GenealogyStore.NONE, small.spouse(2));
+        assertEquals(1, small.spouse(0));
+    }
+
+    // A snapshot reopens to the same store, is stale once the CSV changes, a damaged one is rejected,
+    // and concurrent writers do not clash.
+    @Test
+    public void testGenealogySnapshot(@TempDir Path dir) throws IOException, InterruptedException {
+        Path csv = dir.resolve("persons.csv");
+        Files.copy(Path.of("persons.csv"), csv, StandardCopyOption.REPLACE_EXISTING);
+        Path snapshot = GenealogySnapshot.pathFor(csv);
+
+        GenealogyStore built = GenealogySnapshot.openOrBuild(csv);
+        assertTrue(Files.exists(snapshot));
+        assertTrue(GenealogySnapshot.isFresh(snapshot, csv));
+
+        GenealogyStore opened = GenealogySnapshot.open(snapshot);
+        assertEquals(built.size(), opened.size());
+        assertEquals(built.distinctNames(), opened.distinctNames());
+        for (int i = 0; i < built.size(); i++) {
+            assertEquals(built.id(i), opened.id(i));
+            assertEquals(built.name(i), opened.name(i));
+            assertEquals(built.gender(i), opened.gender(i));
+            assertEquals(built.father(i), opened.father(i));
+            assertEquals(built.mother(i), opened.mother(i));
+            assertEquals(built.spouse(i), opened.spouse(i));
+            assertEquals(built.childrenStart(i), opened.childrenStart(i));
+            assertEquals(built.childrenEnd(i), opened.childrenEnd(i));
+            for (int c = built.childrenStart(i); c < built.childrenEnd(i); c++) {
+                assertEquals(built.childAt(c), opened.childAt(c));
+            }
+            assertEquals(built.indexOfName(built.name(i)), opened.indexOfName(built.name(i)));
+        }
+        assertEquals(-1, opened.indexOfName("Nobody"));
+
+        // Editing the CSV makes the snapshot stale; the next load picks up the new person
+        Files.writeString(csv, "26,Νέο Πρόσωπο,Female,3,,\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        assertFalse(GenealogySnapshot.isFresh(snapshot, csv));
+        GenealogyStore reloaded = GenealogySnapshot.openOrBuild(csv);
+        assertEquals(26, reloaded.size());
+        GenealogyStore fromSnapshot = GenealogySnapshot.open(snapshot);
+        assertEquals(26, fromSnapshot.id(fromSnapshot.indexOfName("Νέο Πρόσωπο")));
+        assertEquals(3, fromSnapshot.id(fromSnapshot.father(fromSnapshot.indexOf(26))));
+
+        // A flipped byte fails the checksum; openOrBuild then rebuilds from the CSV
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(snapshot, bytes);
+        assertTrue(GenealogySnapshot.isFresh(snapshot, csv));
+        assertThrows(IOException.class, () -> GenealogySnapshot.open(snapshot));
+        assertEquals(26, GenealogySnapshot.openOrBuild(csv).size());
+        assertEquals(26, GenealogySnapshot.open(snapshot).size());
+
+        // Not a snapshot at all
+        Files.writeString(snapshot, "id,name\n");
+        assertFalse(GenealogySnapshot.isFresh(snapshot, csv));
+        assertThrows(IOException.class, () -> GenealogySnapshot.open(snapshot));
+        Files.setLastModifiedTime(csv, FileTime.fromMillis(0));
+        assertEquals(26, GenealogySnapshot.openOrBuild(csv).size());
+        assertTrue(GenealogySnapshot.isFresh(snapshot, csv));
+
+        // Writers racing on the same snapshot each use their own temporary file
+        GenealogyStore store = GenealogySnapshot.open(snapshot);
+        List<Thread> writers = new ArrayList<>();
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        for (int w = 0; w < 4; w++) {
+            writers.add(Thread.ofVirtual().start(() -> {
+                try {
+                    GenealogySnapshot.write(store, snapshot, csv);
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }));
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertEquals(List.of(), failures);
+        assertEquals(26, GenealogySnapshot.open(snapshot).size());
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(List.of(), files.filter(f -> f.toString().endsWith(".tmp")).toList());
+        }
+    }
+}
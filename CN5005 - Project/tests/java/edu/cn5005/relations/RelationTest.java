@@ -1,110 +1,201 @@
-package edu.cn5005.relations;
-
-import edu.cn5005.persons.PersonParser;
-import org.junit.jupiter.api.Test;
-
-import java.io.IOException;
-
-import static org.junit.jupiter.api.Assertions.assertFalse;
-import static org.junit.jupiter.api.Assertions.assertTrue;
-
-public class RelationTest {
-
-    // Part D
-    @Test
-    public void testFatherRelation() throws IOException {
-        PersonParser parser = new PersonParser();
-        parser.loadCsv("persons.csv");
-        RelationEngine engine = new RelationEngine(parser.getPersonsToId(), parser.getIdToName());
-
-        // From CSV: Αυγουστίνος (1) is father of Ιωάννης (3)
-        assertTrue(engine.isFather(1, 3));
-    }
-
-    @Test
-    public void testMotherRelation() throws IOException {
-        PersonParser parser = new PersonParser();
-        parser.loadCsv("persons.csv");
-        RelationEngine engine = new RelationEngine(parser.getPersonsToId(), parser.getIdToName());
-
-        // From CSV: Αναστασία (2) is mother of Ιωάννης (3)
-        assertTrue(engine.isMother(2, 3));
-    }
-
-    @Test
-    public void testSamePersonSibling() throws IOException {
-        PersonParser parser = new PersonParser();
-        parser.loadCsv("persons.csv");
-        RelationEngine engine = new RelationEngine(parser.getPersonsToId(), parser.getIdToName());
-
-        // Same person should not be sibling of itself
-        assertFalse(engine.isSibling(3, 3));
-    }
-
-    @Test
-    public void testSiblingRelation() throws IOException {
-        PersonParser parser = new PersonParser();
-        parser.loadCsv("persons.csv");
-        RelationEngine engine = new RelationEngine(parser.getPersonsToId(), parser.getIdToName());
-
-        // From CSV: Ιωάννης (3) and Ελένη (4) share both parents
-        assertTrue(engine.isSibling(3, 4));
-    }
-
-    @Test
-    public void testGrandparentRelation() throws IOException {
-        PersonParser parser = new PersonParser();
-        parser.loadCsv("persons.csv");
-        RelationEngine engine = new RelationEngine(parser.getPersonsToId(), parser.getIdToName());
-
-        // From CSV: Αυγουστίνος (1) is grandparent of Αλέξανδρος (6)
-        assertTrue(engine.isGrandparent(1, 6));
-    }
-
-    @Test
-    public void testGrandchildRelation() throws IOException {
-        PersonParser parser = new PersonParser();
-        parser.loadCsv("persons.csv");
-        RelationEngine engine = new RelationEngine(parser.getPersonsToId(), parser.getIdToName());
-
-        // From CSV: Αλέξανδρος (6) is grandchild of Αυγουστίνος (1)
-        assertTrue(engine.isGrandchild(6, 1));
-    }
-
-    @Test
-    public void testFirstCousinRelation() throws IOException {
-        PersonParser parser = new PersonParser();
-        parser.loadCsv("persons.csv");
-        RelationEngine engine = new RelationEngine(parser.getPersonsToId(), parser.getIdToName());
-
-        // From CSV: Αλέξανδρος (6) and cousin
-        assertTrue(engine.isFirstCousin(6, 7));
-    }
-
-    // Part E
-    @Test
-    public void testHalfSiblings() throws IOException {
-        PersonParser parser = new PersonParser();
-        parser.loadCsv("persons.csv");
-        RelationEngine engine =
-                new RelationEngine(parser.getPersonsToId(), parser.getIdToName());
-
-        // According to the CSV, these people do NOT share exactly one parent
-        assertFalse(engine.isHalfSibling(10, 12));
-        assertFalse(engine.isHalfSibling(11, 12));
-    }
-
-    @Test
-    public void testSpouse() throws IOException {
-        PersonParser parser = new PersonParser();
-        parser.loadCsv("persons.csv");
-        RelationEngine engine =
-                new RelationEngine(parser.getPersonsToId(), parser.getIdToName());
-
-        // No spouse relationship is defined for person 3 in the CSV
-        assertFalse(engine.isSpouse(3, 4));
-        assertFalse(engine.isSpouse(3, 5));
-    }
-}
-
-
+package edu.cn5005.relations;
+
+import edu.cn5005.persons.GenealogySnapshot;
+import edu.cn5005.persons.GenealogyStore;
+import edu.cn5005.persons.PersonCsvLoader;
+import edu.cn5005.persons.PersonParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RelationTest {
+
+    // Part D
+    @Test
+    public void testFatherRelation() throws IOException {
+        PersonParser parser = new PersonParser();
+        parser.loadCsv("persons.csv");
+        RelationEngine engine = new RelationEngine(parser.getPersonsToId(), parser.getIdToName());
+
+        // From CSV: Αυγουστίνος (1) is father of Ιωάννης (3)
+        assertTrue(engine.isFather(1, 3));
+    }
+
+    @Test
+    public void testMotherRelation() throws IOException {
+        PersonParser parser = new PersonParser();
+        parser.loadCsv("persons.csv");
+        RelationEngine engine = new RelationEngine(parser.getPersonsToId(), parser.getIdToName());
+
+        // From CSV: Αναστασία (2) is mother of Ιωάννης (3)
+        assertTrue(engine.isMother(2, 3));
+    }
+
+    @Test
+    public void testSamePersonSibling() throws IOException {
+        PersonParser parser = new PersonParser();
+        parser.loadCsv("persons.csv");
+        RelationEngine engine = new RelationEngine(parser.getPersonsToId(), parser.getIdToName());
+
+        // Same person should not be sibling of itself
+        assertFalse(engine.isSibling(3, 3));
+    }
+
+    @Test
+    public void testSiblingRelation() throws IOException {
+        PersonParser parser = new PersonParser();
+        parser.loadCsv("persons.csv");
+        RelationEngine engine = new RelationEngine(parser.getPersonsToId(), parser.getIdToName());
+
+        // From CSV: Ιωάννης (3) and Ελένη (4) share both parents
+        assertTrue(engine.isSibling(3, 4));
+    }
+
+    @Test
+    public void testGrandparentRelation() throws IOException {
+        PersonParser parser = new PersonParser();
+        parser.loadCsv("persons.csv");
+        RelationEngine engine = new RelationEngine(parser.getPersonsToId(), parser.getIdToName());
+
+        // From CSV: Αυγουστίνος (1) is grandparent of Αλέξανδρος (6)
+        assertTrue(engine.isGrandparent(1, 6));
+    }
+
+    @Test
+    public void testGrandchildRelation() throws IOException {
+        PersonParser parser = new PersonParser();
+        parser.loadCsv("persons.csv");
+        RelationEngine engine = new RelationEngine(parser.getPersonsToId(), parser.getIdToName());
+
+        // From CSV: Αλέξανδρος (6) is grandchild of Αυγουστίνος (1)
+        assertTrue(engine.isGrandchild(6, 1));
+    }
+
+    @Test
+    public void testFirstCousinRelation() throws IOException {
+        PersonParser parser = new PersonParser();
+        parser.loadCsv("persons.csv");
+        RelationEngine engine = new RelationEngine(parser.getPersonsToId(), parser.getIdToName());
+
+        // From CSV: Αλέξανδρος (6) and cousin
+        assertTrue(engine.isFirstCousin(6, 7));
+    }
+
+    // Part E
+    @Test
+    public void testHalfSiblings() throws IOException {
+        PersonParser parser = new PersonParser();
+        parser.loadCsv("persons.csv");
+        RelationEngine engine =
+                new RelationEngine(parser.getPersonsToId(), parser.getIdToName());
+
+        // According to the CSV, these people do NOT share exactly one parent
+        assertFalse(engine.isHalfSibling(10, 12));
+        assertFalse(engine.isHalfSibling(11, 12));
+    }
+
+    @Test
+    public void testSpouse() throws IOException {
+        PersonParser parser = new PersonParser();
+        parser.loadCsv("persons.csv");
+        RelationEngine engine =
+                new RelationEngine(parser.getPersonsToId(), parser.getIdToName());
+
+        // No spouse relationship is defined for person 3 in the CSV
+        assertFalse(engine.isSpouse(3, 4));
+        assertFalse(engine.isSpouse(3, 5));
+    }
+
+    @Test
+    public void testChildrenIndex() throws IOException {
+        PersonParser parser = new PersonParser();
+        parser.loadCsv("persons.csv");
+        RelationEngine engine =
+                new RelationEngine(parser.getPersonsToId(), parser.getIdToName());
+
+        // From CSV: 3 and 4 are the children of 1; 6 (via 3), 7 and 11 (via 4) its grandchildren
+        assertArrayEquals(new int[]{3, 4}, engine.getChildren(1));
+        assertArrayEquals(new int[]{6, 7, 11}, engine.getGrandchildren(1));
+        assertArrayEquals(new int[]{8, 14, 23}, engine.getGrandchildren(4));
+
+        // No children, and an unknown id
+        assertArrayEquals(new int[0], engine.getChildren(25));
+        assertArrayEquals(new int[0], engine.getGrandchildren(25));
+        assertArrayEquals(new int[0], engine.getChildren(999));
+    }
+
+    @Test
+    public void testEngineOnColumnarStore() throws IOException {
+        PersonParser parser = new PersonParser();
+        parser.loadCsv("persons.csv");
+        RelationEngine fromMaps =
+                new RelationEngine(parser.getPersonsToId(), parser.getIdToName());
+        RelationEngine fromStore =
+                new RelationEngine(GenealogyStore.of(PersonCsvLoader.load(Path.of("persons.csv"), true)));
+
+        // Both ways of building the engine must answer every question the same way
+        for (int a = 0; a <= 26; a++) {
+            assertArrayEquals(fromMaps.getChildren(a), fromStore.getChildren(a));
+            assertArrayEquals(fromMaps.getGrandchildren(a), fromStore.getGrandchildren(a));
+            for (int b = 0; b <= 26; b++) {
+                assertEquals(fromMaps.isFather(a, b), fromStore.isFather(a, b));
+                assertEquals(fromMaps.isMother(a, b), fromStore.isMother(a, b));
+                assertEquals(fromMaps.isSibling(a, b), fromStore.isSibling(a, b));
+                assertEquals(fromMaps.isGrandparent(a, b), fromStore.isGrandparent(a, b));
+                assertEquals(fromMaps.isFirstCousin(a, b), fromStore.isFirstCousin(a, b));
+                assertEquals(fromMaps.isHalfSibling(a, b), fromStore.isHalfSibling(a, b));
+                assertEquals(fromMaps.isSpouse(a, b), fromStore.isSpouse(a, b));
+            }
+        }
+        for (String nameA : parser.getIdToName().keySet()) {
+            for (String nameB : parser.getIdToName().keySet()) {
+                assertEquals(fromMaps.relation(nameA, nameB), fromStore.relation(nameA, nameB));
+            }
+        }
+
+        // Known answers: 7 and 6 are first cousins (grandparents 1 and 2), 4 is married to 5
+        assertTrue(fromStore.isFirstCousin(6, 7));
+        assertTrue(fromStore.isSpouse(4, 5));
+        assertFalse(fromStore.isFirstCousin(3, 4));
+    }
+
+    // Parent and spouse ids that are not in the file still count:
+    // a shared missing father makes siblings
+    @Test
+    public void testDanglingIds(@TempDir Path dir) throws IOException {
+        Path csv = dir.resolve("people.csv");
+        Files.writeString(csv, "id,name,gender,father_id,mother_id,spouse_id\n"
+                + "1,A,Male,900,,\n"
+                + "2,B,Female,900,,950\n"
+                + "3,C,Male,901,,\n"
+                + "4,P,Male,800,,\n"
+                + "5,Q,Female,800,,\n"
+                + "6,X,Male,4,,\n"
+                + "7,Y,Female,,5,\n", StandardCharsets.UTF_8);
+        GenealogyStore built = GenealogySnapshot.openOrBuild(csv);
+        GenealogyStore opened = GenealogySnapshot.open(GenealogySnapshot.pathFor(csv));
+        assertEquals(4, opened.danglingIds());
+        assertEquals(900, opened.linkedId(opened.father(opened.indexOf(1))));
+
+        for (GenealogyStore store : new GenealogyStore[]{built, opened}) {
+            RelationEngine engine = new RelationEngine(store);
+            assertTrue(engine.isSibling(1, 2));
+            assertTrue(engine.isHalfSibling(1, 2));
+            assertFalse(engine.isSibling(1, 3));
+            assertTrue(engine.isSpouse(2, 950));
+            assertFalse(engine.isSpouse(2, 951));
+            assertTrue(engine.isFirstCousin(6, 7)); // grandparent 800 is not in the file
+            assertFalse(engine.isGrandparent(4, 7));
+            assertArrayEquals(new int[]{6}, engine.getChildren(4));
+        }
+    }
+}
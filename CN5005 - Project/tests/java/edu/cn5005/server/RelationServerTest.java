@@ -0,0 +1,147 @@
+package edu.cn5005.server;
+
+import edu.cn5005.persons.GenealogyStore;
+import edu.cn5005.persons.PersonCsvLoader;
+import edu.cn5005.relations.RelationEngine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/* Tests for RelationServer and RelationClient over a real loopback socket, on persons.csv.
+They check the answers against the engine, error responses, pipelining order and several
+clients at once.
+ */
+public class RelationServerTest {
+
+    private RelationEngine engine;
+    private RelationServer server;
+    private int port;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        engine = new RelationEngine(GenealogyStore.of(PersonCsvLoader.load(Path.of("persons.csv"), false)));
+        server = new RelationServer(engine);
+        port = server.start(0);
+    }
+
+    @AfterEach
+    public void stopServer() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void testQueries() throws IOException {
+        try (RelationClient client = new RelationClient(port)) {
+            assertEquals("OK\tpong", client.query("ping"));
+            assertEquals("OK\ttrue", client.query("isFather", "1", "3"));
+            assertEquals("OK\tfalse", client.query("isMother", "1", "3"));
+            assertEquals("OK\ttrue", client.query("isSibling", "3", "4"));
+            assertEquals("OK\ttrue", client.query("isFirstCousin", "6", "7"));
+            assertEquals("OK\ttrue", client.query("isSpouse", "4", "5"));
+            assertEquals("OK\t3 4", client.query("children", "1"));
+            assertEquals("OK\t6 7 11", client.query("grandchildren", "1"));
+            assertEquals("OK\t", client.query("children", "25"));
+            assertEquals("OK\t" + engine.relation("Αυγουστίνος Καποδίστριας", "Ιωάννης Καποδίστριας"),
+                    client.query("relation", "Αυγουστίνος Καποδίστριας", "Ιωάννης Καποδίστριας"));
+
+            // Errors are answered too, and the connection stays usable
+            assertEquals("ERR\tunknown id: 999", client.query("isSibling", "3", "999"));
+            assertEquals("ERR\tnot an id: x", client.query("isSibling", "x", "4"));
+            assertEquals("ERR\tunknown name: Nobody", client.query("relation", "Nobody", "Ιωάννης Καποδίστριας"));
+            assertEquals("ERR\tunknown command: isCousin", client.query("isCousin", "6", "7"));
+            assertTrue(client.query("isSibling", "3").startsWith("ERR\tisSibling takes 2 argument(s)"));
+            assertEquals("OK\tpong", client.query("ping"));
+        }
+    }
+
+    // isSpouse answers for a spouse id that is not in the file; only the first id must exist
+    @Test
+    public void testSpouseNotInFile(@TempDir Path dir) throws IOException {
+        Path csv = dir.resolve("people.csv");
+        Files.writeString(csv, "id,name,gender,father_id,mother_id,spouse_id\n"
+                + "1,A,Male,,,\n"
+                + "2,B,Female,,,950\n", StandardCharsets.UTF_8);
+        RelationEngine small = new RelationEngine(GenealogyStore.of(PersonCsvLoader.load(csv, false)));
+        try (RelationServer smallServer = new RelationServer(small);
+             RelationClient client = new RelationClient(smallServer.start(0))) {
+            assertEquals("OK\ttrue", client.query("isSpouse", "2", "950"));
+            assertEquals("OK\tfalse", client.query("isSpouse", "2", "951"));
+            assertEquals("OK\tfalse", client.query("isSpouse", "1", "950"));
+            assertEquals("ERR\tunknown id: 950", client.query("isSpouse", "950", "2"));
+            assertEquals("ERR\tunknown id: 950", client.query("isSibling", "2", "950"));
+        }
+    }
+
+    // A large pipelined batch comes back complete and in request order
+    @Test
+    public void testPipelining() throws IOException {
+        List<String[]> requests = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            int a = 1 + i % 26;
+            int b = 1 + (i / 26) % 26;
+            requests.add(new String[]{"isSibling", Integer.toString(a), Integer.toString(b)});
+            expected.add((a > 25 || b > 25) ? "ERR\tunknown id: 26" : "OK\t" + engine.isSibling(a, b));
+        }
+        try (RelationClient client = new RelationClient(port)) {
+            assertEquals(expected, client.pipeline(requests));
+            assertEquals("OK\tpong", client.query("ping"));
+        }
+    }
+
+    @Test
+    public void testConcurrentClients() throws Exception {
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int c = 0; c < 16; c++) {
+            threads.add(Thread.ofVirtual().start(() -> {
+                try (RelationClient client = new RelationClient(port)) {
+                    for (int i = 0; i < 200; i++) {
+                        assertEquals("OK\ttrue", client.query("isGrandparent", "1", "6"));
+                    }
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(List.of(), failures);
+    }
+
+    // The CLI client path: typed lines with quotes, blank lines skipped, answers without "OK"
+    @Test
+    public void testForward() throws IOException {
+        String typed = "isSibling 3 4\n\nrelation \"Ιωάννης Καποδίστριας\" \"Ελένη Καποδίστρια\"\nchildren\t1\nisSibling 3\n";
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        try (RelationClient client = new RelationClient(port)) {
+            client.forward(new BufferedReader(new StringReader(typed)),
+                    new PrintStream(printed, true, StandardCharsets.UTF_8));
+        }
+        String[] lines = printed.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(4, lines.length);
+        assertEquals("true", lines[0]);
+        assertEquals(engine.relation("Ιωάννης Καποδίστριας", "Ελένη Καποδίστρια"), lines[1]);
+        assertEquals("3 4", lines[2]);
+        assertTrue(lines[3].startsWith("ERR: isSibling takes 2 argument(s)"));
+
+        assertArrayEquals(new String[]{"relation", "A B", "C"}, RelationClient.split("relation \"A B\"  C"));
+    }
+}